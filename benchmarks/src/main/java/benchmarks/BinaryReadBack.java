@@ -0,0 +1,347 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.configuration.ConfigurationException;
+
+import namespaceGenerator.BinaryNamespaceReader;
+import namespaceGenerator.BinaryNamespaceWriter;
+import namespaceGenerator.NamespaceStore;
+
+/*
+ * Checks that BinaryNamespaceReader reads back the directory ids above 2^31 of a mapped namespace. A namespace of
+ * the root, n directories at depth 1 (2^31 + 2^20, or the first argument) and one directory of FILES files under
+ * each of the last LAST directories at depth 1, is written by a BinaryNamespaceWriter to a pipe and read back at
+ * the same time, the directories beyond the heap of the reader going to scratch files of SCRATCH_DIR (about 16
+ * bytes per directory: 34 GB by default). The ids and parents of all the records are checked, and the paths of
+ * every 2^20th directory and of the last ones; exits with status 1 when one differs. Run from bin/ like the
+ * benchmarks (it takes a few minutes):
+ *
+ *   cd bin ; java -cp ../benchmarks/target/benchmarks.jar benchmarks.BinaryReadBack
+ */
+public class BinaryReadBack {
+	private static final int LAST = 4;
+	private static final int FILES = 3;
+
+	public static void main(String[] args) throws ConfigurationException, IOException, InterruptedException
+	{
+		final long n = (args.length > 0) ? Long.parseLong(args[0]) : (1L << 31) + (1L << 20);
+		File scratch = new File(Configurations.load().scratchDir);
+		final PipedOutputStream pipe = new PipedOutputStream();
+		PipedInputStream in = new PipedInputStream(pipe, 1 << 20);
+		final IOException[] failed = new IOException[1];
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run()
+			{
+				try {
+					write(n, pipe);
+				} catch (IOException e) {
+					failed[0] = e;
+				}
+			}
+		});
+		writer.start();
+
+		long records = 0, errors = 0, id, parent;
+		String path, expected;
+		BinaryNamespaceReader reader = new BinaryNamespaceReader(in, true, scratch);
+		try {
+			while (reader.next())
+			{
+				// the root is 0, the directories at depth 1 are 1 .. n, those at depth 2 follow, each with its files
+				if (records <= n + LAST * (FILES + 1))
+				{
+					id = (records <= n) ? records : n + 1 + (records - n - 1) / (FILES + 1);
+					parent = (records == 0) ? -1 : ((records <= n) ? 0 : id - LAST);
+					if (reader.isFile())
+					{
+						parent = id;
+						id = -1;
+					}
+				} else
+					id = parent = -2;
+				if (reader.getId() != id || reader.getParent() != parent)
+				{
+					errors += 1;
+					if (errors <= 10)
+						System.out.println("Record " + records + ": id " + reader.getId() + ", parent " + reader.getParent() + "; expected " +
+								id + ", " + parent);
+				}
+				if (records % (1 << 20) == 0 || records > n - LAST)
+				{
+					path = reader.getPath();
+					expected = expectedPath(n, records);
+					if (!path.equals(expected))
+					{
+						errors += 1;
+						if (errors <= 10)
+							System.out.println("Record " + records + ": path " + path + "; expected " + expected);
+					}
+				}
+				records += 1;
+				if (records % (1L << 28) == 0)
+					System.out.println(records + " records read");
+			}
+		} finally {
+			reader.close();
+		}
+		writer.join();
+		if (failed[0] != null)
+			throw failed[0];
+		if (records != n + 1 + LAST * (FILES + 1))
+			errors += 1;
+		System.out.println(records + " records read back, " + errors + " errors; last directory id " + (n + LAST));
+		if (errors > 0)
+			System.exit(1);
+	}
+
+	/* The path of the record written at position r, see write() */
+	private static String expectedPath(long n, long r)
+	{
+		if (r == 0)
+			return "/0/";
+		if (r <= n)
+			return "/0/" + (r - 1) + "/";
+		long k = (r - n - 1) / (FILES + 1), f = (r - n - 1) % (FILES + 1);
+		String dir = "/0/" + (n - LAST + k) + "/" + k + "/";
+		return (f == 0) ? dir : dir + (f - 1);
+	}
+
+	/* Writes the namespace of n directories at depth 1, see Namespace */
+	private static void write(long n, PipedOutputStream pipe) throws IOException
+	{
+		Namespace namespace = new Namespace(n);
+		BinaryNamespaceWriter out = new BinaryNamespaceWriter(namespace, pipe);
+		out.setLastStamp(n);
+		out.writeDir(namespace.dir(0, 0), true);
+		for (long i = 0; i < n; i++)
+			out.writeDir(namespace.dir(1, i), true);
+		for (long k = 0; k < LAST; k++)
+		{
+			out.writeDir(namespace.dir(2, k), true);
+			out.writeFiles(namespace.dir(2, k), FILES);
+		}
+		out.close();
+	}
+
+	/*
+	 * The namespace written, without any column: the root, the directories 0 .. n - 1 at depth 1 (named after
+	 * their index, like all the entries), and the directories 0 .. LAST - 1 at depth 2, under the last LAST
+	 * directories at depth 1, with FILES files each. A directory is its depth and its index, a file the index of its
+	 * directory and its own. Only what BinaryNamespaceWriter reads is given.
+	 */
+	private static class Namespace implements NamespaceStore {
+		private static final int INDEX_BITS = 40;
+		private long n;
+
+		Namespace(long n)
+		{
+			this.n = n;
+		}
+
+		long dir(int depth, long i)
+		{
+			return ((long) depth << INDEX_BITS) | i;
+		}
+
+		@Override
+		public int getMaxDepth()
+		{
+			return 4;
+		}
+
+		@Override
+		public long getDirIndex(long dir)
+		{
+			return dir & ((1L << INDEX_BITS) - 1);
+		}
+
+		@Override
+		public long getDirName(long dir)
+		{
+			return (dir == 0) ? 0 : getDirIndex(dir);
+		}
+
+		@Override
+		public long getDirParent(long dir)
+		{
+			int depth = (int) (dir >>> INDEX_BITS);
+			if (depth == 0)
+				return -1;
+			return (depth == 1) ? dir(0, 0) : dir(1, n - LAST + getDirIndex(dir));
+		}
+
+		@Override
+		public long getDirCreationStamp(long dir)
+		{
+			return 0;
+		}
+
+		@Override
+		public int getNumChildFiles(long dir)
+		{
+			return (dir >>> INDEX_BITS == 2) ? FILES : 0;
+		}
+
+		@Override
+		public long getChildFile(long dir, int k)
+		{
+			return getDirIndex(dir) * FILES + k;
+		}
+
+		@Override
+		public long getFileName(long file)
+		{
+			return file % FILES;
+		}
+
+		@Override
+		public long getFileCreationStamp(long file)
+		{
+			return n - file;
+		}
+
+		@Override
+		public long getFileSize(long file)
+		{
+			return file << 10;
+		}
+
+		@Override
+		public long getNumDirs()
+		{
+			return n + 1 + LAST;
+		}
+
+		@Override
+		public long getNumFiles()
+		{
+			return LAST * FILES;
+		}
+
+		@Override
+		public long addDir(long parent)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long addFile(long parent)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long reserveDirs(int depth, long n)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long createDir(int depth, long i, long parent)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long reserveFiles(int depth, long n)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long createFile(int depth, long i, long parent)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void copyDirs(NamespaceStore from, int depth)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void copyFiles(NamespaceStore from, int depth)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long getNumDirsAtDepth(int depth)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long getDirAtDepth(int depth, long i)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long getNumFilesAtDepth(int depth)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long getFileAtDepth(int depth, long i)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long getFileIndex(long file)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int getNumSubdirs(long dir)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setFileName(long file, long name)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long getFileParent(long file)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setFileCreationStamp(long file, long stamp)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setFileSize(long file, long size)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void sortFilesByCreationStamp(ForkJoinPool pool)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void sortFilesByCreationStamp(ForkJoinPool pool, long[] from)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package benchmarks;
+
+import java.io.File;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+import namespaceGenerator.MimesisParameters;
+
+/*
+ * The configuration the benchmarks are driven by: ../conf/mimesis.properties, as for
+ * StandaloneNamespaceGenerationModule, so the benchmarks are run from bin/; another file of conf/ is chosen with
+ * -jvmArgsAppend -Dmimesis.conf=<file>.
+ */
+public class Configurations {
+
+	public static MimesisParameters load() throws ConfigurationException
+	{
+		return load(new String[0]);
+	}
+
+	/* The configuration, with the given keys and values instead of those of the file */
+	public static MimesisParameters load(String... keysAndValues) throws ConfigurationException
+	{
+		PropertiesConfiguration config = new PropertiesConfiguration("../conf/" + System.getProperty("mimesis.conf", "mimesis.properties"));
+		config.setProperty("SEED", 1); // the same namespace on every run
+		for (int i = 0; i + 1 < keysAndValues.length; i += 2)
+			config.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+		return new MimesisParameters(config);
+	}
+
+	/* printStats() writes to ../output */
+	public static void createOutputDir()
+	{
+		new File("../output").mkdirs();
+	}
+}
@@ -0,0 +1,29 @@
+package benchmarks;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import namespaceGenerator.HierarchicalFileSystemGenerator;
+import namespaceGenerator.MimesisParameters;
+
+/* The namespace of the configuration, generated once per run of a benchmark, in the given store */
+@State(Scope.Benchmark)
+public class GeneratedNamespace {
+
+	@Param({"entries", "compact", "mapped"})
+	public String store;
+
+	public HierarchicalFileSystemGenerator generator;
+
+	@Setup(Level.Trial)
+	public void generate() throws ConfigurationException
+	{
+		MimesisParameters params = Configurations.load("NAMESPACE_STORE", store);
+		generator = new HierarchicalFileSystemGenerator(params.seed, params);
+		generator.generateFileSystem();
+	}
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import namespaceGenerator.BinaryNamespaceWriter;
+
+/*
+ * The whole namespace written out, as text (print()) or in the binary format, to a stream that drops the bytes,
+ * so that only the encoding is measured; and printStats(), which writes the cdf files to ../output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+
+	private static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+
+	@Setup
+	public void setup()
+	{
+		Configurations.createOutputDir();
+	}
+
+	@Benchmark
+	public void printText(GeneratedNamespace namespace) throws IOException
+	{
+		namespace.generator.print(new NullOutputStream());
+	}
+
+	@Benchmark
+	public void printBinary(GeneratedNamespace namespace) throws IOException
+	{
+		BinaryNamespaceWriter out = new BinaryNamespaceWriter(namespace.generator.getStore(), new NullOutputStream());
+		namespace.generator.print(out);
+		out.close();
+	}
+
+	@Benchmark
+	public void printStats(GeneratedNamespace namespace) throws IOException
+	{
+		namespace.generator.printStats();
+	}
+}
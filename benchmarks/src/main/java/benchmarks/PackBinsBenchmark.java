@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import namespaceGenerator.BinPacker;
+import namespaceGenerator.BinPacking;
+import namespaceGenerator.CountingBinPacker;
+import namespaceGenerator.LegacyBinPacker;
+import namespaceGenerator.MimesisParameters;
+import randomGenerator.AliasRanGen;
+import randomGenerator.LongRandomGenerator;
+import randomGenerator.SplitRandom;
+import randomGenerator.WeightedRanGen;
+import randomGenerator.WeightedTriangularRanGen;
+
+/*
+ * Steps 1-3 of packBins() (see BinPacker), for the directories or the files of the configuration, with scale times
+ * as many objects. The bins are filled as in HierarchicalFileSystemGenerator.generate().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackBinsBenchmark {
+	private static final int MAX_DEPTH = 32; // as in HierarchicalFileSystemGenerator
+
+	@Param({"1", "10", "100"})
+	public int scale;
+
+	@Param({"dirs", "files"})
+	public String objects;
+
+	@Param({"counting", "legacy"})
+	public String packer;
+
+	private int[] bins;
+	private long targetObjects;
+	private boolean packDirs;
+	private LongRandomGenerator gen, depthGen;
+	private SplitRandom random;
+
+	@Setup
+	public void setup() throws ConfigurationException
+	{
+		MimesisParameters params = Configurations.load();
+		packDirs = objects.equals("dirs");
+		random = new SplitRandom(1);
+		if (packDirs) {
+			targetObjects = params.targetDirsInNamespace * scale;
+			gen = new WeightedTriangularRanGen(random, params.subdirsPerDirKeys, params.subdirsPerDirWeights);
+			depthGen = depthSampler(params, params.subdirsAtDepthKeys, params.subdirsAtDepthWeights);
+		} else {
+			targetObjects = params.targetFilesInNamespace * scale;
+			gen = new WeightedTriangularRanGen(random, params.filesPerDirKeys, params.filesPerDirWeights);
+			depthGen = depthSampler(params, params.filesAtDepthKeys, params.filesAtDepthWeights);
+		}
+		bins = new int[MAX_DEPTH + 1];
+		if (packDirs)
+			bins[1] = 3;
+		for (long l = 0; l < targetObjects; l++)
+			bins[(int) depthGen.nextLong()] += 1;
+		for (int i = 0; i < bins.length; i++) // as in generate()
+			if (bins[i] < 10)
+				bins[i] += 1;
+	}
+
+	private LongRandomGenerator depthSampler(MimesisParameters params, Long[] keys, double[] weights)
+	{
+		if (params.depthSampler.equals("weighted"))
+			return new WeightedRanGen(random, keys, weights);
+		return new AliasRanGen(random, keys, weights);
+	}
+
+	@Benchmark
+	public BinPacking pack()
+	{
+		BinPacker binPacker = (packer.equals("legacy")) ? new LegacyBinPacker() : new CountingBinPacker();
+		return binPacker.pack(bins.clone(), targetObjects, gen, depthGen, random, packDirs);
+	}
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import namespaceGenerator.NamespaceStore;
+
+/* path() of each directory of the namespace in turn, in the order of print() */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBenchmark {
+	private long[] dirs;
+	private int next = 0;
+
+	@Setup
+	public void setup(GeneratedNamespace namespace)
+	{
+		NamespaceStore store = namespace.generator.getStore();
+		dirs = new long[(int) store.getNumDirs()];
+		int n = 0;
+		for (int d = 0; d < store.getMaxDepth(); d++)
+			for (long i = 0; i < store.getNumDirsAtDepth(d); i++)
+				dirs[n++] = store.getDirAtDepth(d, i);
+	}
+
+	@Benchmark
+	public String path(GeneratedNamespace namespace)
+	{
+		if (next == dirs.length)
+			next = 0;
+		return namespace.generator.path(dirs[next++]);
+	}
+}
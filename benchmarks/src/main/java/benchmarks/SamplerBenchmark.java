@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import namespaceGenerator.MimesisParameters;
+import randomGenerator.SplitRandom;
+import randomGenerator.WeightedRanGen;
+import randomGenerator.WeightedTriangularRanGen;
+
+/*
+ * One value drawn from the samplers of the generator: WeightedRanGen on the files at each depth, and
+ * WeightedTriangularRanGen on the files per directory, boxed (next()) and not (nextLong()).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamplerBenchmark {
+	private WeightedRanGen filesAtDepth;
+	private WeightedTriangularRanGen filesPerDir;
+
+	@Setup
+	public void setup() throws ConfigurationException
+	{
+		MimesisParameters params = Configurations.load();
+		SplitRandom random = new SplitRandom(1);
+		filesAtDepth = new WeightedRanGen(random, params.filesAtDepthKeys, params.filesAtDepthWeights);
+		filesPerDir = new WeightedTriangularRanGen(random, params.filesPerDirKeys, params.filesPerDirWeights);
+	}
+
+	@Benchmark
+	public Long weightedNext()
+	{
+		return filesAtDepth.next();
+	}
+
+	@Benchmark
+	public long weightedNextLong()
+	{
+		return filesAtDepth.nextLong();
+	}
+
+	@Benchmark
+	public Long triangularNext()
+	{
+		return filesPerDir.next();
+	}
+
+	@Benchmark
+	public long triangularNextLong()
+	{
+		return filesPerDir.nextLong();
+	}
+}
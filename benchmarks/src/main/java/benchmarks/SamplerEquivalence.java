@@ -0,0 +1,108 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+import org.apache.commons.configuration.ConfigurationException;
+
+import namespaceGenerator.MimesisParameters;
+import randomGenerator.AliasRanGen;
+import randomGenerator.LongRandomGenerator;
+import randomGenerator.SplitRandom;
+import randomGenerator.WeightedRanGen;
+
+/*
+ * Checks that AliasRanGen draws the depth distributions of the configuration (files and subdirectories at each
+ * depth) like WeightedRanGen: each sampler draws N values (10^6, or the first argument) from its own fixed seed,
+ * and the two histograms are compared with a two-sample chi-square test and a two-sample Kolmogorov-Smirnov test,
+ * both at the 0.001 level. The seeds are fixed, so a run gives the same verdict every time; exits with status 1
+ * when a distribution fails either test. Run from bin/ like the benchmarks:
+ *
+ *   cd bin ; java -cp ../benchmarks/target/benchmarks.jar benchmarks.SamplerEquivalence
+ */
+public class SamplerEquivalence {
+	private static final double Z = 3.090; // the 0.999 quantile of the standard normal distribution
+	private static final double KS = 1.949; // c(0.001) of the two-sample Kolmogorov-Smirnov test
+
+	public static void main(String[] args) throws ConfigurationException
+	{
+		int n = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		MimesisParameters params = Configurations.load();
+		boolean same = check("FILES_AT_DEPTH", params.filesAtDepthKeys, params.filesAtDepthWeights, n);
+		same &= check("SUBDIRS_AT_DEPTH", params.subdirsAtDepthKeys, params.subdirsAtDepthWeights, n);
+		if (!same)
+		{
+			System.out.println("AliasRanGen and WeightedRanGen draw different distributions.");
+			System.exit(1);
+		}
+	}
+
+	/* Draws n values from both samplers of keys and weights, and compares them; true when both tests pass */
+	private static boolean check(String name, Long[] keys, double[] weights, int n)
+	{
+		long[] weighted = histogram(new WeightedRanGen(new SplitRandom(1), keys, weights), keys, n);
+		long[] alias = histogram(new AliasRanGen(new SplitRandom(2), keys, weights), keys, n);
+
+		// chi-square, over the keys drawn by either sampler; same number of draws on both sides
+		double chi2 = 0;
+		int bins = 0;
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (weighted[i] + alias[i] == 0)
+				continue;
+			chi2 += (double) (weighted[i] - alias[i]) * (weighted[i] - alias[i]) / (weighted[i] + alias[i]);
+			bins += 1;
+		}
+		int df = Math.max(1, bins - 1);
+		double h = 2.0 / (9 * df);
+		double chi2Limit = df * Math.pow(1 - h + Z * Math.sqrt(h), 3); // Wilson-Hilferty
+
+		// Kolmogorov-Smirnov, over the keys in increasing order
+		Integer[] order = new Integer[keys.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		final Long[] k = keys;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return k[a].compareTo(k[b]);
+			}
+		});
+		long cw = 0, ca = 0;
+		double d = 0;
+		for (int i : order)
+		{
+			cw += weighted[i];
+			ca += alias[i];
+			d = Math.max(d, Math.abs(cw - ca) / (double) n);
+		}
+		double ksLimit = KS * Math.sqrt(2.0 / n);
+
+		boolean pass = chi2 <= chi2Limit && d <= ksLimit;
+		System.out.println(String.format(Locale.ROOT, "%-17s chi2 %.1f (limit %.1f, %d df); KS %.5f (limit %.5f): %s",
+				name, chi2, chi2Limit, df, d, ksLimit, pass ? "same" : "DIFFERENT"));
+		return pass;
+	}
+
+	/* How many of n values drawn from gen are each of the keys */
+	private static long[] histogram(LongRandomGenerator gen, Long[] keys, int n)
+	{
+		long[] counts = new long[keys.length];
+		long[] draws = new long[4096];
+		for (int done = 0, len; done < n; done += len)
+		{
+			len = Math.min(draws.length, n - done);
+			gen.fill(draws, 0, len);
+			for (int j = 0; j < len; j++)
+			{
+				int i = 0;
+				while (keys[i] != draws[j])
+					i += 1;
+				counts[i] += 1;
+			}
+		}
+		return counts;
+	}
+}
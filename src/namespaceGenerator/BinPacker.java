@@ -0,0 +1,23 @@
+package namespaceGenerator;
+
+import java.util.Random;
+
+import randomGenerator.LongRandomGenerator;
+
+/*
+ * Steps 1-3 of packBins: generates the objects to be packed, sorts them by size, descending, and packs them in
+ * the depth bins, starting from the worst fit, i.e. the bin with the most free capacity left.
+ */
+public interface BinPacker {
+
+	/**
+	 * @param bins	Capacity of each depth bin; decreased by the size of the objects packed in each bin
+	 * @param targetObjects	Number of objects to generate, and total size of the objects
+	 * @param gen	Samples the size of an object
+	 * @param depthGen	Samples a depth, used for the objects that do not fit
+	 * @param random	Used to choose where the search for the worst fit starts
+	 * @param packDirs	Whether directories (which start at depth 2) or files (which start at depth 1) are packed
+	 */
+	public BinPacking pack(int[] bins, long targetObjects, LongRandomGenerator gen, LongRandomGenerator depthGen,
+			Random random, boolean packDirs);
+}
@@ -0,0 +1,130 @@
+package namespaceGenerator;
+
+import java.io.File;
+import java.util.Arrays;
+
+/*
+ * Result of packing objects into depth bins (steps 1-3 of packBins). An object is a directory's worth of
+ * children (subdirectories or files). The objects are sorted by size, descending, and kept as runs of objects
+ * of the same size: objects runEnd[r - 1] .. runEnd[r] - 1 have runSize[r] children. depth[i] is the depth
+ * the children of object i are created at. Once the depths are final, indexByDepth() groups the objects by
+ * depth so that the objects at one depth can be visited without scanning all of them. For the namespaces kept in
+ * MappedNamespaceStore, the depths and the objects by depth are MappedArrays instead of arrays.
+ */
+public class BinPacking {
+	private int[] runSize;
+	private long[] runEnd;
+	private long numObjects;
+	private byte[] depth = null;
+	private MappedArray mappedDepth = null; // byte, instead of depth
+	private File dir = null; // of the scratch files of mappedDepth and mappedByDepth
+	// The objects at depth d are byDepth[depthStart[d]] .. byDepth[depthStart[d + 1] - 1], in ascending order
+	private long[] depthStart = null;
+	private int[] byDepth = null;
+	private MappedArray mappedByDepth = null; // long, instead of byDepth
+	private boolean indexed = false;
+
+	public BinPacking(int[] runSize, long[] runEnd, byte[] depth)
+	{
+		this(runSize, runEnd, depth.length);
+		this.depth = depth;
+	}
+
+	/* The depths of the numObjects objects are in mappedDepth; mappedByDepth is created in dir */
+	public BinPacking(int[] runSize, long[] runEnd, MappedArray mappedDepth, long numObjects, File dir)
+	{
+		this(runSize, runEnd, numObjects);
+		this.mappedDepth = mappedDepth;
+		this.dir = dir;
+	}
+
+	private BinPacking(int[] runSize, long[] runEnd, long numObjects)
+	{
+		if (runSize.length != runEnd.length)
+			throw new IllegalArgumentException("Mismatch runSize/runEnd length: " + runSize.length + " vs. " + runEnd.length);
+		this.runSize = runSize;
+		this.runEnd = runEnd;
+		this.numObjects = numObjects;
+	}
+
+	public long getNumObjects()
+	{
+		return numObjects;
+	}
+
+	public int getNumRuns()
+	{
+		return runSize.length;
+	}
+
+	/* Size of the objects of run r */
+	public int getRunSize(int r)
+	{
+		return runSize[r];
+	}
+
+	/* Index of the object after the last one of run r */
+	public long getRunEnd(int r)
+	{
+		return runEnd[r];
+	}
+
+	public int getDepth(long i)
+	{
+		return (depth != null) ? depth[(int) i] : mappedDepth.getByte(i);
+	}
+
+	public void setDepth(long i, int d)
+	{
+		if (depth != null)
+			depth[(int) i] = (byte) d;
+		else
+			mappedDepth.putByte(i, (byte) d);
+		indexed = false;
+	}
+
+	/* Returns the number of objects at each depth */
+	public long[] countByDepth(int numDepths)
+	{
+		long[] counts = new long[numDepths];
+		for (long i = 0; i < numObjects; i++)
+			counts[getDepth(i)] += 1;
+		return counts;
+	}
+
+	/* Groups the objects by depth, keeping them in ascending order within each depth */
+	public void indexByDepth(int numDepths)
+	{
+		depthStart = new long[numDepths + 1];
+		for (long i = 0; i < numObjects; i++)
+			depthStart[getDepth(i) + 1] += 1;
+		for (int d = 0; d < numDepths; d++)
+			depthStart[d + 1] += depthStart[d];
+		long[] next = Arrays.copyOf(depthStart, numDepths);
+		if (depth != null)
+		{
+			byDepth = new int[depth.length];
+			for (int i = 0; i < depth.length; i++)
+				byDepth[(int) next[depth[i]]++] = i;
+		} else {
+			if (mappedByDepth == null)
+				mappedByDepth = new MappedArray(dir, 8, numObjects);
+			for (long i = 0; i < numObjects; i++)
+				mappedByDepth.putLong(next[mappedDepth.getByte(i)]++, i);
+		}
+		indexed = true;
+	}
+
+	public long getNumObjectsAtDepth(int d)
+	{
+		if (!indexed)
+			throw new IllegalStateException("The objects have not been indexed by depth since their depths changed.");
+		return (d + 1 < depthStart.length) ? depthStart[d + 1] - depthStart[d] : 0;
+	}
+
+	/* Returns the k-th object at depth d */
+	public long getObjectAtDepth(int d, long k)
+	{
+		return (byDepth != null) ? byDepth[(int) (depthStart[d] + k)] : mappedByDepth.getLong(depthStart[d] + k);
+	}
+}
@@ -0,0 +1,331 @@
+package namespaceGenerator;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * Reads a namespace written by BinaryNamespaceWriter, one record at a time, and rebuilds the paths on the fly
+ * from the parent and the name of each directory. The records are decoded a block at a time; only the parent
+ * and the name of the directories are kept (16 bytes per directory), plus the path of the last parent. The ids of
+ * the directories are long, as in a mapped namespace: the first HEAP_DIRS directories are kept in the heap, the
+ * others in MappedArrays, in scratch files of a directory. A reader without paths keeps nothing per directory.
+ *
+ *   while (reader.next())
+ *       ... reader.getPath(), reader.getSize() ...
+ *
+ * next() gives every record, including the directories of other shards (inShard() is false), while the iterator
+ * gives the directories and files of the namespace as NamespaceRecords, in the order of print(); both need the
+ * paths.
+ */
+public class BinaryNamespaceReader implements Iterable<NamespaceRecord>, Closeable {
+	static final int HEAP_DIRS = 1 << 18; // directories kept in the heap (4 MB), before the scratch files
+	private DataInputStream in;
+	private long lastStampInSnapshot = -1;
+
+	// the block being read
+	private int records = 0, record = 0;
+	private byte[] kinds = new byte[0];
+	private Column parents = new Column(), names = new Column(), stamps = new Column(), sizes = new Column();
+
+	// the current record
+	private byte kind;
+	private long id, parent, name, stamp, size;
+
+	private boolean paths;
+	private File dir; // of the scratch files of the directories beyond HEAP_DIRS
+	private long numDirs = 0;
+	private long[] dirParent = new long[1024];
+	private long[] dirName = new long[1024];
+	private MappedArray mappedParent = null, mappedName = null; // the directories from HEAP_DIRS on
+	private char[] path = new char[256];
+	private int pathStart = path.length; // the path of directory pathDir is path[pathStart ..]
+	private long pathDir = -2;
+
+	/* Reads the records with their paths; the directories beyond HEAP_DIRS are kept in the temporary directory */
+	public BinaryNamespaceReader(InputStream in) throws IOException
+	{
+		this(in, true, new File(System.getProperty("java.io.tmpdir")));
+	}
+
+	/*
+	 * Reads the records with their paths, the directories beyond HEAP_DIRS being kept in scratch files of dir, or
+	 * without them (getPath() and the iterator cannot be used), keeping nothing per directory.
+	 */
+	public BinaryNamespaceReader(InputStream in, boolean paths, File dir) throws IOException
+	{
+		this.paths = paths;
+		this.dir = dir;
+		this.in = new DataInputStream(new BufferedInputStream(in, HierarchicalFileSystemGenerator.BLOCK));
+		int magic, version;
+		try {
+			magic = this.in.readInt();
+			version = this.in.readInt();
+		} catch (EOFException e) {
+			throw new IOException("Not a binary namespace: too short.");
+		}
+		if (magic != BinaryNamespaceWriter.MAGIC)
+			throw new IOException("Not a binary namespace: bad magic number " + Integer.toHexString(magic) + ".");
+		if (version < 1 || version > BinaryNamespaceWriter.VERSION)
+			throw new IOException("Unsupported binary namespace version " + version + "; expected up to " + BinaryNamespaceWriter.VERSION + ".");
+		if (version >= 2)
+			lastStampInSnapshot = this.in.readLong();
+	}
+
+	/* The last stamp of the namespace when it was written; -1 when not known (version 1) */
+	public long getLastStamp()
+	{
+		return lastStampInSnapshot;
+	}
+
+	/* Moves to the next record; false at the end of the namespace */
+	public boolean next() throws IOException
+	{
+		if (record == records && !readBlock())
+			return false;
+		record += 1;
+		kind = kinds[record - 1];
+		parent += unzigzag(parents.readVarLong());
+		name = names.readVarLong();
+		stamp += unzigzag(stamps.readVarLong());
+		if (kind == BinaryNamespaceWriter.FILE)
+		{
+			size = unzigzag(sizes.readVarLong());
+			id = -1;
+		} else {
+			size = -1;
+			id = addDir(parent, name);
+		}
+		return true;
+	}
+
+	public boolean isDir()
+	{
+		return kind != BinaryNamespaceWriter.FILE;
+	}
+
+	public boolean isFile()
+	{
+		return kind == BinaryNamespaceWriter.FILE;
+	}
+
+	/* False for the directories of other shards, which are only given as the parents of other records */
+	public boolean inShard()
+	{
+		return kind != BinaryNamespaceWriter.OTHER_SHARD_DIR;
+	}
+
+	/* The id of the directory, in the order of the directories (the root is 0); -1 for a file */
+	public long getId()
+	{
+		return id;
+	}
+
+	/* The id of the parent directory; -1 for the root */
+	public long getParent()
+	{
+		return parent;
+	}
+
+	public long getName()
+	{
+		return name;
+	}
+
+	public long getCreationStamp()
+	{
+		return stamp;
+	}
+
+	/* The size of a file; -1 for a directory */
+	public long getSize()
+	{
+		return size;
+	}
+
+	/* The path of the record, as in print(): "/0/1/2/" for a directory, "/0/1/2/5" for a file */
+	public String getPath()
+	{
+		if (!paths)
+			throw new UnsupportedOperationException("The reader was created without the paths.");
+		if (isDir())
+		{
+			setPath(id);
+			return new String(path, pathStart, path.length - pathStart);
+		}
+		setPath(parent);
+		StringBuilder b = new StringBuilder(path.length - pathStart + 20);
+		return b.append(path, pathStart, path.length - pathStart).append(name).toString();
+	}
+
+	/* The directories and files of the namespace of the shard, from the current position */
+	@Override
+	public Iterator<NamespaceRecord> iterator()
+	{
+		return new Iterator<NamespaceRecord>() {
+			private boolean ready = false, more;
+
+			@Override
+			public boolean hasNext()
+			{
+				if (!ready)
+				{
+					try {
+						do
+							more = BinaryNamespaceReader.this.next();
+						while (more && !inShard());
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					ready = true;
+				}
+				return more;
+			}
+
+			@Override
+			public NamespaceRecord next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+				ready = false;
+				return new NamespaceRecord(isDir(), getPath(), name, stamp, size);
+			}
+		};
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+		if (mappedParent != null)
+		{
+			mappedParent.close();
+			mappedName.close();
+		}
+	}
+
+	private long addDir(long parent, long name)
+	{
+		if (!paths)
+			return numDirs++;
+		if (numDirs < HEAP_DIRS)
+		{
+			if (numDirs == dirParent.length)
+			{
+				dirParent = Arrays.copyOf(dirParent, (int) numDirs * 2);
+				dirName = Arrays.copyOf(dirName, (int) numDirs * 2);
+			}
+			dirParent[(int) numDirs] = parent;
+			dirName[(int) numDirs] = name;
+		} else {
+			if (mappedParent == null)
+			{
+				mappedParent = new MappedArray(dir, 8, HEAP_DIRS);
+				mappedName = new MappedArray(dir, 8, HEAP_DIRS);
+			}
+			mappedParent.ensureCapacity(numDirs - HEAP_DIRS + 1);
+			mappedName.ensureCapacity(numDirs - HEAP_DIRS + 1);
+			mappedParent.putLong(numDirs - HEAP_DIRS, parent);
+			mappedName.putLong(numDirs - HEAP_DIRS, name);
+		}
+		return numDirs++;
+	}
+
+	private long getDirParent(long i)
+	{
+		return (i < HEAP_DIRS) ? dirParent[(int) i] : mappedParent.getLong(i - HEAP_DIRS);
+	}
+
+	private long getDirName(long i)
+	{
+		return (i < HEAP_DIRS) ? dirName[(int) i] : mappedName.getLong(i - HEAP_DIRS);
+	}
+
+	/* Builds the path of directory dir at the end of path[], e.g. "/0/1/2/" */
+	private void setPath(long dir)
+	{
+		if (dir == pathDir)
+			return;
+		int pos = path.length;
+		path[--pos] = '/';
+		for (long i = dir; i != -1; i = getDirParent(i))
+		{
+			if (pos < 21)
+			{
+				char[] longer = new char[path.length * 2];
+				System.arraycopy(path, pos, longer, longer.length - (path.length - pos), path.length - pos);
+				pos += longer.length - path.length;
+				path = longer;
+			}
+			long v = getDirName(i);
+			do {
+				path[--pos] = (char) ('0' + v % 10);
+				v = v / 10;
+			} while (v != 0);
+			path[--pos] = '/';
+		}
+		pathStart = pos;
+		pathDir = dir;
+	}
+
+	private boolean readBlock() throws IOException
+	{
+		try {
+			records = in.readInt();
+		} catch (EOFException e) {
+			return false;
+		}
+		int parentsLength = in.readInt(), namesLength = in.readInt(), stampsLength = in.readInt(), sizesLength = in.readInt();
+		if (kinds.length < records)
+			kinds = new byte[records];
+		in.readFully(kinds, 0, records);
+		parents.read(in, parentsLength);
+		names.read(in, namesLength);
+		stamps.read(in, stampsLength);
+		sizes.read(in, sizesLength);
+		record = 0;
+		parent = 0;
+		stamp = 0;
+		return records > 0 || readBlock();
+	}
+
+	private static long unzigzag(long v)
+	{
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/* A column of a block, read a varint at a time, see BinaryNamespaceWriter.Column */
+	private static class Column {
+		byte[] bytes = new byte[0];
+		int pos = 0;
+
+		void read(DataInputStream in, int n) throws IOException
+		{
+			if (bytes.length < n)
+				bytes = new byte[n];
+			in.readFully(bytes, 0, n);
+			pos = 0;
+		}
+
+		long readVarLong()
+		{
+			long v = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[pos++];
+				v |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return v;
+		}
+	}
+}
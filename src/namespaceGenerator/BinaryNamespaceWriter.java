@@ -0,0 +1,211 @@
+package namespaceGenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/*
+ * Writes the namespace in a compact binary format, read back by BinaryNamespaceReader. Instead of the path of
+ * each entry, a record keeps the id of its parent directory, the directories being numbered in the order they
+ * are written (the root is 0); the paths are rebuilt by the reader. The records are written in blocks of up to
+ * BLOCK_RECORDS records, and each block keeps its fields in separate columns:
+ *
+ *   header:  int MAGIC, int VERSION, long last stamp of the namespace (-1 when not known; not in version 1)
+ *   block:   int records, int bytes of parents, names, stamps and sizes, then the columns:
+ *            kinds    one byte per record: DIR, FILE or OTHER_SHARD_DIR
+ *            parents  zigzag varint, the difference with the parent of the previous record (the root has -1)
+ *            names    varint
+ *            stamps   zigzag varint, the difference with the stamp of the previous record
+ *            sizes    zigzag varint, files only
+ *
+ * The differences start from 0 in each block, so that the blocks can be decoded on their own; the file ends
+ * after its last block. All the directories are written, including those of other shards (OTHER_SHARD_DIR),
+ * which the files and subdirectories of the shard need as parents. Not thread safe.
+ */
+public class BinaryNamespaceWriter implements NamespaceSink, Closeable {
+	public static final int MAGIC = 0x4D4E5342; // "MNSB"
+	public static final int VERSION = 2;
+	public static final int BLOCK_RECORDS = 1 << 16;
+	public static final byte DIR = 0;
+	public static final byte FILE = 1;
+	public static final byte OTHER_SHARD_DIR = 2;
+	private static final int BATCH = 256; // files whose attributes are read at once, as in NamespaceRecordEncoder
+
+	private NamespaceStore store;
+	private OutputStream out;
+	private boolean started = false;
+	private long lastStampInSnapshot = -1;
+	private long[] levelStart; // id of the first directory at each depth
+	private int depth = -1; // of the last directory written
+	private long nextDir = 0; // id of the next directory
+	private long lastDir = -1; // handle of the last directory written, and its id
+	private long lastDirId = -1;
+
+	// the block being written
+	private int records = 0;
+	private long lastParent, lastStamp;
+	private byte[] kinds = new byte[BLOCK_RECORDS];
+	private Column parents = new Column();
+	private Column names = new Column();
+	private Column stamps = new Column();
+	private Column sizes = new Column();
+	private byte[] header = new byte[20];
+
+	private long[] batchStamps = new long[BATCH];
+	private long[] batchNames = new long[BATCH];
+	private long[] batchSizes = new long[BATCH];
+
+	public BinaryNamespaceWriter(NamespaceStore store, OutputStream out)
+	{
+		this.store = store;
+		this.out = out;
+		this.levelStart = new long[store.getMaxDepth()];
+	}
+
+	@Override
+	public void setLastStamp(long lastStamp)
+	{
+		if (started)
+			throw new IllegalStateException("The last stamp must be given before the namespace is written.");
+		this.lastStampInSnapshot = lastStamp;
+	}
+
+	@Override
+	public void writeDir(long dir, boolean inShard) throws IOException
+	{
+		long index = store.getDirIndex(dir), parent = store.getDirParent(dir);
+		if (index == 0) // the first directory of the next level
+		{
+			depth += 1;
+			levelStart[depth] = nextDir;
+		}
+		lastDir = dir;
+		lastDirId = nextDir++;
+		add(inShard ? DIR : OTHER_SHARD_DIR, (parent == -1) ? -1 : levelStart[depth - 1] + store.getDirIndex(parent),
+				store.getDirName(dir), store.getDirCreationStamp(dir), 0);
+	}
+
+	/* The files are read in batches, see NamespaceRecordEncoder.writeFiles() */
+	@Override
+	public void writeFiles(long dir, int numFiles) throws IOException
+	{
+		long file;
+		if (numFiles == 0)
+			return;
+		if (dir != lastDir)
+			throw new IllegalStateException("The files of a directory must follow the directory.");
+		for (int k = 0; k < numFiles; k += BATCH)
+		{
+			int len = Math.min(BATCH, numFiles - k);
+			for (int i = 0; i < len; i++)
+			{
+				file = store.getChildFile(dir, k + i);
+				batchStamps[i] = store.getFileCreationStamp(file);
+				batchNames[i] = store.getFileName(file);
+				batchSizes[i] = store.getFileSize(file);
+			}
+			for (int i = 0; i < len; i++)
+				add(FILE, lastDirId, batchNames[i], batchStamps[i], batchSizes[i]);
+		}
+	}
+
+	/* Writes out the block being written, which ends it */
+	@Override
+	public void flush() throws IOException
+	{
+		start();
+		if (records > 0)
+			writeBlock();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		flush();
+		out.close();
+	}
+
+	private void add(byte kind, long parent, long name, long stamp, long size) throws IOException
+	{
+		kinds[records++] = kind;
+		parents.putVarLong(zigzag(parent - lastParent));
+		names.putVarLong(name);
+		stamps.putVarLong(zigzag(stamp - lastStamp));
+		if (kind == FILE)
+			sizes.putVarLong(zigzag(size));
+		lastParent = parent;
+		lastStamp = stamp;
+		if (records == BLOCK_RECORDS)
+			writeBlock();
+	}
+
+	private void start() throws IOException
+	{
+		if (started)
+			return;
+		putInt(header, 0, MAGIC);
+		putInt(header, 4, VERSION);
+		putInt(header, 8, (int) (lastStampInSnapshot >>> 32));
+		putInt(header, 12, (int) lastStampInSnapshot);
+		out.write(header, 0, 16);
+		started = true;
+	}
+
+	private void writeBlock() throws IOException
+	{
+		start();
+		putInt(header, 0, records);
+		putInt(header, 4, parents.length);
+		putInt(header, 8, names.length);
+		putInt(header, 12, stamps.length);
+		putInt(header, 16, sizes.length);
+		out.write(header, 0, 20);
+		out.write(kinds, 0, records);
+		parents.writeTo(out);
+		names.writeTo(out);
+		stamps.writeTo(out);
+		sizes.writeTo(out);
+		records = 0;
+		lastParent = 0;
+		lastStamp = 0;
+	}
+
+	static long zigzag(long v)
+	{
+		return (v << 1) ^ (v >> 63);
+	}
+
+	static void putInt(byte[] b, int n, int v)
+	{
+		b[n] = (byte) (v >>> 24);
+		b[n + 1] = (byte) (v >>> 16);
+		b[n + 2] = (byte) (v >>> 8);
+		b[n + 3] = (byte) v;
+	}
+
+	/* A growing column of varints: 7 bits per byte, low bits first, the high bit set on all bytes but the last */
+	private static class Column {
+		byte[] bytes = new byte[BLOCK_RECORDS * 2];
+		int length = 0;
+
+		void putVarLong(long v)
+		{
+			if (length + 10 > bytes.length)
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			while ((v & ~0x7FL) != 0)
+			{
+				bytes[length++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			bytes[length++] = (byte) v;
+		}
+
+		void writeTo(OutputStream out) throws IOException
+		{
+			out.write(bytes, 0, length);
+			length = 0;
+		}
+	}
+}
@@ -0,0 +1,530 @@
+package namespaceGenerator;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Namespace store that keeps the namespace in parallel primitive arrays (one array per attribute) instead of
+ * one object per entry. Handles are indices into these arrays. Entries are created level by level, so the
+ * directories (and the files) at each depth are a contiguous range of indices and the depth of an entry is not
+ * stored. The files of each directory are reached through a contiguous range of childFiles, which is built the
+ * first time it is needed. Directories take 20 bytes each and files 28 bytes each, including the childFiles index.
+ * The files can be dropped once written out (see discardFiles()), which is how the namespace is streamed.
+ */
+public class CompactNamespaceStore implements NamespaceStore {
+	private int maxDepth;
+
+	// Directories; directories are always created with a creation stamp of 0
+	private int numDirs = 0;
+	private int[] dirParent;
+	private int[] dirName;
+	private int[] dirSubdirs; // number of subdirectories of each directory
+	private int[] dirFiles; // number of files of each directory
+	private int[] dirDepthStart; // dirDepthStart[d] = index of the first directory at depth d, for d <= lastDirDepth
+	private int lastDirDepth = 0;
+
+	// Files; file handles keep growing when the files are discarded, the columns hold the files from fileBase on
+	private long numFiles = 0;
+	private long fileBase = 0;
+	private int[] fileParent;
+	private int[] fileName;
+	private long[] fileStamp;
+	private long[] fileSize;
+	private long[] fileDepthStart; // fileDepthStart[d] = handle of the first file at depth d, for d <= lastFileDepth
+	private int lastFileDepth = 0;
+
+	// The kept files of directory i are childFiles[firstChildFile[i]] ... childFiles[firstChildFile[i + 1] - 1]
+	private int[] firstChildFile = null;
+	private volatile int[] childFiles = null; // built on demand, see indexChildFiles()
+	private boolean renamed = false; // some files were renamed, see setFileName(), so their names are not their slots
+
+	/*
+	 * 		initializing the File System.
+	 * 			Depth 0 is root.
+	 * 			Depth 1 is: user, project, other.
+	 * 		expectedDirs and expectedFiles are only used to size the arrays.
+	 */
+	public CompactNamespaceStore(int maxDepth, long expectedDirs, long expectedFiles)
+	{
+		this.maxDepth = maxDepth;
+		int dirs = capacity(expectedDirs + 4);
+		int files = capacity(expectedFiles);
+		dirParent = new int[dirs];
+		dirName = new int[dirs];
+		dirSubdirs = new int[dirs];
+		dirFiles = new int[dirs];
+		dirDepthStart = new int[maxDepth];
+		fileParent = new int[files];
+		fileName = new int[files];
+		fileStamp = new long[files];
+		fileSize = new long[files];
+		Arrays.fill(fileSize, -1);
+		fileDepthStart = new long[maxDepth];
+
+		dirParent[0] = -1;
+		for (int i = 1; i <= 3; i++) // user, projects and other are not counted as children of the root
+		{
+			dirParent[i] = 0;
+			dirName[i] = i;
+		}
+		dirDepthStart[1] = 1;
+		lastDirDepth = 1;
+		numDirs = 4;
+	}
+
+	private static int capacity(long n)
+	{
+		if (n > Integer.MAX_VALUE - 8)
+			throw new UnsupportedOperationException("CompactNamespaceStore cannot hold more than " + (Integer.MAX_VALUE - 8) + " directories or files; requested " + n);
+		return (int) Math.max(n, 16);
+	}
+
+	private static int grow(int length)
+	{
+		return capacity(length + (length >> 1) + 1L);
+	}
+
+	private void ensureDirCapacity()
+	{
+		ensureDirCapacity(numDirs + 1L);
+	}
+
+	private void ensureDirCapacity(long needed)
+	{
+		if (needed <= dirParent.length)
+			return;
+		int n = Math.max(grow(dirParent.length), capacity(needed));
+		dirParent = Arrays.copyOf(dirParent, n);
+		dirName = Arrays.copyOf(dirName, n);
+		dirSubdirs = Arrays.copyOf(dirSubdirs, n);
+		dirFiles = Arrays.copyOf(dirFiles, n);
+	}
+
+	private void ensureFileCapacity()
+	{
+		ensureFileCapacity(numFiles - fileBase + 1);
+	}
+
+	private void ensureFileCapacity(long needed)
+	{
+		if (needed <= fileParent.length)
+			return;
+		int old = fileParent.length;
+		int n = Math.max(grow(old), capacity(needed));
+		fileParent = Arrays.copyOf(fileParent, n);
+		fileName = Arrays.copyOf(fileName, n);
+		fileStamp = Arrays.copyOf(fileStamp, n);
+		fileSize = Arrays.copyOf(fileSize, n);
+		Arrays.fill(fileSize, old, n, -1);
+	}
+
+	/* Returns the depth of a directory, i.e., the last depth whose range starts at or before it */
+	private int depthOfDir(int dir)
+	{
+		int lo = 0, hi = lastDirDepth, mid;
+		while (lo < hi)
+		{
+			mid = (lo + hi + 1) >>> 1;
+			if (dirDepthStart[mid] <= dir)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return lo;
+	}
+
+	private int childDepth(int parent)
+	{
+		if (parent < 0 || parent >= numDirs)
+			throw new IllegalArgumentException("No such directory: " + parent);
+		int d = depthOfDir(parent) + 1;
+		if (d >= maxDepth)
+			throw new IllegalArgumentException("Cannot create entries deeper than " + (maxDepth - 1));
+		return d;
+	}
+
+	@Override
+	public int getMaxDepth() {
+		return this.maxDepth;
+	}
+
+	@Override
+	public long getNumDirs() {
+		return this.numDirs;
+	}
+
+	@Override
+	public long getNumFiles() {
+		return this.numFiles;
+	}
+
+	@Override
+	public long addDir(long parent) {
+		int p = (int) parent;
+		int d = childDepth(p);
+		if (d < lastDirDepth)
+			throw new IllegalStateException("Directories must be created level by level; depth " + d + " after depth " + lastDirDepth);
+		if (dirFiles[p] > 0)
+			throw new UnsupportedOperationException("Cannot add a subdirectory to a directory that already has files.");
+		for (; lastDirDepth < d; lastDirDepth++)
+			dirDepthStart[lastDirDepth + 1] = numDirs;
+		ensureDirCapacity();
+		dirSubdirs[p] += 1;
+		dirParent[numDirs] = p;
+		dirName[numDirs] = dirSubdirs[p] + dirFiles[p];
+		return numDirs++;
+	}
+
+	@Override
+	public long addFile(long parent) {
+		int p = (int) parent;
+		int d = childDepth(p);
+		if (d < lastFileDepth)
+			throw new IllegalStateException("Files must be created level by level; depth " + d + " after depth " + lastFileDepth);
+		for (; lastFileDepth < d; lastFileDepth++)
+			fileDepthStart[lastFileDepth + 1] = numFiles;
+		ensureFileCapacity();
+		dirFiles[p] += 1;
+		int f = (int) (numFiles - fileBase);
+		fileParent[f] = p;
+		fileName[f] = dirSubdirs[p] + dirFiles[p];
+		fileStamp[f] = 0;
+		fileSize[f] = -1;
+		childFiles = null;
+		return numFiles++;
+	}
+
+	@Override
+	public long reserveDirs(int depth, long n) {
+		if (depth < 1 || depth >= maxDepth)
+			throw new IllegalArgumentException("Cannot create directories at depth " + depth);
+		if (depth < lastDirDepth)
+			throw new IllegalStateException("Directories must be created level by level; depth " + depth + " after depth " + lastDirDepth);
+		for (; lastDirDepth < depth; lastDirDepth++)
+			dirDepthStart[lastDirDepth + 1] = numDirs;
+		ensureDirCapacity(numDirs + n);
+		long first = numDirs - dirDepthStart[depth];
+		numDirs += (int) n;
+		return first;
+	}
+
+	@Override
+	public long createDir(int depth, long i, long parent) {
+		int p = (int) parent;
+		if (childDepth(p) != depth)
+			throw new IllegalArgumentException("Directory " + parent + " is not at depth " + (depth - 1));
+		long dir = dirDepthStart[depth] + i;
+		if (i < 0 || dir >= ((depth == lastDirDepth) ? numDirs : dirDepthStart[depth + 1]))
+			throw new IllegalArgumentException("No reserved directory " + i + " at depth " + depth);
+		if (dirFiles[p] > 0)
+			throw new UnsupportedOperationException("Cannot add a subdirectory to a directory that already has files.");
+		dirSubdirs[p] += 1;
+		dirParent[(int) dir] = p;
+		dirName[(int) dir] = dirSubdirs[p] + dirFiles[p];
+		return dir;
+	}
+
+	@Override
+	public long reserveFiles(int depth, long n) {
+		if (depth < 1 || depth >= maxDepth)
+			throw new IllegalArgumentException("Cannot create files at depth " + depth);
+		if (depth < lastFileDepth)
+			throw new IllegalStateException("Files must be created level by level; depth " + depth + " after depth " + lastFileDepth);
+		for (; lastFileDepth < depth; lastFileDepth++)
+			fileDepthStart[lastFileDepth + 1] = numFiles;
+		ensureFileCapacity(numFiles - fileBase + n);
+		long first = numFiles - fileDepthStart[depth];
+		numFiles += n;
+		childFiles = null;
+		return first;
+	}
+
+	@Override
+	public long createFile(int depth, long i, long parent) {
+		int p = (int) parent;
+		if (childDepth(p) != depth)
+			throw new IllegalArgumentException("Directory " + parent + " is not at depth " + (depth - 1));
+		long file = fileDepthStart[depth] + i;
+		if (i < 0 || file >= ((depth == lastFileDepth) ? numFiles : fileDepthStart[depth + 1]))
+			throw new IllegalArgumentException("No reserved file " + i + " at depth " + depth);
+		int f = slot(file);
+		dirFiles[p] += 1;
+		fileParent[f] = p;
+		fileName[f] = dirSubdirs[p] + dirFiles[p];
+		fileStamp[f] = 0;
+		fileSize[f] = -1;
+		return file;
+	}
+
+	/* Copies the columns of the level, moving the handles of the parents by the shift of their level */
+	@Override
+	public void copyDirs(NamespaceStore from, int depth) {
+		CompactNamespaceStore s = (CompactNamespaceStore) from;
+		int n = (int) s.getNumDirsAtDepth(depth);
+		if (depth < 2 || n > getNumDirsAtDepth(depth))
+			throw new IllegalArgumentException("Cannot copy " + n + " directories at depth " + depth + " into " + getNumDirsAtDepth(depth));
+		int src = s.dirDepthStart[depth], dst = dirDepthStart[depth];
+		int shift = dirDepthStart[depth - 1] - s.dirDepthStart[depth - 1];
+		for (int k = 0; k < n; k++)
+			dirParent[dst + k] = s.dirParent[src + k] + shift;
+		System.arraycopy(s.dirName, src, dirName, dst, n);
+		System.arraycopy(s.dirSubdirs, s.dirDepthStart[depth - 1], dirSubdirs, dirDepthStart[depth - 1], (int) s.getNumDirsAtDepth(depth - 1));
+	}
+
+	@Override
+	public void copyFiles(NamespaceStore from, int depth) {
+		CompactNamespaceStore s = (CompactNamespaceStore) from;
+		int n = (int) s.getNumFilesAtDepth(depth);
+		if (depth < 1 || n > getNumFilesAtDepth(depth))
+			throw new IllegalArgumentException("Cannot copy " + n + " files at depth " + depth + " into " + getNumFilesAtDepth(depth));
+		if (s.fileBase > 0)
+			throw new IllegalArgumentException("Cannot copy the files of a store that discarded some");
+		int src = (int) s.fileDepthStart[depth], dst = (int) (fileDepthStart[depth] - fileBase);
+		int shift = dirDepthStart[depth - 1] - s.dirDepthStart[depth - 1];
+		for (int k = 0; k < n; k++)
+			fileParent[dst + k] = s.fileParent[src + k] + shift;
+		System.arraycopy(s.fileName, src, fileName, dst, n);
+		System.arraycopy(s.fileStamp, src, fileStamp, dst, n);
+		System.arraycopy(s.fileSize, src, fileSize, dst, n);
+		System.arraycopy(s.dirFiles, s.dirDepthStart[depth - 1], dirFiles, dirDepthStart[depth - 1], (int) s.getNumDirsAtDepth(depth - 1));
+		renamed |= s.renamed;
+		childFiles = null;
+	}
+
+	@Override
+	public long getNumDirsAtDepth(int depth) {
+		if (depth > lastDirDepth)
+			return 0;
+		return ((depth == lastDirDepth) ? numDirs : dirDepthStart[depth + 1]) - dirDepthStart[depth];
+	}
+
+	@Override
+	public long getDirAtDepth(int depth, long i) {
+		return dirDepthStart[depth] + i;
+	}
+
+	@Override
+	public long getDirIndex(long dir) {
+		return dir - dirDepthStart[depthOfDir((int) dir)];
+	}
+
+	@Override
+	public long getNumFilesAtDepth(int depth) {
+		if (depth > lastFileDepth)
+			return 0;
+		return ((depth == lastFileDepth) ? numFiles : fileDepthStart[depth + 1]) - fileDepthStart[depth];
+	}
+
+	@Override
+	public long getFileAtDepth(int depth, long i) {
+		return fileDepthStart[depth] + i;
+	}
+
+	@Override
+	public long getFileIndex(long file) {
+		int lo = 0, hi = lastFileDepth, mid;
+		while (lo < hi) // the last depth whose range starts at or before the file
+		{
+			mid = (lo + hi + 1) >>> 1;
+			if (fileDepthStart[mid] <= file)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return file - fileDepthStart[lo];
+	}
+
+	@Override
+	public long getDirName(long dir) {
+		return dirName[(int) dir];
+	}
+
+	@Override
+	public long getDirParent(long dir) {
+		return dirParent[(int) dir];
+	}
+
+	@Override
+	public long getDirCreationStamp(long dir) {
+		return 0;
+	}
+
+	@Override
+	public int getNumSubdirs(long dir) {
+		return dirSubdirs[(int) dir];
+	}
+
+	@Override
+	public int getNumChildFiles(long dir) {
+		return dirFiles[(int) dir];
+	}
+
+	@Override
+	public long getChildFile(long dir, int k) {
+		int[] index = childFiles;
+		if (index == null)
+			index = indexChildFiles();
+		return fileBase + index[firstChildFile[(int) dir] + k];
+	}
+
+	/*
+	 * The files of a directory are named after its subdirectories, in creation order, so the name gives the slot.
+	 * Built by the first reader; childFiles is set last, so that readers on other threads see a complete index.
+	 */
+	private synchronized int[] indexChildFiles()
+	{
+		if (childFiles != null)
+			return childFiles;
+		int p, n = (int) (numFiles - fileBase);
+		firstChildFile = new int[numDirs + 1];
+		for (int f = 0; f < n; f++)
+			firstChildFile[fileParent[f] + 1] += 1;
+		for (int i = 0; i < numDirs; i++)
+			firstChildFile[i + 1] += firstChildFile[i];
+		int[] index = new int[n];
+		if (renamed)
+			indexRenamedChildFiles(index);
+		else {
+			for (int f = 0; f < n; f++)
+			{
+				p = fileParent[f];
+				index[firstChildFile[p] + fileName[f] - dirSubdirs[p] - 1] = f;
+			}
+		}
+		childFiles = index;
+		return index;
+	}
+
+	/* Same as indexChildFiles() once the files may have been renamed: the files of each directory are sorted by name */
+	private void indexRenamedChildFiles(int[] index)
+	{
+		int n = index.length;
+		int[] next = Arrays.copyOf(firstChildFile, numDirs);
+		for (int f = 0; f < n; f++)
+			index[next[fileParent[f]]++] = f;
+		long[] keys = new long[16];
+		int lo, hi, k;
+		for (int i = 0; i < numDirs; i++)
+		{
+			lo = firstChildFile[i];
+			hi = firstChildFile[i + 1];
+			for (k = lo + 1; k < hi && fileName[index[k - 1]] < fileName[index[k]]; k++)
+				;
+			if (k >= hi) // already in name order
+				continue;
+			if (keys.length < hi - lo)
+				keys = new long[hi - lo];
+			for (k = lo; k < hi; k++)
+				keys[k - lo] = ((long) fileName[index[k]] << 32) | index[k];
+			Arrays.sort(keys, 0, hi - lo);
+			for (k = lo; k < hi; k++)
+				index[k] = (int) keys[k - lo];
+		}
+	}
+
+	/*
+	 * Drops the files created so far, keeping the number of files of each directory and at each depth. The
+	 * handles of the dropped files become invalid and their columns are reused by the files created afterwards.
+	 */
+	public void discardFiles()
+	{
+		fileBase = numFiles;
+		childFiles = null;
+		firstChildFile = null;
+	}
+
+	private int slot(long file)
+	{
+		if (file < fileBase || file >= numFiles)
+			throw new IllegalArgumentException("No such file: " + file + (file < fileBase ? " (discarded)" : ""));
+		return (int) (file - fileBase);
+	}
+
+	@Override
+	public long getFileName(long file) {
+		return fileName[slot(file)];
+	}
+
+	@Override
+	public void setFileName(long file, long name) {
+		fileName[slot(file)] = (int) name;
+		renamed = true;
+		childFiles = null;
+	}
+
+	@Override
+	public long getFileParent(long file) {
+		return fileParent[slot(file)];
+	}
+
+	@Override
+	public long getFileCreationStamp(long file) {
+		return fileStamp[slot(file)];
+	}
+
+	@Override
+	public void setFileCreationStamp(long file, long stamp) {
+		fileStamp[slot(file)] = stamp;
+	}
+
+	@Override
+	public long getFileSize(long file) {
+		long size = fileSize[slot(file)];
+		if (size < 0)
+			throw new IllegalStateException("Method getSize() cannot be called for file " + fileName[slot(file)] + " because size has not been set yet.");
+		return size;
+	}
+
+	@Override
+	public void setFileSize(long file, long size) {
+		if (size < 0)
+			throw new IllegalArgumentException("File size cannot be negative: size(" + fileName[slot(file)] + ") = " + size);
+		fileSize[slot(file)] = size;
+	}
+
+	/* Sorts the kept files at each depth by creation stamp (ties keep creation order), moving the columns in place */
+	@Override
+	public void sortFilesByCreationStamp(ForkJoinPool pool) {
+		this.sortFilesByCreationStamp(pool, new long[maxDepth]);
+	}
+
+	@Override
+	public void sortFilesByCreationStamp(ForkJoinPool pool, long[] from) {
+		int start, n, skip;
+		int[] perm, tmp;
+		for (int d = 0; d <= lastFileDepth; d++)
+		{
+			if (fileDepthStart[d] < fileBase)
+				continue;
+			skip = (int) Math.min(from[d], getNumFilesAtDepth(d));
+			start = (int) (fileDepthStart[d] - fileBase) + skip;
+			n = (int) getNumFilesAtDepth(d) - skip;
+			if (n < 2)
+				continue;
+			perm = CreationStampSort.order(Arrays.copyOfRange(fileStamp, start, start + n), pool);
+			for (int i = 0; i < n; i++)
+				perm[i] += start;
+			tmp = new int[n];
+			permute(fileParent, perm, tmp, start);
+			permute(fileName, perm, tmp, start);
+			long[] ltmp = new long[n];
+			permute(fileStamp, perm, ltmp, start);
+			permute(fileSize, perm, ltmp, start);
+		}
+		childFiles = null;
+	}
+
+	private static void permute(int[] column, int[] perm, int[] tmp, int start)
+	{
+		for (int i = 0; i < perm.length; i++)
+			tmp[i] = column[perm[i]];
+		System.arraycopy(tmp, 0, column, start, perm.length);
+	}
+
+	private static void permute(long[] column, int[] perm, long[] tmp, int start)
+	{
+		for (int i = 0; i < perm.length; i++)
+			tmp[i] = column[perm[i]];
+		System.arraycopy(tmp, 0, column, start, perm.length);
+	}
+}
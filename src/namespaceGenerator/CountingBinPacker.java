@@ -0,0 +1,211 @@
+package namespaceGenerator;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import randomGenerator.LongRandomGenerator;
+
+/*
+ * Packing on primitive arrays. The sizes of the objects are bounded by the largest key of the size distribution,
+ * so they are sorted by counting how many objects there are of each size. The bins are kept ordered by free
+ * capacity, so the worst fit is found at the top of that order instead of by scanning every bin. Packs exactly
+ * like LegacyBinPacker, including the ties and the random numbers drawn: given the same random numbers both
+ * return the same depths. With a scratch directory, the depths of the objects are kept in a MappedArray, for the
+ * namespaces kept in MappedNamespaceStore, and there can be more than 2^31 objects. An object that fits in no bin
+ * is an IllegalStateException, where LegacyBinPacker stops the JVM.
+ */
+public class CountingBinPacker implements BinPacker {
+	private int[] order; // bin indices by free capacity, descending
+	private int[] position; // position[b] = position of bin b in order
+	private File dir = null; // of the scratch files, null to keep the depths in the heap
+
+	public CountingBinPacker()
+	{
+	}
+
+	public CountingBinPacker(File dir)
+	{
+		this.dir = dir;
+	}
+
+	@Override
+	public BinPacking pack(int[] bins, long targetObjects, LongRandomGenerator gen, LongRandomGenerator depthGen,
+			Random random, boolean packDirs) {
+
+		// 1) Generate target objects; count how many objects there are of each size
+		long n = targetObjects;
+		long[] histogram = new long[64];
+		long allocatedObjects = 0;
+		int numObjects;
+		long i;
+
+		for (i = 0; i < n; i++)
+		{
+			numObjects = (int) gen.nextLong();
+			allocatedObjects += numObjects;
+			if (allocatedObjects > targetObjects)
+			{
+				allocatedObjects -= numObjects;
+				numObjects = (int) (targetObjects - allocatedObjects);
+				allocatedObjects += numObjects;
+				i += 1; //the remaining objects are left empty
+				histogram = count(histogram, numObjects);
+				break;
+			}
+			histogram = count(histogram, numObjects);
+		}
+		histogram[0] += n - i;
+
+		// 2) Sort, descending: one run per size
+		int runs = 0;
+		for (int s = 0; s < histogram.length; s++)
+			if (histogram[s] > 0)
+				runs += 1;
+		int[] runSize = new int[runs];
+		long[] runEnd = new long[runs];
+		long end = 0;
+		for (int s = histogram.length - 1, r = 0; s >= 0; s--)
+		{
+			if (histogram[s] == 0)
+				continue;
+			end += histogram[s];
+			runSize[r] = s;
+			runEnd[r] = end;
+			r += 1;
+		}
+
+		// 3) Pack them : assign depths to each object. try to find the worst fit!
+		byte[] depth = null;
+		MappedArray mappedDepth = null;
+		if (dir != null)
+			mappedDepth = new MappedArray(dir, 1, n);
+		else if (n > Integer.MAX_VALUE - 8)
+			throw new UnsupportedOperationException("Cannot pack more than " + (Integer.MAX_VALUE - 8) + " objects in the heap; requested " + n);
+		else
+			depth = new byte[(int) n];
+		int first = (packDirs) ? 2 : 1; //when packing bins for directories, depth 0 is root, and depth 1 is user, project, program
+		int size, worstFit, r;
+		long obj = 0;
+		this.sortBins(bins);
+		for (int run = 0; run < runs; run++)
+		{
+			size = runSize[run];
+			for (; obj < runEnd[run]; obj++)
+			{
+				if (size == 0)
+				{
+					r = (int) depthGen.nextLong();
+					worstFit = r;
+				} else {
+					// the bins are searched from (first + r) % bins.length on, skipping the first bins in that order
+					r = first + random.nextInt(bins.length - ((packDirs) ? 3 : 2));
+					worstFit = this.worstFit(bins, size, (first + r) % bins.length, r % bins.length,
+							(packDirs) ? (r + 1) % bins.length : -1);
+					if (worstFit == -1) //one last attempt; find the worst fit, even if bin is not big enough
+					{
+						r = (int) depthGen.nextLong();
+						worstFit = this.largestBin(bins, first, r);
+					}
+				}
+				if (worstFit < 0 || worstFit >= bins.length)
+					throw new IllegalStateException("Could not find target bin; worstFit = " + worstFit + " i = " + obj + "; r = " + r +
+							"; targetObjectCount[i] = " + size + " bins = " + Arrays.toString(bins));
+
+				// found a bin; decrease capacity
+				bins[worstFit] -= size;
+				this.sink(bins, worstFit);
+
+				// assign target depth to corresponding object
+				if (depth != null)
+					depth[(int) obj] = (byte) worstFit;
+				else
+					mappedDepth.putByte(obj, (byte) worstFit);
+			}
+		}
+		return (depth != null) ? new BinPacking(runSize, runEnd, depth) : new BinPacking(runSize, runEnd, mappedDepth, n, dir);
+	}
+
+	private static long[] count(long[] histogram, int size)
+	{
+		if (size >= histogram.length)
+			histogram = Arrays.copyOf(histogram, Math.max(size + 1, 2 * histogram.length));
+		histogram[size] += 1;
+		return histogram;
+	}
+
+	private void sortBins(int[] bins)
+	{
+		int b, k;
+		order = new int[bins.length];
+		position = new int[bins.length];
+		for (int i = 0; i < bins.length; i++)
+		{
+			b = i;
+			for (k = i; k > 0 && bins[order[k - 1]] < bins[b]; k--)
+				order[k] = order[k - 1];
+			order[k] = b;
+		}
+		for (k = 0; k < bins.length; k++)
+			position[order[k]] = k;
+	}
+
+	/* Moves bin b down the order after its free capacity decreased */
+	private void sink(int[] bins, int b)
+	{
+		int k = position[b];
+		while (k + 1 < order.length && bins[order[k + 1]] > bins[b])
+		{
+			order[k] = order[k + 1];
+			position[order[k]] = k;
+			k += 1;
+		}
+		order[k] = b;
+		position[b] = k;
+	}
+
+	/*
+	 * The bin with the most free capacity, if it has room for size; skip1 and skip2 are not considered. Ties go to
+	 * the first bin in the circular order that starts at bin start. Returns -1 if no bin has room.
+	 */
+	private int worstFit(int[] bins, int size, int start, int skip1, int skip2)
+	{
+		int best = -1, b;
+		for (int k = 0; k < order.length; k++)
+		{
+			b = order[k];
+			if (b == skip1 || b == skip2)
+				continue;
+			if (best == -1)
+				best = b;
+			else if (bins[b] < bins[best])
+				break;
+			else if ((b - start + bins.length) % bins.length < (best - start + bins.length) % bins.length)
+				best = b;
+		}
+		if (best == -1 || bins[best] <= 0 || bins[best] < size)
+			return -1;
+		return best;
+	}
+
+	/* The lowest bin from first on with the most free capacity, unless bin r has as much */
+	private int largestBin(int[] bins, int first, int r)
+	{
+		int best = -1, b;
+		for (int k = 0; k < order.length; k++)
+		{
+			b = order[k];
+			if (b < first)
+				continue;
+			if (best == -1)
+				best = b;
+			else if (bins[b] < bins[best])
+				break;
+			else if (b < best)
+				best = b;
+		}
+		if (r < 0 || r >= bins.length || best == -1 || bins[best] <= bins[r])
+			return r;
+		return best;
+	}
+}
@@ -0,0 +1,88 @@
+package namespaceGenerator;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Sorts the files of a level by creation stamp, for NamespaceStore.sortFilesByCreationStamp(): order() returns the
+ * positions 0 .. n - 1 of the files in the level, ordered by stamp, and by position for equal stamps, so that the
+ * order is the same on every run and in every store. Each stamp and its position are packed in one long,
+ * (stamp - smallest stamp) << bits | position, and the longs are sorted with Arrays.parallelSort() on the threads
+ * of the pool; when the range of the stamps is too wide for that, the positions are merge sorted by stamp.
+ */
+public class CreationStampSort extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+	private long[] keys;
+
+	private CreationStampSort(long[] keys)
+	{
+		this.keys = keys;
+	}
+
+	@Override
+	protected void compute() {
+		Arrays.parallelSort(keys); // forks into the pool running this task
+	}
+
+	public static int[] order(long[] stamps, ForkJoinPool pool)
+	{
+		int n = stamps.length;
+		int[] order = new int[n];
+		if (n == 0)
+			return order;
+		long min = stamps[0], max = stamps[0];
+		for (int i = 1; i < n; i++)
+		{
+			min = Math.min(min, stamps[i]);
+			max = Math.max(max, stamps[i]);
+		}
+		int bits = 32 - Integer.numberOfLeadingZeros(Math.max(n - 1, 1)); // of a position
+		long range = max - min;
+		if (range < 0 || 64 - Long.numberOfLeadingZeros(range) + bits > 63) // overflows
+		{
+			for (int i = 0; i < n; i++)
+				order[i] = i;
+			mergeSort(stamps, order, new int[n], 0, n);
+			return order;
+		}
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = (stamps[i] - min) << bits | i;
+		pool.invoke(new CreationStampSort(keys));
+		long mask = (1L << bits) - 1;
+		for (int i = 0; i < n; i++)
+			order[i] = (int) (keys[i] & mask);
+		return order;
+	}
+
+	/* Stable merge sort of the positions perm[lo .. hi) by stamp */
+	private static void mergeSort(long[] stamps, int[] perm, int[] tmp, int lo, int hi)
+	{
+		int i, j, k, v;
+		if (hi - lo <= 32)
+		{
+			for (i = lo + 1; i < hi; i++)
+			{
+				v = perm[i];
+				for (j = i - 1; j >= lo && stamps[perm[j]] > stamps[v]; j--)
+					perm[j + 1] = perm[j];
+				perm[j + 1] = v;
+			}
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		mergeSort(stamps, perm, tmp, lo, mid);
+		mergeSort(stamps, perm, tmp, mid, hi);
+		if (stamps[perm[mid - 1]] <= stamps[perm[mid]])
+			return;
+		System.arraycopy(perm, lo, tmp, lo, hi - lo);
+		for (i = lo, j = mid, k = lo; k < hi; k++)
+		{
+			if (j >= hi || (i < mid && stamps[tmp[i]] <= stamps[tmp[j]]))
+				perm[k] = tmp[i++];
+			else
+				perm[k] = tmp[j++];
+		}
+	}
+}
@@ -0,0 +1,338 @@
+package namespaceGenerator;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Namespace store that keeps one HierarchicalNamespaceEntry object per directory and file, linked to its parent
+ * and children. The entries at each depth are kept in byDepthDirs and byDepthFiles. A handle is the depth of the
+ * entry in the upper 32 bits and its position in the depth level in the lower 32 bits.
+ */
+public class EntryNamespaceStore implements NamespaceStore {
+
+	public HierarchicalNamespaceEntry root = null;
+	public ArrayList<ArrayList<HierarchicalNamespaceEntry>> byDepthDirs = null; //Arrays of directories at each depth, e.g. byDepthDirs[i] = all directories at depth i
+	public ArrayList<ArrayList<HierarchicalNamespaceEntry>> byDepthFiles = null; //Arrays of files at each depth, e.g. byDepthFiles[i] = all files at depth i
+	private int maxDepth;
+	private long numDirs = 0;
+	private long numFiles = 0;
+
+	/*
+	 * 		initializing the File System.
+	 * 			Depth 0 is root.
+	 * 			Depth 1 is: user, project, other.
+	 * 			The rest is not known, just routinely initialized
+	 */
+	public EntryNamespaceStore(int maxDepth)
+	{
+		this.maxDepth = maxDepth;
+		byDepthDirs = new ArrayList<ArrayList<HierarchicalNamespaceEntry>>(maxDepth);
+		byDepthFiles = new ArrayList<ArrayList<HierarchicalNamespaceEntry>>(maxDepth);
+		for (int i = 0; i < maxDepth; i++)
+		{
+			byDepthDirs.add(i, new ArrayList<HierarchicalNamespaceEntry>());
+			byDepthFiles.add(i, new ArrayList<HierarchicalNamespaceEntry>());
+		}
+		root = new HierarchicalNamespaceEntry(0, 0, null, true);
+		this.add(byDepthDirs.get(0), root);
+		for (int i = 1; i <= 3; i++) // user, projects and other are not listed as children of the root
+			this.add(byDepthDirs.get(1), new HierarchicalNamespaceEntry(0, i, root, true));
+		numDirs = 4;
+	}
+
+	private static long handle(int depth, int index)
+	{
+		return ((long) depth << 32) | index;
+	}
+
+	private static int depth(long handle)
+	{
+		return (int) (handle >>> 32);
+	}
+
+	private HierarchicalNamespaceEntry dir(long handle)
+	{
+		return byDepthDirs.get(depth(handle)).get((int) handle);
+	}
+
+	private HierarchicalNamespaceEntry file(long handle)
+	{
+		return byDepthFiles.get(depth(handle)).get((int) handle);
+	}
+
+	private void add(ArrayList<HierarchicalNamespaceEntry> level, HierarchicalNamespaceEntry entry)
+	{
+		entry.setIndex(level.size());
+		level.add(entry);
+	}
+
+	/* Subdirectories are created before files, so the children list is all directories followed by all files */
+	private static int subdirs(ArrayList<HierarchicalNamespaceEntry> children)
+	{
+		int lo = 0, hi = children.size(), mid;
+		while (lo < hi)
+		{
+			mid = (lo + hi) >>> 1;
+			if (children.get(mid).isDir())
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	@Override
+	public int getMaxDepth() {
+		return this.maxDepth;
+	}
+
+	@Override
+	public long getNumDirs() {
+		return this.numDirs;
+	}
+
+	@Override
+	public long getNumFiles() {
+		return this.numFiles;
+	}
+
+	@Override
+	public long addDir(long parent) {
+		HierarchicalNamespaceEntry dir = this.dir(parent);
+		int d = depth(parent) + 1;
+		if (dir.getNumChildren() > subdirs(dir.getChildren()))
+			throw new UnsupportedOperationException("Cannot add a subdirectory to a directory that already has files.");
+		HierarchicalNamespaceEntry newObject = new HierarchicalNamespaceEntry(0, dir.getNumChildren() + 1, dir, true);
+		dir.addChild(newObject);
+		this.add(byDepthDirs.get(d), newObject);
+		this.numDirs += 1;
+		return handle(d, newObject.getIndex());
+	}
+
+	@Override
+	public long addFile(long parent) {
+		HierarchicalNamespaceEntry dir = this.dir(parent);
+		int d = depth(parent) + 1;
+		HierarchicalNamespaceEntry newObject = new HierarchicalNamespaceEntry(0, dir.getNumChildren() + 1, dir, false);
+		dir.addChild(newObject);
+		this.add(byDepthFiles.get(d), newObject);
+		this.numFiles += 1;
+		return handle(d, newObject.getIndex());
+	}
+
+	@Override
+	public long reserveDirs(int depth, long n) {
+		return this.reserve(byDepthDirs.get(depth), n, true);
+	}
+
+	@Override
+	public long createDir(int depth, long i, long parent) {
+		HierarchicalNamespaceEntry dir = this.dir(parent);
+		if (depth(parent) + 1 != depth)
+			throw new IllegalArgumentException("Directory " + parent + " is not at depth " + (depth - 1));
+		if (dir.getNumChildren() > subdirs(dir.getChildren()))
+			throw new UnsupportedOperationException("Cannot add a subdirectory to a directory that already has files.");
+		HierarchicalNamespaceEntry newObject = new HierarchicalNamespaceEntry(0, dir.getNumChildren() + 1, dir, true);
+		dir.addChild(newObject);
+		newObject.setIndex((int) i);
+		byDepthDirs.get(depth).set((int) i, newObject);
+		return handle(depth, (int) i);
+	}
+
+	@Override
+	public long reserveFiles(int depth, long n) {
+		return this.reserve(byDepthFiles.get(depth), n, false);
+	}
+
+	@Override
+	public long createFile(int depth, long i, long parent) {
+		HierarchicalNamespaceEntry dir = this.dir(parent);
+		if (depth(parent) + 1 != depth)
+			throw new IllegalArgumentException("Directory " + parent + " is not at depth " + (depth - 1));
+		HierarchicalNamespaceEntry newObject = new HierarchicalNamespaceEntry(0, dir.getNumChildren() + 1, dir, false);
+		dir.addChild(newObject);
+		newObject.setIndex((int) i);
+		byDepthFiles.get(depth).set((int) i, newObject);
+		return handle(depth, (int) i);
+	}
+
+	/* Appends n empty slots to the level, filled in by createDir() or createFile() */
+	private long reserve(ArrayList<HierarchicalNamespaceEntry> level, long n, boolean dirs)
+	{
+		long first = level.size();
+		if (first + n > Integer.MAX_VALUE)
+			throw new UnsupportedOperationException("EntryNamespaceStore cannot hold more than " + Integer.MAX_VALUE + " entries at one depth");
+		level.ensureCapacity((int) (first + n));
+		for (long k = 0; k < n; k++)
+			level.add(null);
+		if (dirs)
+			this.numDirs += n;
+		else
+			this.numFiles += n;
+		return first;
+	}
+
+	@Override
+	public void copyDirs(NamespaceStore from, int depth) {
+		this.copy((EntryNamespaceStore) from, depth, true);
+	}
+
+	@Override
+	public void copyFiles(NamespaceStore from, int depth) {
+		this.copy((EntryNamespaceStore) from, depth, false);
+	}
+
+	/* New entries for those of from at the depth, added to their parents in the order of the children of from */
+	private void copy(EntryNamespaceStore from, int depth, boolean dirs)
+	{
+		ArrayList<HierarchicalNamespaceEntry> level = (dirs) ? byDepthDirs.get(depth) : byDepthFiles.get(depth);
+		ArrayList<HierarchicalNamespaceEntry> parents = byDepthDirs.get(depth - 1);
+		long n = (dirs) ? from.getNumDirsAtDepth(depth) : from.getNumFilesAtDepth(depth);
+		if (depth < ((dirs) ? 2 : 1) || n > level.size())
+			throw new IllegalArgumentException("Cannot copy " + n + " entries at depth " + depth + " into " + level.size());
+		HierarchicalNamespaceEntry parent, copy;
+		for (HierarchicalNamespaceEntry dir : from.byDepthDirs.get(depth - 1))
+		{
+			parent = parents.get(dir.getIndex());
+			for (HierarchicalNamespaceEntry child : dir.getChildren())
+			{
+				if (child.isDir() != dirs)
+					continue;
+				copy = new HierarchicalNamespaceEntry(child.getCreationStamp(), child.getName(), parent, dirs);
+				if (!dirs)
+					copy.setSize(child.getSize());
+				parent.addChild(copy);
+				copy.setIndex(child.getIndex());
+				level.set(child.getIndex(), copy);
+			}
+		}
+	}
+
+	@Override
+	public long getNumDirsAtDepth(int depth) {
+		return byDepthDirs.get(depth).size();
+	}
+
+	@Override
+	public long getDirAtDepth(int depth, long i) {
+		return handle(depth, (int) i);
+	}
+
+	@Override
+	public long getDirIndex(long dir) {
+		return (int) dir;
+	}
+
+	@Override
+	public long getNumFilesAtDepth(int depth) {
+		return byDepthFiles.get(depth).size();
+	}
+
+	@Override
+	public long getFileAtDepth(int depth, long i) {
+		return handle(depth, (int) i);
+	}
+
+	@Override
+	public long getFileIndex(long file) {
+		return (int) file;
+	}
+
+	@Override
+	public long getDirName(long dir) {
+		return this.dir(dir).getName();
+	}
+
+	@Override
+	public long getDirParent(long dir) {
+		HierarchicalNamespaceEntry parent = this.dir(dir).getParent();
+		return (parent == null) ? -1 : handle(depth(dir) - 1, parent.getIndex());
+	}
+
+	@Override
+	public long getDirCreationStamp(long dir) {
+		return this.dir(dir).getCreationStamp();
+	}
+
+	@Override
+	public int getNumSubdirs(long dir) {
+		return subdirs(this.dir(dir).getChildren());
+	}
+
+	@Override
+	public int getNumChildFiles(long dir) {
+		ArrayList<HierarchicalNamespaceEntry> children = this.dir(dir).getChildren();
+		return children.size() - subdirs(children);
+	}
+
+	@Override
+	public long getChildFile(long dir, int k) {
+		ArrayList<HierarchicalNamespaceEntry> children = this.dir(dir).getChildren();
+		return handle(depth(dir) + 1, children.get(subdirs(children) + k).getIndex());
+	}
+
+	@Override
+	public long getFileName(long file) {
+		return this.file(file).getName();
+	}
+
+	@Override
+	public void setFileName(long file, long name) {
+		this.file(file).setName(name);
+	}
+
+	@Override
+	public long getFileParent(long file) {
+		return handle(depth(file) - 1, this.file(file).getParent().getIndex());
+	}
+
+	@Override
+	public long getFileCreationStamp(long file) {
+		return this.file(file).getCreationStamp();
+	}
+
+	@Override
+	public void setFileCreationStamp(long file, long stamp) {
+		this.file(file).setCreationStamp(stamp);
+	}
+
+	@Override
+	public long getFileSize(long file) {
+		return this.file(file).getSize();
+	}
+
+	@Override
+	public void setFileSize(long file, long size) {
+		this.file(file).setSize(size);
+	}
+
+	@Override
+	public void sortFilesByCreationStamp(ForkJoinPool pool) {
+		this.sortFilesByCreationStamp(pool, new long[maxDepth]);
+	}
+
+	@Override
+	public void sortFilesByCreationStamp(ForkJoinPool pool, long[] from) {
+		ArrayList<HierarchicalNamespaceEntry> level, sorted;
+		long[] stamps;
+		int[] order;
+		int start;
+		for (int i = 0; i < this.byDepthFiles.size(); i++)
+		{
+			level = this.byDepthFiles.get(i);
+			start = (int) Math.min(from[i], level.size());
+			stamps = new long[level.size() - start];
+			for (int j = 0; j < stamps.length; j++)
+				stamps[j] = level.get(start + j).getCreationStamp();
+			order = CreationStampSort.order(stamps, pool);
+			sorted = new ArrayList<HierarchicalNamespaceEntry>(level.size());
+			sorted.addAll(level.subList(0, start));
+			for (int j = 0; j < order.length; j++)
+			{
+				sorted.add(level.get(start + order[j]));
+				sorted.get(start + j).setIndex(start + j);
+			}
+			this.byDepthFiles.set(i, sorted);
+		}
+	}
+}
@@ -0,0 +1,257 @@
+package namespaceGenerator;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/*
+ * Compares the distributions of the namespace, while it is generated, with the distributions of the configuration:
+ * the directories and files at each depth once the directories and then the files have been packed, and the ages
+ * and sizes of the files once they have been drawn (see HierarchicalFileSystemGenerator.generate()). The generated
+ * values are counted in the buckets of the keys of each distribution, bucket i holding the values above key i - 1
+ * up to key i (see NamespaceStats), and for each distribution:
+ *   - ks: the Kolmogorov-Smirnov distance, the largest difference between the generated and the configured CDF at
+ *     the keys
+ *   - the relative error of each bucket, |generated - configured| / configured, as fractions of the values; the
+ *     largest one is only taken over the buckets expected to hold at least MIN_EXPECTED values, the others are
+ *     mostly noise
+ * A distribution beyond FIDELITY_MAX_KS or FIDELITY_MAX_RELATIVE_ERROR (when set) stops the generation with an
+ * IllegalStateException, as soon as it is checked. The results are written out by writeSummary(), in JSON.
+ */
+public class FidelityMonitor {
+	public static final int MIN_EXPECTED = 100;
+	private double maxKs, maxRelativeError; // 0 when not checked
+	private ArrayList<Fit> fits = new ArrayList<Fit>();
+	private PrintStream log;
+
+	/* The fit of one distribution */
+	public static class Fit {
+		private String name;
+		private long[] keys;
+		private double[] expected; // fraction of the values in each bucket
+		private long[] observed; // values in each bucket
+		private long n;
+		private double ks;
+		private double maxRelativeError; // over the buckets expected to hold MIN_EXPECTED values
+		private long maxRelativeErrorKey;
+
+		/* keys and weights as configured, in any order; observed is counted with bucket() on the sorted keys */
+		Fit(String name, long[] keys, double[] weights, long[] observed)
+		{
+			Integer[] order = new Integer[keys.length];
+			for (int i = 0; i < order.length; i++)
+				order[i] = i;
+			final long[] k = keys;
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Long.compare(k[a], k[b]);
+				}
+			});
+			double sum = 0;
+			for (int i = 0; i < weights.length; i++)
+				sum += weights[i];
+			this.name = name;
+			this.keys = new long[keys.length];
+			this.expected = new double[keys.length];
+			for (int i = 0; i < order.length; i++)
+			{
+				this.keys[i] = keys[order[i]];
+				this.expected[i] = weights[order[i]] / sum;
+			}
+			this.observed = observed;
+			for (int i = 0; i < observed.length; i++)
+				n += observed[i];
+
+			double generatedCdf = 0, configuredCdf = 0, p, error;
+			maxRelativeErrorKey = -1;
+			for (int i = 0; i < this.keys.length && n > 0; i++)
+			{
+				p = (double) observed[i] / n;
+				generatedCdf += p;
+				configuredCdf += expected[i];
+				ks = Math.max(ks, Math.abs(generatedCdf - configuredCdf));
+				if (expected[i] * n >= MIN_EXPECTED)
+				{
+					error = Math.abs(p - expected[i]) / expected[i];
+					if (error > maxRelativeError || maxRelativeErrorKey == -1)
+					{
+						maxRelativeError = error;
+						maxRelativeErrorKey = this.keys[i];
+					}
+				}
+			}
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		/* The number of generated values */
+		public long getN()
+		{
+			return n;
+		}
+
+		public double getKs()
+		{
+			return ks;
+		}
+
+		public double getMaxRelativeError()
+		{
+			return maxRelativeError;
+		}
+
+		/* The key of the bucket with the largest relative error; -1 if no bucket is expected to hold MIN_EXPECTED values */
+		public long getMaxRelativeErrorKey()
+		{
+			return maxRelativeErrorKey;
+		}
+
+		/* The relative error of bucket i; NaN for a bucket with no configured weight */
+		public double getRelativeError(int i)
+		{
+			double p = (n > 0) ? (double) observed[i] / n : 0;
+			return (expected[i] > 0) ? Math.abs(p - expected[i]) / expected[i] : Double.NaN;
+		}
+	}
+
+	public FidelityMonitor(double maxKs, double maxRelativeError, PrintStream log)
+	{
+		this.maxKs = maxKs;
+		this.maxRelativeError = maxRelativeError;
+		this.log = log;
+	}
+
+	public ArrayList<Fit> getFits()
+	{
+		return fits;
+	}
+
+	/* The directories at each depth, and the subdirectories of each directory, once the directories are created */
+	public void checkDirs(MimesisParameters params, NamespaceStore store, NamespaceStats stats)
+	{
+		check(new Fit("subdirs_at_depth", toLongs(params.subdirsAtDepthKeys), params.subdirsAtDepthWeights,
+				atDepth(params.subdirsAtDepthKeys, store, true)));
+		check(new Fit("subdirs_per_dir", params.subdirsPerDirKeys, params.subdirsPerDirWeights,
+				perDir(params.subdirsPerDirKeys, stats.getSubdirsPerDir())));
+	}
+
+	/* The files at each depth, and the files of each directory, once the files are created */
+	public void checkFiles(MimesisParameters params, NamespaceStore store, NamespaceStats stats)
+	{
+		check(new Fit("files_at_depth", toLongs(params.filesAtDepthKeys), params.filesAtDepthWeights,
+				atDepth(params.filesAtDepthKeys, store, false)));
+		check(new Fit("files_per_dir", params.filesPerDirKeys, params.filesPerDirWeights,
+				perDir(params.filesPerDirKeys, stats.getFilesPerDir())));
+	}
+
+	/* The ages and sizes of the files, once they are drawn */
+	public void checkFileAttributes(MimesisParameters params, NamespaceStats stats)
+	{
+		check(new Fit("file_ages", params.ageAtT0Keys, params.ageAtT0Weights, stats.getAgeCounts()));
+		check(new Fit("file_sizes", params.fileSizesAtT0Keys, params.fileSizesAtT0Weights, stats.getSizeCounts()));
+	}
+
+	private void check(Fit fit)
+	{
+		fits.add(fit);
+		log.println(String.format(Locale.ROOT, "Fidelity of %s: n = %d, KS = %.4f, max relative error = %.4f at %d",
+				fit.name, fit.n, fit.ks, fit.maxRelativeError, fit.maxRelativeErrorKey));
+		if (maxKs > 0 && fit.ks > maxKs)
+			throw new IllegalStateException("The generated " + fit.name + " is too far from its configuration: KS distance " +
+				fit.ks + " > FIDELITY_MAX_KS = " + maxKs);
+		if (maxRelativeError > 0 && fit.maxRelativeError > maxRelativeError)
+			throw new IllegalStateException("The generated " + fit.name + " is too far from its configuration: relative error " +
+				fit.maxRelativeError + " at " + fit.maxRelativeErrorKey + " > FIDELITY_MAX_RELATIVE_ERROR = " + maxRelativeError);
+	}
+
+	/* The directories or files at each depth of keys, in the order of the sorted keys */
+	private static long[] atDepth(Long[] keys, NamespaceStore store, boolean dirs)
+	{
+		long[] sorted = toLongs(keys);
+		Arrays.sort(sorted);
+		long[] observed = new long[sorted.length];
+		for (int i = 0; i < sorted.length; i++)
+			if (sorted[i] >= 0 && sorted[i] < store.getMaxDepth())
+				observed[i] = (dirs) ? store.getNumDirsAtDepth((int) sorted[i]) : store.getNumFilesAtDepth((int) sorted[i]);
+		return observed;
+	}
+
+	/* The directories with a number of children in each bucket of keys; directories without children are not counted */
+	private static long[] perDir(long[] keys, LongHistogram h)
+	{
+		long[] sorted = keys.clone();
+		Arrays.sort(sorted);
+		long[] observed = new long[sorted.length];
+		long[] values = h.getValues();
+		int i;
+		for (int j = 0; j < values.length; j++)
+		{
+			i = Arrays.binarySearch(sorted, values[j]);
+			i = Math.min((i < 0) ? -i - 1 : i, sorted.length - 1);
+			observed[i] += h.get(values[j]);
+		}
+		return observed;
+	}
+
+	private static long[] toLongs(Long[] keys)
+	{
+		long[] l = new long[keys.length];
+		for (int i = 0; i < keys.length; i++)
+			l[i] = keys[i];
+		return l;
+	}
+
+	/* Writes the fits checked so far to a JSON file */
+	public void writeSummary(String file) throws IOException
+	{
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		out.write("{\"distributions\": [");
+		for (int f = 0; f < fits.size(); f++)
+		{
+			Fit fit = fits.get(f);
+			out.write((f > 0) ? "," : "");
+			out.newLine();
+			out.write(String.format(Locale.ROOT, "  {\"name\": \"%s\", \"n\": %d, \"ks\": %s, \"max_relative_error\": %s, \"max_relative_error_key\": %d,",
+					fit.name, fit.n, number(fit.ks), number(fit.maxRelativeError), fit.maxRelativeErrorKey));
+			out.newLine();
+			out.write("   \"keys\": [");
+			for (int i = 0; i < fit.keys.length; i++)
+				out.write(((i > 0) ? ", " : "") + fit.keys[i]);
+			out.write("],");
+			out.newLine();
+			out.write("   \"expected\": [");
+			for (int i = 0; i < fit.keys.length; i++)
+				out.write(((i > 0) ? ", " : "") + number(fit.expected[i]));
+			out.write("],");
+			out.newLine();
+			out.write("   \"observed\": [");
+			for (int i = 0; i < fit.keys.length; i++)
+				out.write(((i > 0) ? ", " : "") + fit.observed[i]);
+			out.write("],");
+			out.newLine();
+			out.write("   \"relative_error\": [");
+			for (int i = 0; i < fit.keys.length; i++)
+				out.write(((i > 0) ? ", " : "") + number(fit.getRelativeError(i)));
+			out.write("]}");
+		}
+		out.newLine();
+		out.write("]}");
+		out.newLine();
+		out.close();
+	}
+
+	/* A JSON number; null for NaN */
+	private static String number(double v)
+	{
+		return (Double.isNaN(v) || Double.isInfinite(v)) ? "null" : Double.toString(v);
+	}
+}
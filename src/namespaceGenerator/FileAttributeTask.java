@@ -0,0 +1,200 @@
+package namespaceGenerator;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+import randomGenerator.LongRandomGenerator;
+import randomGenerator.SplitRandom;
+import randomGenerator.WeightedTriangularRanGen;
+
+/*
+ * Draws the ages and the sizes of the files at one depth. The files are split in chunks of 
+ * HierarchicalFileSystemGenerator.CHUNK files, each drawn from its own random streams (see SplitRandom), so the 
+ * chunks are generated in parallel and each file gets the same values whichever thread draws them.
+ *   CLOCK:      draws the ages of numFiles files, not created yet, and returns the oldest age + 1
+ *   ATTRIBUTES: sets the creation stamp and the size of each file, in one pass over the files, and returns the
+ *               oldest age + 1; the stamp is counted back from lastStamp, or is the age of the file when the last
+ *               stamp is not known yet (lastStamp < 0)
+ *   STAMPS:     turns the ages set by ATTRIBUTES into creation stamps, counted back from lastStamp
+ *   COUNT:      counts the ages (counted back from lastStamp) and the sizes of the files in stats
+ * The files added to a namespace by HierarchicalFileSystemGenerator.growFileSystem() are the files from position
+ * first of the level on, and their ages are only drawn up to a quantile of the distribution of ages.
+ * When only a shard of the namespace is generated, numFiles is the number of files at the depth in the whole 
+ * namespace, and the files of the shard are runs of them: the files globalStart[r] .. globalStart[r] + n - 1 of 
+ * the namespace are the files localStart[r] .. localStart[r + 1] - 1 = localStart[r] + n - 1 of the store. All the
+ * ages are drawn, so each file gets the same values as in the whole namespace, and so does the clock; but the
+ * sizes are not drawn for the chunks without files of the shard. The ages and the sizes given to the files are
+ * counted in stats, unless it is null.
+ */
+public class FileAttributeTask extends RecursiveTask<Long> {
+	private static final long serialVersionUID = 1L;
+	public static final int CLOCK = 0;
+	public static final int ATTRIBUTES = 1;
+	public static final int STAMPS = 2;
+	public static final int COUNT = 3;
+
+	private NamespaceStore store;
+	private MimesisParameters params;
+	private long seed;
+	private int kind;
+	private int depth;
+	private long offset = 0; // the position in the level of file 0 of the task
+	private long numFiles;
+	private long lastStamp;
+	private long[] globalStart = null; // null when the store holds all the files at the depth
+	private long[] localStart = null;
+	private double upper = 1; // the ages are drawn up to this quantile, see WeightedTriangularRanGen.setUpperQuantile()
+	private NamespaceStats stats;
+	private long lo, hi; // the range of chunks of this task
+
+	public FileAttributeTask(NamespaceStore store, MimesisParameters params, long seed, int kind, int depth, long numFiles, long lastStamp,
+			NamespaceStats stats)
+	{
+		this(store, params, seed, kind, depth, numFiles, lastStamp, null, null, stats);
+	}
+
+	public FileAttributeTask(NamespaceStore store, MimesisParameters params, long seed, int kind, int depth, long numFiles,
+			long lastStamp, long[] globalStart, long[] localStart, NamespaceStats stats)
+	{
+		this.store = store;
+		this.params = params;
+		this.seed = seed;
+		this.kind = kind;
+		this.depth = depth;
+		this.numFiles = numFiles;
+		this.lastStamp = lastStamp;
+		this.globalStart = globalStart;
+		this.localStart = localStart;
+		this.stats = stats;
+		this.lo = 0;
+		this.hi = (numFiles + HierarchicalFileSystemGenerator.CHUNK - 1) / HierarchicalFileSystemGenerator.CHUNK;
+	}
+
+	/* ATTRIBUTES for the numFiles files from position first of the level on, with ages up to the quantile upper */
+	public FileAttributeTask(NamespaceStore store, MimesisParameters params, long seed, int depth, long first, long numFiles,
+			long lastStamp, double upper, NamespaceStats stats)
+	{
+		this(store, params, seed, ATTRIBUTES, depth, numFiles, lastStamp, null, null, stats);
+		this.offset = first;
+		this.upper = upper;
+	}
+
+	private FileAttributeTask(FileAttributeTask task, long lo, long hi)
+	{
+		this(task.store, task.params, task.seed, task.kind, task.depth, task.numFiles, task.lastStamp, task.globalStart, task.localStart, task.stats);
+		this.offset = task.offset;
+		this.upper = task.upper;
+		this.lo = lo;
+		this.hi = hi;
+	}
+
+	@Override
+	protected Long compute() {
+		if (hi - lo > 1)
+		{
+			long mid = (lo + hi) >>> 1;
+			FileAttributeTask right = new FileAttributeTask(this, mid, hi);
+			right.fork();
+			long clock = new FileAttributeTask(this, lo, mid).compute();
+			return Math.max(clock, right.join());
+		}
+		long clock = -1;
+		if (hi == lo) // no files
+			return clock;
+		long first = lo * HierarchicalFileSystemGenerator.CHUNK;
+		long end = Math.min(numFiles, first + HierarchicalFileSystemGenerator.CHUNK);
+		long file;
+		if (kind == STAMPS)
+		{
+			for (long i = first; i < end; i++)
+			{
+				file = store.getFileAtDepth(depth, this.offset + i);
+				store.setFileCreationStamp(file, lastStamp - store.getFileCreationStamp(file));
+			}
+			return clock;
+		}
+		if (kind == COUNT)
+		{
+			long[] ageCounts = new long[stats.getAgeKeys().length];
+			long[] sizeCounts = new long[stats.getSizeKeys().length];
+			for (long i = first; i < end; i++)
+			{
+				file = store.getFileAtDepth(depth, this.offset + i);
+				ageCounts[stats.getAgeBucket(lastStamp - store.getFileCreationStamp(file))] += 1;
+				sizeCounts[stats.getSizeBucket(store.getFileSize(file))] += 1;
+			}
+			stats.addAges(ageCounts);
+			stats.addSizes(sizeCounts);
+			return clock;
+		}
+
+		int r = 0; // the run of the shard that holds file i, or the next one
+		boolean inShard = true; // whether the chunk holds files of the shard
+		if (globalStart != null)
+		{
+			r = Arrays.binarySearch(globalStart, 0, globalStart.length - 1, first);
+			r = (r >= 0) ? r : Math.max(-r - 2, 0);
+			while (r < globalStart.length - 1 && first >= globalStart[r] + localStart[r + 1] - localStart[r])
+				r += 1;
+			inShard = r < globalStart.length - 1 && globalStart[r] < end;
+		}
+		SplitRandom random = new SplitRandom(0);
+		WeightedTriangularRanGen ageGen = new WeightedTriangularRanGen(random, params.ageAtT0Keys, params.ageAtT0Weights, false);
+		if (upper < 1)
+			ageGen.setUpperQuantile(upper);
+		random.setStream(seed, HierarchicalFileSystemGenerator.FILE_AGES, ((long) depth << 32) + lo);
+		LongRandomGenerator sizeGen = null;
+		if (kind == ATTRIBUTES && inShard)
+		{
+			SplitRandom sizeRandom = new SplitRandom(0);
+			sizeGen = new WeightedTriangularRanGen(sizeRandom, params.fileSizesAtT0Keys, params.fileSizesAtT0Weights, false);
+			sizeRandom.setStream(seed, HierarchicalFileSystemGenerator.FILE_SIZES, ((long) depth << 32) + lo);
+		}
+		long[] ages = new long[4096];
+		long[] sizes = new long[ages.length];
+		int len;
+		long local;
+		long[] ageCounts = null, sizeCounts = null; // by bucket, see NamespaceStats
+		if (stats != null && sizeGen != null)
+		{
+			ageCounts = new long[stats.getAgeKeys().length];
+			sizeCounts = new long[stats.getSizeKeys().length];
+		}
+		for (long i = first; i < end; i += len)
+		{
+			len = (int) Math.min(ages.length, end - i);
+			ageGen.fill(ages, 0, len);
+			for (int k = 0; k < len; k++)
+				clock = (clock > ages[k]) ? clock : ages[k] + 1;
+			if (sizeGen == null)
+				continue; // only the clock
+			sizeGen.fill(sizes, 0, len);
+			for (int k = 0; k < len; k++)
+			{
+				local = i + k;
+				if (globalStart != null)
+				{
+					while (r < globalStart.length - 1 && i + k >= globalStart[r] + localStart[r + 1] - localStart[r])
+						r += 1;
+					if (r == globalStart.length - 1 || i + k < globalStart[r])
+						continue; // not a file of the shard
+					local = localStart[r] + (i + k - globalStart[r]);
+				}
+				file = store.getFileAtDepth(depth, this.offset + local);
+				store.setFileCreationStamp(file, (lastStamp < 0) ? ages[k] : lastStamp - ages[k]);
+				store.setFileSize(file, sizes[k]);
+				if (ageCounts != null)
+				{
+					ageCounts[stats.getAgeBucket(ages[k])] += 1;
+					sizeCounts[stats.getSizeBucket(sizes[k])] += 1;
+				}
+			}
+		}
+		if (ageCounts != null)
+		{
+			stats.addAges(ageCounts);
+			stats.addSizes(sizeCounts);
+		}
+		return clock;
+	}
+}
@@ -0,0 +1,138 @@
+package namespaceGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.GZIPInputStream;
+
+/*
+ * The block index at the end of a file written by ParallelGzipOutputStream: where each block starts, in the
+ * file and in the uncompressed output. Block k holds whole lines, and can be read on its own with openBlock(k).
+ */
+public class GzipBlockIndex {
+	private File file;
+	private long[] compressedStart; // of each block, plus the end of the last block
+	private long[] start;
+
+	private GzipBlockIndex(File file, long[] compressedStart, long[] start)
+	{
+		this.file = file;
+		this.compressedStart = compressedStart;
+		this.start = start;
+	}
+
+	/* Reads the index at the end of the file */
+	public static GzipBlockIndex read(File file) throws IOException
+	{
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			int L = ParallelGzipOutputStream.LOCATOR_LENGTH;
+			if (in.length() < L)
+				throw new IOException(file + " has no block index: too short.");
+			byte[] locator = new byte[L];
+			in.seek(in.length() - L);
+			in.readFully(locator);
+			if (!isMember(locator, 'M', 'L') || getShortLE(locator, 14) != 16)
+				throw new IOException(file + " has no block index.");
+			long indexStart = getLongLE(locator, 16), numBlocks = getLongLE(locator, 24);
+			if (indexStart < 0 || indexStart > in.length() - L || numBlocks < 0 || numBlocks >= Integer.MAX_VALUE)
+				throw new IOException(file + " has a corrupt block index.");
+			
+			// the index members, up to the locator
+			byte[] index = new byte[(int) (in.length() - L - indexStart)];
+			in.seek(indexStart);
+			in.readFully(index);
+			long[] compressedStart = new long[(int) numBlocks + 1];
+			long[] start = new long[(int) numBlocks + 1];
+			int k = 0, end;
+			int[] pos = {0};
+			while (pos[0] < index.length)
+			{
+				if (index.length - pos[0] < 16 || !isMember(index, pos[0], 'M', 'B'))
+					throw new IOException(file + " has a corrupt block index.");
+				end = pos[0] + 16 + getShortLE(index, pos[0] + 14);
+				for (pos[0] += 16; pos[0] < end && k < numBlocks; k++)
+				{
+					compressedStart[k + 1] = compressedStart[k] + getVarLong(index, pos);
+					start[k + 1] = start[k] + getVarLong(index, pos);
+				}
+				pos[0] = end + 2 + 8; // empty deflate and trailer
+			}
+			if (k != numBlocks || compressedStart[k] != indexStart)
+				throw new IOException(file + " has a corrupt block index.");
+			return new GzipBlockIndex(file, compressedStart, start);
+		}
+	}
+
+	public int getNumBlocks()
+	{
+		return start.length - 1;
+	}
+
+	/* Where block k starts in the file */
+	public long getCompressedStart(int k)
+	{
+		return compressedStart[k];
+	}
+
+	/* Where block k starts in the uncompressed output */
+	public long getStart(int k)
+	{
+		return start[k];
+	}
+
+	public long getLength(int k)
+	{
+		return start[k + 1] - start[k];
+	}
+
+	/* The uncompressed bytes of block k */
+	public InputStream openBlock(int k) throws IOException
+	{
+		byte[] member = new byte[(int) (compressedStart[k + 1] - compressedStart[k])];
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			in.seek(compressedStart[k]);
+			in.readFully(member);
+		}
+		return new GZIPInputStream(new ByteArrayInputStream(member), Math.max(512, member.length));
+	}
+
+	private static boolean isMember(byte[] b, char si1, char si2)
+	{
+		return isMember(b, 0, si1, si2);
+	}
+
+	/* An empty member written by ParallelGzipOutputStream.writeEmptyMember(), with one subfield si1 si2 */
+	private static boolean isMember(byte[] b, int n, char si1, char si2)
+	{
+		return b[n] == 0x1f && b[n + 1] == (byte) 0x8b && b[n + 3] == 0x04 && b[n + 12] == si1 && b[n + 13] == si2;
+	}
+
+	private static int getShortLE(byte[] b, int n)
+	{
+		return (b[n] & 0xFF) | (b[n + 1] & 0xFF) << 8;
+	}
+
+	private static long getLongLE(byte[] b, int n)
+	{
+		long v = 0;
+		for (int i = 7; i >= 0; i--)
+			v = v << 8 | (b[n + i] & 0xFF);
+		return v;
+	}
+
+	/* Reads the varint at b[pos[0]], and moves pos[0] after it */
+	private static long getVarLong(byte[] b, int[] pos)
+	{
+		long v = 0;
+		int shift = 0;
+		byte c;
+		do {
+			c = b[pos[0]++];
+			v |= (long) (c & 0x7F) << shift;
+			shift += 7;
+		} while (c < 0);
+		return v;
+	}
+}
@@ -1,16 +1,26 @@
 package namespaceGenerator;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
-import randomGenerator.RandomGenerator;
+import randomGenerator.LongRandomGenerator;
+import randomGenerator.SplitRandom;
+import randomGenerator.AliasRanGen;
 import randomGenerator.WeightedRanGen;
 import randomGenerator.WeightedTriangularRanGen;
 /*
@@ -20,10 +30,8 @@ import randomGenerator.WeightedTriangularRanGen;
  */
 public class HierarchicalFileSystemGenerator  {
 
-	public HierarchicalNamespaceEntry root = null;
-	private HierarchicalNamespaceEntry user = null;
-	private HierarchicalNamespaceEntry projects = null;
-	private HierarchicalNamespaceEntry other = null;
+	public HierarchicalNamespaceEntry root = null; // null unless the namespace is kept as entries
+	private NamespaceStore store = null;
 	private int maxDepth = 32;
 	private long lastStampInSnapshot = -1;
 	public ArrayList<ArrayList<HierarchicalNamespaceEntry>> byDepthDirs = null; //Arrays of directories at each depth, e.g. byDepthDirs[i] = all directories at depth i
@@ -32,72 +40,198 @@ public class HierarchicalFileSystemGenerator  {
 	private long numTargetFiles = 0; 
 	public long numDirs = 0;
 	public long numFiles = 0;
-	private Random random = null;
-	private WeightedRanGen filesDepthGen; //samples from the distribution of files at each depth
+	private long seed; //the namespace only depends on the seed and on params, see SplitRandom
+	private SplitRandom random = null; //for the depths, the number of children of each directory and the packing
+	private ForkJoinPool pool = null; //creates the levels and draws the ages and sizes of the files, see params.threads
+	private LongRandomGenerator filesDepthGen; //samples from the distribution of files at each depth
 	private WeightedTriangularRanGen filesPerDirGen; //samples from the distribution of number of files per directory
-	private WeightedRanGen subdirsDepthGen; //samples from the distribution of directories at each depth
+	private LongRandomGenerator subdirsDepthGen; //samples from the distribution of directories at each depth
 	private WeightedTriangularRanGen subdirsPerDirGen; //samples from the distribution of number of subdirectories per directory
-	private RandomGenerator<Long> fileAgeGen;
-	private RandomGenerator<Long> fileSizeGen;
-	private char[] p = new char[256*2 + 1]; //used by "path()", declared here for performance reasons
+	private BinPacker binPacker; //generates the objects of packBins and assigns them to depths
+	private ThreadLocal<char[]> pathBuffer = new ThreadLocal<char[]>() { //used by "path()", one per thread for performance reasons
+		@Override
+		protected char[] initialValue() {
+			return new char[256*2 + 1];
+		}
+	};
+	private long[] draws = new long[4096]; //random values drawn in bulk by the generation loops
+	static final int CHUNK = 1 << 16; //objects per random stream in the loops over all directories or files
+	static final int BLOCK = 1 << 20; //bytes written out at once by the NamespaceRecordEncoders
+	//the random streams of the generation, see SplitRandom
+	static final int DIR_DEPTHS = 1;
+	static final int PACK_DIRS = 2;
+	static final int DIR_PARENTS = 3;
+	static final int FILE_DEPTHS = 4;
+	static final int PACK_FILES = 5;
+	static final int FILE_AGES = 6;
+	static final int FILE_SIZES = 7;
+	static final int GROWTH = 8; //the seed of the streams of growFileSystem(), see growFileSystem()
+	private MimesisParameters params = null;
+	private NamespaceSink stream = null; //where the namespace is written while it is generated, see generateFileSystem(out)
+	private boolean streamed = false;
+	private NamespaceStats stats; //kept up to date while the namespace is generated, see printStats()
+	private FidelityMonitor monitor = null; //compares the namespace with the configuration while generating it, see params.fidelityCheck
+	private PhaseMetrics metrics; //times the phases of the run, and reports the progress to the log
+	private PrintStream log; //the messages of the run, kept apart from the namespace: stderr or params.logFile
+	private int shards, shard; //this generator creates the shard-th of shards shards of the namespace, see inShard()
+	private long[][] filesGlobalStart = null; //the runs of files of the shard at each depth, see FileAttributeTask
+	private long[][] filesLocalStart = null;
+	private File scratch = null; //the directory of the scratch files of the "mapped" store and of its packing, see MappedArray
 	
 	/*
 	 * 		initializing the File System. 
 	 * 			Depth 0 is root.
 	 * 			Depth 1 is: user, project, other.
 	 * 			The rest is not known, just routinely initialized
+	 * 		The namespace is kept in the store selected by params.namespaceStore (always the compact store when 
+	 * 		params.streamOutput is set); byDepthDirs, byDepthFiles and root are only available with the "entries" store.
+	 * 		With the "mapped" store, the namespace and the packing are kept in scratch files of params.scratchDir.
 	 */  
 	public HierarchicalFileSystemGenerator(Random r, MimesisParameters params)
+	{
+		this(r.nextLong(), params);
+	}
+	
+	/* The same seed and params always generate the same namespace */
+	public HierarchicalFileSystemGenerator(long seed, MimesisParameters params)
 	{	
-
-		byDepthDirs = new ArrayList<ArrayList<HierarchicalNamespaceEntry>>(maxDepth); 
-		byDepthFiles = new ArrayList<ArrayList<HierarchicalNamespaceEntry>>(maxDepth);
-		numDirs = 4; 
-		root = new HierarchicalNamespaceEntry(0, 0, null, true);
-		user = new HierarchicalNamespaceEntry(0, 1, root, true);
-		projects = new HierarchicalNamespaceEntry(0, 2, root, true);
-		other = new HierarchicalNamespaceEntry(0, 3, root, true);
-		ArrayList<HierarchicalNamespaceEntry> depth0 = new ArrayList<HierarchicalNamespaceEntry>(1);
-		depth0.add(root);
-		byDepthDirs.add(0, depth0);
-		byDepthFiles.add(0, new ArrayList<HierarchicalNamespaceEntry>());
-		ArrayList<HierarchicalNamespaceEntry> depth1 = new ArrayList<HierarchicalNamespaceEntry>(3);
-		depth1.add(user);
-		depth1.add(projects);
-		depth1.add(other);
-		byDepthDirs.add(1, depth1);
-		byDepthFiles.add(1, new ArrayList<HierarchicalNamespaceEntry>());
-		for (int i = 2; i < maxDepth; i++)
-		{
-			byDepthDirs.add(i, new ArrayList<HierarchicalNamespaceEntry>());
-			byDepthFiles.add(i, new ArrayList<HierarchicalNamespaceEntry>());
-		}
-		this.random = r;
-		filesDepthGen = new WeightedRanGen(this.random, params.filesAtDepthKeys, params.filesAtDepthWeights);
+		this.params = params;
+		if (params.namespaceStore.equals("mapped"))
+			scratch = new File(params.scratchDir);
+		this.setStore(this.newStore(params.targetDirsInNamespace, params.targetFilesInNamespace));
+		numDirs = store.getNumDirs();
+		this.seed = seed;
+		this.random = new SplitRandom(seed);
+		this.pool = new ForkJoinPool((params.threads > 0) ? params.threads : Runtime.getRuntime().availableProcessors());
+		if (params.depthSampler.equals("weighted"))
+		{
+			filesDepthGen = new WeightedRanGen(this.random, params.filesAtDepthKeys, params.filesAtDepthWeights);
+			subdirsDepthGen = new WeightedRanGen(this.random, params.subdirsAtDepthKeys, params.subdirsAtDepthWeights);
+		} else {
+			filesDepthGen = new AliasRanGen(this.random, params.filesAtDepthKeys, params.filesAtDepthWeights);
+			subdirsDepthGen = new AliasRanGen(this.random, params.subdirsAtDepthKeys, params.subdirsAtDepthWeights);
+		}
 		filesPerDirGen = new WeightedTriangularRanGen(this.random, params.filesPerDirKeys, params.filesPerDirWeights);
-		subdirsDepthGen = new WeightedRanGen(this.random, params.subdirsAtDepthKeys, params.subdirsAtDepthWeights);
 		subdirsPerDirGen = new WeightedTriangularRanGen(this.random, params.subdirsPerDirKeys, params.subdirsPerDirWeights);
-		fileAgeGen = new WeightedTriangularRanGen(this.random, params.ageAtT0Keys, params.ageAtT0Weights, false);
-		fileSizeGen = new WeightedTriangularRanGen(this.random, params.fileSizesAtT0Keys, params.fileSizesAtT0Weights, false);
+		binPacker = (params.binPacker.equals("legacy")) ? new LegacyBinPacker() : new CountingBinPacker(scratch);
+		this.shards = params.shards;
+		this.shard = params.shard;
+		this.stats = new NamespaceStats(params);
+		this.log = System.err;
+		if (params.logFile != null)
+		{
+			try {
+				this.log = new PrintStream(new FileOutputStream(params.logFile, true), true);
+			} catch (FileNotFoundException e) {
+				throw new RuntimeException("Cannot open LOG_FILE " + params.logFile + ".", e);
+			}
+		}
+		this.metrics = new PhaseMetrics(this.log, (long) (params.progressInterval * 1000));
+		if (params.fidelityCheck)
+			this.monitor = new FidelityMonitor(params.fidelityMaxKs, params.fidelityMaxRelativeError, log);
+		if (this.shards > 1)
+		{
+			filesGlobalStart = new long[maxDepth][];
+			filesLocalStart = new long[maxDepth][];
+		}
 		
 		this.numTargetDirs = params.targetDirsInNamespace;
 		this.numTargetFiles = params.targetFilesInNamespace;
 	}
 	
+	/* An empty store of the kind of params.namespaceStore, for about dirs directories and files files */
+	private NamespaceStore newStore(long dirs, long files)
+	{
+		if (params.namespaceStore.equals("compact") || params.streamOutput)
+		{
+			// when streaming, the columns only hold one level of files at a time
+			if (params.streamOutput)
+				files = new RunPlanner(params).getLargestFileLevel();
+			return new CompactNamespaceStore(maxDepth, dirs, files);
+		} else if (params.namespaceStore.equals("mapped")) {
+			return new MappedNamespaceStore(maxDepth, dirs, files, scratch);
+		}
+		return new EntryNamespaceStore(maxDepth);
+	}
+	
+	/* Keeps the namespace in store; root, byDepthDirs and byDepthFiles are those of an EntryNamespaceStore */
+	private void setStore(NamespaceStore store)
+	{
+		this.store = store;
+		if (store instanceof EntryNamespaceStore)
+		{
+			EntryNamespaceStore entries = (EntryNamespaceStore) store;
+			root = entries.root;
+			byDepthDirs = entries.byDepthDirs;
+			byDepthFiles = entries.byDepthFiles;
+		} else {
+			root = null;
+			byDepthDirs = null;
+			byDepthFiles = null;
+		}
+	}
+	
+	public NamespaceStore getStore()
+	{
+		return store;
+	}
+	
+	public NamespaceStats getStats()
+	{
+		return stats;
+	}
+	
+	/* null unless params.fidelityCheck */
+	public FidelityMonitor getMonitor()
+	{
+		return monitor;
+	}
+	
+	public PhaseMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	/* The threads of the generator, e.g. to compress its output, see ParallelGzipOutputStream */
+	public ForkJoinPool getPool()
+	{
+		return pool;
+	}
+	
 	public void setTargetFiles(long t)
 	{
 		if (this.numFiles >= 1)
 			throw new UnsupportedOperationException("Cannot change the target files once the namespace has been partially generated.");
 		this.numTargetFiles = t;
 	}
+	public long getSeed()
+	{
+		return seed;
+	}
+	
 	public long getLastStampInSnapshot()
 	{
 		return lastStampInSnapshot;
 	}
 	
-	/* Returns the path from the root to that node. */
+	/*
+	 * With params.shards > 1, the namespace is split in shards that can be generated by independent processes.
+	 * Every shard plans the whole namespace (the depths, the packing and all the directories, which only depend
+	 * on the seed) but only creates its own files, and only prints its own directories and files; the union of 
+	 * the shards is the namespace generated with one shard. The j-th directory at a depth belongs to shard 
+	 * (j + depth) % shards, and so do the files of the k-th object of the packing at a depth (see packBins()); 
+	 * the objects are sorted by size, so the files are spread evenly. A shard prints a directory that is not its
+	 * own only for the files of the shard in it, without the line of the directory itself.
+	 */
+	public boolean inShard(int depth, long j)
+	{
+		return shards == 1 || (j + depth) % shards == shard;
+	}
+	
+	/* Returns the path from the root to that node. Can be called from several threads at once, like path(dir). */
 	public String path(HierarchicalNamespaceEntry node)
 	{ 	
+		char[] p = pathBuffer.get();
 		long id;
 		int digit;
 		int pos = p.length - 1;
@@ -130,423 +264,1171 @@ public class HierarchicalFileSystemGenerator  {
 		return new String(p, pos, p.length - pos); 
 	}
 
+	/* Returns the path from the root to the given directory of the store, ending with '/'. */
+	public String path(long dir)
+	{ 	
+		char[] p = pathBuffer.get();
+		long id;
+		int digit;
+		int pos = p.length - 1;
+		
+		p[pos] = '/';
+		pos -= 1;
+		
+		long i = dir;
+		
+		while (i != -1)
+		{
+			id = store.getDirName(i);
+			while (true)
+			{
+				digit = (int) (id % 10);
+				id = id / 10;
+				p[pos] = (char) ((char) digit + (char) '0');
+				pos -= 1;
+				if (id == 0)
+					break;
+			}
+			p[pos] = '/';
+			pos -= 1;
+            i = store.getDirParent(i);
+		}
+		pos += 1;
+		return new String(p, pos, p.length - pos); 
+	}
+
 	/*Prints the File System. i.e. the directories, and the files in each directory */
 	public void print(BufferedWriter out) throws IOException
 	{
-		int i, j, k;
-		ArrayList<HierarchicalNamespaceEntry> level, children;
-		HierarchicalNamespaceEntry directory;
-		HierarchicalNamespaceEntry file;
-		String currentPath;
+		this.print(new NamespaceRecordEncoder(store, out, BLOCK));
+	}
+	
+	/* Same as print(BufferedWriter), without going through a charset encoder */
+	public void print(OutputStream out) throws IOException
+	{
+		this.print(new NamespaceRecordEncoder(store, out, BLOCK));
+	}
+	
+	/* Writes the namespace to out, e.g. a BinaryNamespaceWriter */
+	public void print(NamespaceSink out) throws IOException
+	{
+		int i;
+		long j, levelSize;
+		
+		if (this.streamed)
+			throw new UnsupportedOperationException("The namespace was written out while it was generated; its files are no longer kept.");
 		
+		out.setLastStamp(this.lastStampInSnapshot);
 		// Print the directories
-		for (i = 0; i < this.byDepthDirs.size(); i++)
+		for (i = 0; i < store.getMaxDepth(); i++)
+		{
+			levelSize = store.getNumDirsAtDepth(i);
+			for (j = 0; j < levelSize; j++)
+				this.printDir(out, store.getDirAtDepth(i, j), this.inShard(i, j));
+		}
+		
+		out.flush();
+	}
+	
+	/*
+	 * Writes the namespace to about the given number of files in dir, in parallel. The directories, in the order of
+	 * print(), are cut in parts of about the same number of lines with their files; a part may span several depths,
+	 * so that the small levels share a part. Each part is written to its own file (part-00000, part-00001, ...;
+	 * prefixed with the shard with several shards). The file index lists the parts in order, one per line: name,
+	 * depth and index of the first directory, depth of the last directory and end of the part at that depth, and
+	 * number of lines; the parts concatenated in that order are the output of print(). There are fewer parts than
+	 * asked when a directory alone has more lines than a part.
+	 */
+	public void print(File dir, int parts) throws IOException
+	{
+		int i;
+		long j, levelSize, lines, total = 0;
+		
+		if (this.streamed)
+			throw new UnsupportedOperationException("The namespace was written out while it was generated; its files are no longer kept.");
+		if (parts < 1)
+			throw new IllegalArgumentException("Cannot write the namespace to " + parts + " parts");
+		
+		for (i = 0; i < store.getMaxDepth(); i++)
 		{
-			level = this.byDepthDirs.get(i);
-			for (j = 0; j < level.size(); j++)
+			levelSize = store.getNumDirsAtDepth(i);
+			for (j = 0; j < levelSize; j++)
+				total += this.lines(i, j);
+		}
+		long target = Math.max(1, (total + parts - 1) / parts);
+		
+		// cut the directories in parts, across the depths
+		ArrayList<long[]> ranges = new ArrayList<long[]>(); // first depth and directory, last depth and end directory, lines
+		int firstDepth = 0, lastDepth = 0;
+		long first = 0, end = 0;
+		lines = 0;
+		for (i = 0; i < store.getMaxDepth(); i++)
+		{
+			levelSize = store.getNumDirsAtDepth(i);
+			for (j = 0; j < levelSize; j++)
 			{
-				directory = level.get(j);
-				currentPath = this.path(directory);
-				out.write(directory.getCreationStamp() + "\t" + currentPath + "\tnull");
-				out.newLine();
-				
-				// Print the files of the directory
-				children = directory.getChildren();
-				for (k = 0; k < children.size(); k++)
+				lines += this.lines(i, j);
+				lastDepth = i;
+				end = j + 1;
+				if (lines >= target)
 				{
-					file = children.get(k);
-					if ( file.isDir() )
-						continue;
-					out.write(file.getCreationStamp() + "\t" + currentPath + file.getName() + "\t" + file.getSize());
-					out.newLine();
+					ranges.add(new long[] {firstDepth, first, lastDepth, end, lines});
+					firstDepth = (end == levelSize) ? i + 1 : i;
+					first = (end == levelSize) ? 0 : end;
+					lines = 0;
 				}
-			}			
+			}
+		}
+		if (lines > 0)
+			ranges.add(new long[] {firstDepth, first, lastDepth, end, lines});
+		int[] loDepth = new int[ranges.size()];
+		int[] hiDepth = new int[loDepth.length];
+		long[] lo = new long[loDepth.length];
+		long[] hi = new long[loDepth.length];
+		for (int k = 0; k < loDepth.length; k++)
+		{
+			loDepth[k] = (int) ranges.get(k)[0];
+			lo[k] = ranges.get(k)[1];
+			hiDepth[k] = (int) ranges.get(k)[2];
+			hi[k] = ranges.get(k)[3];
 		}
 		
-		out.flush();
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create the output directory " + dir);
+		String prefix = (shards > 1) ? "shard" + shard + "_" : "";
+		try {
+			this.pool.invoke(new NamespacePartWriter(this, dir, prefix, loDepth, lo, hiDepth, hi));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		
+		BufferedWriter index = new BufferedWriter(new FileWriter(new File(dir, prefix + "index")));
+		for (int k = 0; k < loDepth.length; k++)
+		{
+			index.write(NamespacePartWriter.partName(prefix, k) + "\t" + loDepth[k] + "\t" + lo[k] + "\t" + hiDepth[k] + "\t" + hi[k] +
+					"\t" + ranges.get(k)[4]);
+			index.newLine();
+		}
+		index.close();
+	}
+	
+	/* The number of lines printDir() writes for the j-th directory at the given depth */
+	private long lines(int depth, long j)
+	{
+		return (this.inShard(depth, j) ? 1 : 0) + store.getNumChildFiles(store.getDirAtDepth(depth, j));
+	}
+	
+	/* Prints a directory (unless it belongs to another shard) followed by its files */
+	void printDir(NamespaceSink out, long directory, boolean inShard) throws IOException
+	{
+		out.writeDir(directory, inShard);
+		out.writeFiles(directory, store.getNumChildFiles(directory));
+	}
+	
+	/* While streaming: prints the directories at depths emitted .. d with their files, then drops the files */
+	private int emitLevels(int emitted, int d) throws IOException
+	{
+		long levelSize;
+		for (; emitted <= d; emitted++)
+		{
+			levelSize = store.getNumDirsAtDepth(emitted);
+			for (long j = 0; j < levelSize; j++)
+				this.printDir(this.stream, store.getDirAtDepth(emitted, j), this.inShard(emitted, j));
+		}
+		this.stream.flush();
+		((CompactNamespaceStore) store).discardFiles();
+		return emitted;
 	}
 	
-	/* Prints the cdf to a file based on the given HashMap. this is used in printStats()*/
-	public void print_cdf(String file_name, HashMap<Long, Long> g , long tot) throws IOException
+	/*
+	 * Before streaming the files: the creation stamps are counted back from the last stamp of the snapshot, which
+	 * depends on the oldest file. The ages of the files about to be created are drawn twice from their streams,
+	 * here to find the oldest one and again as each file is created.
+	 */
+	private void prepareStream(BinPacking packing) throws IOException
+	{
+		long[] files = new long[store.getMaxDepth()];
+		int d;
+		for (long i = 0, run = 0; i < packing.getNumObjects(); i++) // same levels as in step 5 of packBins
+		{
+			if (i == packing.getRunEnd((int) run))
+				run += 1;
+			d = packing.getDepth(i);
+			if (d >= 2 && d < store.getMaxDepth() && store.getNumDirsAtDepth(d - 1) > 0)
+				files[d] += packing.getRunSize((int) run);
+		}
+		
+		long clock = -1;
+		for (d = 0; d < files.length; d++)
+			clock = Math.max(clock, this.pool.invoke(new FileAttributeTask(store, params, seed, FileAttributeTask.CLOCK, d, files[d], -1, null)));
+		this.lastStampInSnapshot = clock;
+		this.stream.setLastStamp(clock);
+	}
+	
+	/*
+	 * Draws up to len values from gen into draws[off..], for objects i, i + 1, ... of a loop over the objects of one
+	 * kind at depth d (or over all of them). Every CHUNK objects, the random numbers come from a new stream, 
+	 * (stream, d, i / CHUNK), so the objects of different chunks can be generated in any order. Stops at the end 
+	 * of the chunk; returns the number of values drawn.
+	 */
+	private int draw(LongRandomGenerator gen, SplitRandom r, int stream, int d, long i, long len, int off)
 	{
-		BufferedWriter out = new BufferedWriter(new FileWriter("../output/"+file_name));
+		if (i % CHUNK == 0)
+			r.setStream(this.seed, stream, ((long) d << 32) + i / CHUNK);
+		int n = (int) Math.min(len, CHUNK - i % CHUNK);
+		gen.fill(draws, off, n);
+		return n;
+	}
+	
+	/* The task drawing the attribute kind of the files at depth d, over all the files of the namespace at d */
+	private FileAttributeTask fileAttributeTask(int kind, int d, long lastStamp)
+	{
+		if (filesGlobalStart == null || filesGlobalStart[d] == null || kind == FileAttributeTask.STAMPS)
+			return new FileAttributeTask(store, params, seed, kind, d, store.getNumFilesAtDepth(d), lastStamp, stats);
+		long[] globalStart = filesGlobalStart[d];
+		return new FileAttributeTask(store, params, seed, kind, d, globalStart[globalStart.length - 1], lastStamp,
+				globalStart, filesLocalStart[d], stats);
+	}
+	
+	/* Prints the cdf of values[from ..], counted under keys[from ..], to a file; tot is the sum of all the values */
+	public void print_cdf(String file_name, long[] keys, long[] values, int from, long tot) throws IOException
+	{
+		BufferedWriter out = new BufferedWriter(new FileWriter("../output/" + ((shards > 1) ? "shard" + shard + "_" : "") + file_name));
 		out.write("#"); out.newLine();
 		double cdf = 0.0;
-	    ArrayList<Long> sortedKeys = new ArrayList<Long>(g.keySet());
-	    Collections.sort(sortedKeys);
-	    Long theValue;
-	    double p;
-	   
-	    for ( Long theKey : sortedKeys )
-	    {
-	    	if (theKey == 0) continue;
-	    	if(file_name=="files_at_depth.cdf"&&theKey<2) continue;
-	    	theValue = g.get(theKey);
-	    	p = theValue.doubleValue() / tot;
-	    	cdf += p;
-	    	out.write(theKey.toString() + '\t' + theValue.toString() + '\t' + p + '\t' + cdf);
-	    	out.newLine();
-	    }
-	    out.flush();
-	    out.close();
-	    sortedKeys.clear();
+		double p;
+		
+		for (int i = from; i < keys.length; i++)
+		{
+			p = (double) values[i] / tot;
+			cdf += p;
+			out.write(keys[i] + "\t" + values[i] + "\t" + p + "\t" + cdf);
+			out.newLine();
+		}
+		out.flush();
+		out.close();
 	}
+	
 	/*Prints the statics of the File System to files. The distributions considered are:
 	 * 		1) Subdirectories per directory
-	 * 		2) Directories at each depth
+	 * 		2) Directories at each depth (but depth 0)
 	 * 		3) Files per directory
-	 * 		4) Files at each depth*/ 
+	 * 		4) Files at each depth (from depth 2)
+	 * 		5) File sizes and 6) file ages, in the buckets of their configured distributions
+	 * With several shards, only the directories and files of the shard are counted (the files per directory only
+	 * count the files of the shard in each directory), in files prefixed with the shard. The statistics are
+	 * counted while the namespace is generated (see NamespaceStats); the namespace is not visited again here. */ 
 	public void printStats() throws IOException
 	{
-		int i, j, k;
-		long subdirsInDir,filesInDir;
-		ArrayList<HierarchicalNamespaceEntry> level, children;
-		HierarchicalNamespaceEntry directory;
-		HashMap<Long, Long> g = new HashMap<Long, Long>();
-		long tot = 0;
-		Long key, value;
+		int i;
+		long levelSize;
+		long[] keys, values;
+		long tot;
+		int depths = store.getMaxDepth();
 
-		// Subdirectories per directory statistics
-		for (i = 0; i < this.byDepthDirs.size(); i++)
-		{
-			level = this.byDepthDirs.get(i);
-			for (j = 0; j < level.size(); j++)
-			{
-				directory = level.get(j);
-				subdirsInDir = 0;
-				children = directory.getChildren();
-				for (k = 0; k < children.size(); k++)
-				{
-					if (children.get(k).isDir())
-						subdirsInDir += 1;
-				}
-				key = Long.valueOf(subdirsInDir);
-				if (key == 0)
-					continue; // Ignore leaf directories for stats
-				if (g.containsKey(key))
-					value = Long.valueOf( g.get(key).longValue() + 1L );
-				else
-					value = Long.valueOf(1L);
-				g.put(key, value);
-                tot += 1; 
-			}
-		}
-		tot -= (g.get(0) == null) ? 0 : g.get(0);
-		print_cdf("subdirs_per_dir.cdf", g, tot);
+		// Subdirectories per directory statistics; leaf directories are not counted
+		keys = stats.getSubdirsPerDir().getValues();
+		print_cdf("subdirs_per_dir.cdf", keys, stats.getSubdirsPerDir().getCounts(keys), 0, stats.getSubdirsPerDir().getTotal());
 	
 		// Directories at depth statistics
-	    g.clear();
-	    tot = 0;
-	    long subdirsAtDepth = 0;
-	    for (i = 0; i < this.byDepthDirs.size(); i++)
-		{
-			level = this.byDepthDirs.get(i);
-			subdirsAtDepth = level.size();
-			key = Long.valueOf(i);
-			value = Long.valueOf(subdirsAtDepth);
-			g.put(key, value);
-            tot += value;
-		}
-	    print_cdf("dirs_at_depth.cdf", g, tot);
-
-		// Files per directory statistics
+		keys = new long[depths];
+		values = new long[depths];
 		tot = 0;
-		g.clear();
-		for (i = 0; i < this.byDepthDirs.size(); i++)
+		for (i = 0; i < depths; i++)
 		{
-			level = this.byDepthDirs.get(i);
-			for (j = 0; j < level.size(); j++)
+			levelSize = store.getNumDirsAtDepth(i);
+			keys[i] = i;
+			if (shards == 1)
+				values[i] = levelSize;
+			else // the directories j with (j + i) % shards == shard, see inShard()
 			{
-				directory = level.get(j);
-				filesInDir = 0;
-				children = directory.getChildren();
-				for (k = 0; k < children.size(); k++)
-				{
-					if (!children.get(k).isDir())
-						filesInDir += 1; 
-				}
-				key = Long.valueOf(filesInDir);
-				if (key == 0)
-					continue; // Ignore leaf directories for stats
-				if (g.containsKey(key))
-					value = Long.valueOf( g.get(key).longValue() + 1L );
-				else
-					value = Long.valueOf(1L);
-				g.put(key, value);
-                tot += 1; 
+				long j = ((shard - i) % shards + shards) % shards;
+				values[i] = (j < levelSize) ? (levelSize - 1 - j) / shards + 1 : 0;
 			}
+			tot += values[i];
 		}
-	    tot -= (g.get(0) == null) ? 0 : g.get(0);
-	    print_cdf("files_per_dir.cdf", g, tot);
+		print_cdf("dirs_at_depth.cdf", keys, values, 1, tot);
+
+		// Files per directory statistics; directories without files are not counted
+		keys = stats.getFilesPerDir().getValues();
+		print_cdf("files_per_dir.cdf", keys, stats.getFilesPerDir().getCounts(keys), 0, stats.getFilesPerDir().getTotal());
 
 		// Files at depth statistics
-	    g.clear();
-	    tot = 0;
-	    long filesAtDepth = 0;
-	    for (i = 0; i < this.byDepthFiles.size(); i++)
+		keys = new long[depths];
+		values = new long[depths];
+		tot = 0;
+		for (i = 0; i < depths; i++)
 		{
-			level = this.byDepthFiles.get(i);
-			filesAtDepth = level.size();
-			key = Long.valueOf(i);
-			value = Long.valueOf(filesAtDepth);
-			g.put(key, value);
-            tot += value;
+			keys[i] = i;
+			values[i] = store.getNumFilesAtDepth(i);
+			tot += values[i];
 		}
-	    print_cdf("files_at_depth.cdf", g, tot);
-				
+		print_cdf("files_at_depth.cdf", keys, values, Math.min(2, depths), tot);
+		
+		// File sizes and ages
+		values = stats.getSizeCounts();
+		print_cdf("file_sizes.cdf", stats.getSizeKeys(), values, 0, sum(values));
+		values = stats.getAgeCounts();
+		print_cdf("file_ages.cdf", stats.getAgeKeys(), values, 0, sum(values));
+	}
+	
+	private static long sum(long[] values)
+	{
+		long s = 0;
+		for (int i = 0; i < values.length; i++)
+			s += values[i];
+		return s;
 	}
 	
 	/* given the bins (size of each bin), a number of objects are generated, sorted descending,
 	 * and packed in the bins starting from the worst bin, i.e. the bin with the most free capacity left. */
-	private ArrayList<HierarchicalNamespaceEntry> packBins(int[] bins, long targetObjects, RandomGenerator<Long> gen, boolean packDirs)
+	private void packBins(int[] bins, long targetObjects, LongRandomGenerator gen, boolean packDirs) throws IOException
 	{
 
-		// 1) Generate target objects
-		Integer[] targetObjectCount = new Integer[(int) targetObjects];
-		long allocatedObjects = 0;
-		int numObjects;
-		boolean done = false; //used for finishing the process
-		
-		for (int i = 0; i < (int) targetObjects; i++)
-		{
-			if (done)  //used for subdirs per dir: the remaining subdirs will have zero subdirs
-			{
-				targetObjectCount[i] = 0;
-				continue;
-			}
-			numObjects = (int) ((long) gen.next());
-			allocatedObjects += numObjects;
-			if (allocatedObjects > targetObjects)
-			{
-				allocatedObjects -= numObjects;
-				numObjects = (int) (targetObjects - allocatedObjects);
-				allocatedObjects += numObjects;		
-				done = true; //finish the object generating process
-			}
-			targetObjectCount[i] = numObjects;
-		}
-						
-		// 2) Sort objects target list, descending
-		Arrays.sort(targetObjectCount, Collections.reverseOrder());
-		
-		// 3) Pack them : assign depths to each object in targetObjectCount. try to find the worst fit!
-		int[] targetDepths = new int[targetObjectCount.length];
-		Arrays.fill(targetDepths, -1);
-
-		long worstFit = -1;
+		// 1) - 3) Generate target objects, sort them descending, and pack them: assign a depth to each object
+		LongRandomGenerator depthGen = (packDirs) ? this.subdirsDepthGen : this.filesDepthGen;
+		this.random.setStream(this.seed, (packDirs) ? PACK_DIRS : PACK_FILES, 0);
+		BinPacking packing = this.binPacker.pack(bins, targetObjects, gen, depthGen, this.random, packDirs);
+		long numObjects = packing.getNumObjects();
 		long r;
-		for (int i = 0; i < targetObjectCount.length; i++)
-		{
-			worstFit = -1; 	
-			if (targetObjectCount[i] == 0)
-			{
-				r = (packDirs) ? this.subdirsDepthGen.next() : this.filesDepthGen.next();
-				worstFit = r;
-			} else {
-				//when packing bins for directories, depth 0 is root, and depth 1 is user, project, program 
-				r = ((packDirs) ? 2 : 1) + random.nextInt(bins.length - ((packDirs) ? 3 : 2)); 
-				for (int j = (packDirs) ? 2 : 1; j < bins.length; j++)
-					if (bins[(j + (int)r) % bins.length] > 0 && bins[(j + (int)r) % bins.length] >= targetObjectCount[i])
-						if (worstFit == -1)
-							worstFit = (j + (int)r) % bins.length; 
-						else if (bins[(j + (int)r) % bins.length] > bins[(int)worstFit])
-							worstFit = (j + (int)r) % bins.length;
-				if (worstFit == -1) //one last attempt; find the worst fit, even if bin is not big enough
-				{
-					r = (packDirs) ? this.subdirsDepthGen.next() : this.filesDepthGen.next();
-					worstFit = r;
-					for (int j = (packDirs) ? 2 : 1; j < bins.length; j++)
-						if ( bins[j]  > bins[(int)worstFit] )
-							worstFit = j;
-
-				}
-			}
-			if (worstFit < 0 || worstFit >= bins.length)
-			{
-				System.err.println("Could not find target bin; worstFit = " + worstFit + " i = " + i + "; r = " + r + "; targetObjectCount[i] = " + targetObjectCount[i] + " bins = " + Arrays.toString(bins));
-				System.exit(0);
-			}
-			
-			// found a bin; decrease capacity
-			bins[(int)worstFit] -= targetObjectCount[i];
-			
-			// assign target depth to corresponding object
-            targetDepths[i] = (int)worstFit;
-		}
 		
+		long[] atDepth = packing.countByDepth(bins.length);
 		for (int i = 0; i < bins.length; i++)
 		{
-			bins[i] = 0;
-			for (Integer aux : targetDepths)
-				if (aux == i)
-					bins[i] += 1;
+			bins[i] = (int) atDepth[i];
 			if (bins[i] == 0 ) // Nothing will be packed at this depth; so add 3 random files
 			{					
 				for (int j = 0; j < 3; j++)
 				{
-					r = this.random.nextInt(targetDepths.length);
-					targetDepths[(int)r] = i;
+					r = (numObjects <= Integer.MAX_VALUE) ? this.random.nextInt((int) numObjects) : Math.floorMod(this.random.nextLong(), numObjects);
+					atDepth[packing.getDepth(r)] -= 1;
+					packing.setDepth(r, i);
+					atDepth[i] += 1;
 				}
 				bins[i] += 3;
 			}
 		}
+		packing.indexByDepth(bins.length);
 
         // 4) Create directories in depth 2, assign a random parent to them 
-		HierarchicalNamespaceEntry dir, newObject;
+		long dir;
+		int parent;
 		if (packDirs)
 		{
-			for (int i = 0; i < targetObjectCount.length; i++)
+			for (long i = 0; i < packing.getNumObjectsAtDepth(2); i++)
 			{
-				if (targetDepths[i] != 2)
-					continue;
-	            dir = this.byDepthDirs.get(1).get(random.nextInt( this.byDepthDirs.get(1).size()) ); // select a parent at depth -1 (i.e., at depth 1)
-	            newObject = new HierarchicalNamespaceEntry(0, dir.getNumChildren() + 1, dir, true); //create the new directory
-	            dir.addChild(newObject);
-	            this.byDepthDirs.get(targetDepths[i]).add(newObject);
+				if (i % CHUNK == 0)
+					this.random.setStream(this.seed, DIR_PARENTS, i / CHUNK);
+				parent = random.nextInt((int) store.getNumDirsAtDepth(1));
+	            dir = store.getDirAtDepth(1, parent); // select a parent at depth -1 (i.e., at depth 1)
+	            store.addDir(dir); //create the new directory
 	            this.numDirs += 1;			
+	            if (this.inShard(1, parent))
+	            	this.stats.addSubdirs(store.getNumSubdirs(dir) - 1, store.getNumSubdirs(dir));
 			}
 		}
 
 		// 5) Create the other objects; PACK THE BINS!
-		int current = -1;
-		ArrayList<HierarchicalNamespaceEntry> newFiles = null;
-		if (!packDirs)
-			newFiles = new ArrayList<HierarchicalNamespaceEntry>((int) targetObjects);
+		//    The objects at depth d + 1 go round the directories at depth d: object k creates its children in 
+		//    directory k % (directories at depth d). The children of each level are created in parallel, see 
+		//    LevelCreationTask. When streaming, each level of directories is written out as soon as its files 
+		//    have been created. With several shards, all the directories are created but only the files of the 
+		//    shard, see inShard()
+		long numParents, numChildren, globalChildren, grain;
+		LevelObjects level;
+		int run, size;
+		long i;
+		int emitted = 0; //levels of directories written out so far
+		if (!packDirs && this.stream != null)
+			this.prepareStream(packing);
 		for (int d = (packDirs) ? 2 : 1; d < bins.length - 1; d++)
 		{
-			if (d + 1 >= this.byDepthDirs.size())
+			if (d + 1 >= store.getMaxDepth())
 				break;
 			// Create all children of directories in depth d
-			current = 0; //points to the dir which children are going to be added to		
-			for (int i = 0; i < targetObjectCount.length; i++) 
+			numParents = store.getNumDirsAtDepth(d);
+			// the objects that are children of level d, and of all the shards
+			level = new LevelObjects(packing.getNumObjectsAtDepth(d + 1), shards > 1 && !packDirs, this.scratch);
+			run = 0;
+			numChildren = 0;
+			globalChildren = 0;
+			for (long k = 0; k < level.getLength() && numParents > 0; k++)
 			{
-				if (targetDepths[i] != d + 1) // if not a child of level d, no need to create it now
-					continue;
-				
-				
-				if (current >= this.byDepthDirs.get(d).size()) //all directories at depth d already have children, start assigning from the first 
-                    current = 0; 
-				
-				if (this.byDepthDirs.get(d).size() == 0)
-                    continue;
-                dir = this.byDepthDirs.get(d).get(current);
-                
-                for (int c = 0; c < targetObjectCount[i]; c++) // create all the children of current directory -> dir
-                {
-                   //create the new children 
-                   newObject = (packDirs) ? 
-                		new HierarchicalNamespaceEntry(0, dir.getNumChildren() + 1, dir, true) :
-                		new HierarchicalNamespaceEntry(0, dir.getNumChildren() + 1, dir, false) ; 
-                   dir.addChild(newObject);
-                   if (packDirs) {
-                	   this.byDepthDirs.get(d + 1).add(newObject);  
-                	   this.numDirs += 1;
-                   } else {
-                	   this.byDepthFiles.get(d + 1).add(newObject);
-                	   this.numFiles += 1;
-                	   newFiles.add(newObject);
-                   }
-                }
-                if (targetObjectCount[i] > 0) 
-                	current += 1;
+				i = packing.getObjectAtDepth(d + 1, k);
+				while (i >= packing.getRunEnd(run))
+					run += 1;
+				size = packing.getRunSize(run);
+				level.setSize(k, (!level.isSharded() || this.inShard(d + 1, k)) ? size : 0, size);
+				numChildren += level.getSize(k);
+				globalChildren += size;
+			}
+			if (level.isSharded() && globalChildren > 0)
+				this.shardFiles(d + 1, level, store.getNumFilesAtDepth(d + 1));
+			if (numChildren > 0)
+			{
+				// the children of each object take consecutive positions of depth d + 1
+				if (packDirs) {
+					level.place(store.reserveDirs(d + 1, numChildren));
+					this.numDirs += numChildren;
+				} else {
+					level.place(store.reserveFiles(d + 1, numChildren));
+					this.numFiles += numChildren;
+				}
+				grain = Math.max(256, numParents / (8L * this.pool.getParallelism()));
+				this.pool.invoke(new LevelCreationTask(store, d + 1, packDirs, level, numParents, grain));
+				this.countChildren(d, numParents, packDirs);
+				metrics.addProgress(numChildren);
+				if (!packDirs && this.stream != null) // see prepareStream()
+				{
+					this.pool.invoke(this.fileAttributeTask(FileAttributeTask.ATTRIBUTES, d + 1, this.lastStampInSnapshot));
+				}
 			}
+			if (!packDirs && this.stream != null)
+				emitted = this.emitLevels(emitted, d);
 		}
-		if (newFiles != null)
-			Collections.shuffle(newFiles);
-		return newFiles;
+		if (!packDirs && this.stream != null)
+			this.emitLevels(emitted, store.getMaxDepth() - 1);
 	}
 
+	/*
+	 * Counts the children just created in the directories at depth d. All the children of a directory at depth d 
+	 * are created by the objects of depth d + 1, so the directories had none before.
+	 */
+	private void countChildren(int d, long numParents, boolean packDirs)
+	{
+		long dir, n;
+		for (long p = 0; p < numParents; p++)
+		{
+			dir = store.getDirAtDepth(d, p);
+			if (!packDirs) {
+				n = store.getNumChildFiles(dir);
+				if (n > 0)
+					this.stats.addFiles(0, n);
+			} else if (this.inShard(d, p)) {
+				n = store.getNumSubdirs(dir);
+				if (n > 0)
+					this.stats.addSubdirs(0, n);
+			}
+		}
+	}
+	
+	/*
+	 * Records the files of the shard at the given depth for FileAttributeTask: the children of the objects of the
+	 * level with a size > 0, which are runs of the files of the whole namespace at that depth, in the same order.
+	 * first is the position of the first file of the shard in the level.
+	 */
+	private void shardFiles(int depth, LevelObjects level, long first)
+	{
+		int numRuns = 0;
+		for (long k = 0; k < level.getLength(); k++)
+			if (level.getSize(k) > 0)
+				numRuns += 1;
+		long[] globalStart = new long[numRuns + 1];
+		long[] localStart = new long[numRuns + 1];
+		long global = 0, local = first;
+		int r = 0;
+		for (long k = 0; k < level.getLength(); k++)
+		{
+			if (level.getSize(k) > 0)
+			{
+				globalStart[r] = global;
+				localStart[r] = local;
+				r += 1;
+				local += level.getSize(k);
+			}
+			global += level.getGlobalSize(k);
+		}
+		globalStart[r] = global;
+		localStart[r] = local;
+		filesGlobalStart[depth] = globalStart;
+		filesLocalStart[depth] = localStart;
+	}
+	
 	public void generateFileSystem()
+	{
+		try {
+			this.generate();
+		} catch (IOException e) {
+			throw new RuntimeException(e); // nothing is written out unless streaming
+		}
+	}
+	
+	/*
+	 * Generates the namespace and writes it to out while it is generated, in the same format as print(). Each level
+	 * of directories is written out, together with its files, as soon as its files have been created, and the files
+	 * are dropped after that; so only the directories are kept in memory. printStats() can be used afterwards,
+	 * print() cannot. Requires the compact store.
+	 */
+	public void generateFileSystem(BufferedWriter out) throws IOException
+	{
+		this.generateFileSystem(new NamespaceRecordEncoder(store, out, BLOCK));
+	}
+	
+	/* Same as generateFileSystem(BufferedWriter), without going through a charset encoder */
+	public void generateFileSystem(OutputStream out) throws IOException
+	{
+		this.generateFileSystem(new NamespaceRecordEncoder(store, out, BLOCK));
+	}
+	
+	/* Same as generateFileSystem(BufferedWriter), for any output, e.g. a BinaryNamespaceWriter */
+	public void generateFileSystem(NamespaceSink out) throws IOException
+	{
+		if (!(store instanceof CompactNamespaceStore))
+			throw new UnsupportedOperationException("Streaming the namespace requires the compact namespace store.");
+		this.stream = out;
+		try {
+			this.generate();
+		} finally {
+			this.stream = null;
+		}
+		this.streamed = true;
+	}
+	
+	private static final int CHECK_DIRS = 0;
+	private static final int CHECK_FILES = 1;
+	private static final int CHECK_FILE_ATTRIBUTES = 2;
+	
+	/*
+	 * Compares the distributions generated so far with the configuration, see FidelityMonitor; the results are
+	 * written to fidelity.json in the output folder after the last check, or when a check stops the generation
+	 */
+	private void checkFidelity(int what) throws IOException
+	{
+		if (this.monitor == null)
+			return;
+		String summary = "../output/" + ((shards > 1) ? "shard" + shard + "_" : "") + "fidelity.json";
+		try {
+			if (what == CHECK_DIRS)
+				this.monitor.checkDirs(params, store, stats);
+			else if (what == CHECK_FILES)
+				this.monitor.checkFiles(params, store, stats);
+			else
+				this.monitor.checkFileAttributes(params, stats);
+		} catch (IllegalStateException e) {
+			this.monitor.writeSummary(summary);
+			throw e;
+		}
+		if (what == CHECK_FILE_ATTRIBUTES)
+			this.monitor.writeSummary(summary);
+	}
+	
+	private void generate() throws IOException
+	{
+		PhaseMetrics.Phase phase = metrics.begin(PhaseMetrics.GENERATION);
+		try {
+			this.generateLevels();
+		} finally {
+			metrics.end(phase, this.numDirs + this.numFiles); // and the phase that failed, if any
+		}
+	}
+	
+	/* The depth bins of packBins, from the number of objects drawn at each depth */
+	private static int[] bins(long[] counts)
+	{
+		int[] bins = new int[counts.length];
+		for (int i = 0; i < bins.length ; i++){
+			if (counts[i] < 10) // just for preventing very small bins
+				counts[i] += 1;
+			if (counts[i] > Integer.MAX_VALUE)
+				throw new UnsupportedOperationException("Cannot generate more than " + Integer.MAX_VALUE + " directories or files at one depth; " + counts[i] + " at depth " + i);
+			bins[i] = (int) counts[i];
+		}
+		return bins;
+	}
+	
+	private void generateLevels() throws IOException
 	{
 		
 		//1) Create Directories
-		int[] bins = new int [maxDepth+1];
-		Arrays.fill(bins, 0);
-		bins[1]=3;
-		int subdirs;
+		PhaseMetrics.Phase phase = metrics.begin(PhaseMetrics.PACKING_DIRS);
+		long[] counts = new long [maxDepth+1];
+		Arrays.fill(counts, 0);
+		counts[1]=3;
+		int len;
 		
 		
-		for (long l = 0; l < this.numTargetDirs ; l++){
-			subdirs = (int) (long) this.subdirsDepthGen.next();
-			bins[subdirs] += 1;
-		}
-		for (int i = 0; i < bins.length ; i++){ // just for preventing very small bins
-			if (bins[i] < 10)
-				bins[i] += 1;
+		for (long l = 0; l < this.numTargetDirs ; l += len){
+			len = this.draw(this.subdirsDepthGen, this.random, DIR_DEPTHS, 0, l, Math.min(draws.length, this.numTargetDirs - l), 0);
+			for (int k = 0; k < len; k++)
+				counts[(int) draws[k]] += 1;
 		}
+		int[] bins = bins(counts);
 		
-		System.out.println("Packing bins.");
+		log.println("Packing bins.");
 		this.packBins(bins, this.numTargetDirs, this.subdirsPerDirGen, true);
-		System.out.println("Bins packed; numDirs = " + this.numDirs + "; numFiles = " + this.numFiles);
+		log.println("Bins packed; numDirs = " + this.numDirs + "; numFiles = " + this.numFiles);
+		this.checkFidelity(CHECK_DIRS);
+		metrics.end(phase, this.numDirs);
 		
 		//2) Create files
-		Arrays.fill(bins, 0);
-		for (long l = 0; l < this.numTargetFiles ; l++){
-			subdirs = (int) (long) this.filesDepthGen.next();
-			bins[subdirs] += 1;
-		}
-		for (int i = 0; i < bins.length ; i++){ // just for preventing very small bins
-			if (bins[i] < 10)
-				bins[i] += 1;
+		phase = metrics.begin(PhaseMetrics.PACKING_FILES);
+		Arrays.fill(counts, 0);
+		for (long l = 0; l < this.numTargetFiles ; l += len){
+			len = this.draw(this.filesDepthGen, this.random, FILE_DEPTHS, 0, l, Math.min(draws.length, this.numTargetFiles - l), 0);
+			for (int k = 0; k < len; k++)
+				counts[(int) draws[k]] += 1;
 		}
+		bins = bins(counts);
 		
-		System.out.println("Packing bins (files).");
-		ArrayList<HierarchicalNamespaceEntry> newFiles = this.packBins(bins, this.numTargetFiles, this.filesPerDirGen, false);
+		log.println("Packing bins (files).");
+		this.packBins(bins, this.numTargetFiles, this.filesPerDirGen, false);
+		this.checkFidelity(CHECK_FILES);
+		if (this.stream != null) // creation stamps and sizes were assigned, and the namespace written, while streaming
+		{
+			this.checkFidelity(CHECK_FILE_ATTRIBUTES);
+			metrics.end(phase, this.numFiles);
+			return;
+		}
+		metrics.end(phase, this.numFiles);
 		
-		//3) Assigning creation stamps to files 
-		long creationStamp;
+		//3) Assigning creation stamps and sizes to files; the ages and sizes are drawn independently of the file,
+		//   so the files are visited in store order, in parallel chunks (see FileAttributeTask), and each file is
+		//   visited once to set its age and its size
 		long clock = -1;
-		System.out.println("Assigning creation stamps to files; numDirs = " + this.numDirs + "; numFiles = " + this.numFiles);
+		phase = metrics.begin(PhaseMetrics.ATTRIBUTES);
+		log.println("Assigning creation stamps and sizes to files; numDirs = " + this.numDirs + "; numFiles = " + this.numFiles);
 
-		for (HierarchicalNamespaceEntry file : newFiles)
+		for (int d = 0; d < store.getMaxDepth(); d++)
 		{
-			creationStamp = this.fileAgeGen.next();
-			clock = (clock > creationStamp) ? clock : creationStamp + 1;
-			file.setCreationStamp(creationStamp);
+			clock = Math.max(clock, this.pool.invoke(this.fileAttributeTask(FileAttributeTask.ATTRIBUTES, d, -1)));
+			metrics.addProgress(store.getNumFilesAtDepth(d));
 		}
 		this.lastStampInSnapshot = clock;
 		
-		// convert the ages of the files to creation stamps
-		for (HierarchicalNamespaceEntry file : newFiles)
-		{
-			creationStamp = file.getCreationStamp();
-			file.setCreationStamp(this.lastStampInSnapshot - creationStamp);
-		}
-		System.out.println("Files created; numDirs = " + this.numDirs + "; numFiles = " + this.numFiles + " & " + newFiles.size() + "; current time: " +
+		//4) Converting the ages of the files to creation stamps, now that the oldest file is known
+		for (int d = 0; d < store.getMaxDepth(); d++)
+			this.pool.invoke(this.fileAttributeTask(FileAttributeTask.STAMPS, d, this.lastStampInSnapshot));
+		log.println("Files created; numDirs = " + this.numDirs + "; numFiles = " + this.numFiles + " & " + store.getNumFiles() + "; current time: " +
 				System.currentTimeMillis());
-
-		//4) Assigning sizes to files
-		System.out.println("Assigning file sizes.");
-		long fileSize;
-		for (HierarchicalNamespaceEntry file : newFiles)
-		{			
-			fileSize = this.fileSizeGen.next();
-			file.setSize(fileSize);
-		}
-
-		newFiles.clear();
-		newFiles = null;
+		this.checkFidelity(CHECK_FILE_ATTRIBUTES);
+		metrics.end(phase, this.numFiles);
 
 		//5) Sorting the files at each depth based on the creation stamp
-		for (int i = 0; i < this.byDepthFiles.size(); i++)
+		phase = metrics.begin(PhaseMetrics.SORTING);
+		store.sortFilesByCreationStamp(this.pool);
+		metrics.end(phase, this.numFiles);
+		
+	}
+
+	/*
+	 * Reads a namespace written with a BinaryNamespaceWriter (see print(NamespaceSink)) into the store, which must be
+	 * empty, e.g. to grow it with growFileSystem(). The directories are read first, then the file is read again for
+	 * the files, so that the subdirectories of each directory are created before its files; the records are read
+	 * without their paths, so the reader keeps nothing per directory (see BinaryNamespaceReader). The files at each
+	 * depth are then sorted by creation stamp, as after generateFileSystem(), and the statistics are counted. The
+	 * last stamp of the snapshot is read from the header of the file; the files written before it was (version 1)
+	 * take the newest creation stamp of their files instead.
+	 */
+	public void loadFileSystem(File file) throws IOException
+	{
+		if (store.getNumDirs() > 4 || store.getNumFiles() > 0)
+			throw new IllegalStateException("A namespace can only be loaded into an empty store.");
+		PhaseMetrics.Phase phase = metrics.begin(PhaseMetrics.LOADING);
+		long[] levelStart = new long[store.getMaxDepth() + 1]; // the id of the first directory at each depth
+		int depth = 1, d;
+		long lastStamp = -1, savedStamp;
+		BinaryNamespaceReader in = new BinaryNamespaceReader(new FileInputStream(file), false, null);
+		savedStamp = in.getLastStamp();
+		try {
+			levelStart[1] = 1;
+			while (in.next())
+			{
+				if (!in.isDir())
+					continue;
+				if (!in.inShard())
+					throw new IOException(file + " holds a shard of a namespace, which cannot be loaded.");
+				if (in.getId() < 4) // the root, user, project and other are in every store
+				{
+					if (in.getName() != ((in.getId() == 0) ? 0 : in.getId()) || in.getParent() != ((in.getId() == 0) ? -1 : 0))
+						throw new IOException(file + " does not start with the root and its 3 directories.");
+					continue;
+				}
+				for (d = depth; levelStart[d] > in.getParent(); d--)
+					;
+				if (d + 1 > depth)
+				{
+					if (d + 1 >= store.getMaxDepth())
+						throw new IOException(file + " has directories deeper than " + (store.getMaxDepth() - 1) + ".");
+					depth = d + 1;
+					levelStart[depth] = in.getId();
+				}
+				if (store.getDirName(store.addDir(store.getDirAtDepth(d, in.getParent() - levelStart[d]))) != in.getName())
+					throw new IOException("The directories of " + file + " are not named in creation order.");
+				this.numDirs += 1;
+				metrics.addProgress(1);
+			}
+		} finally {
+			in.close();
+		}
+		in = new BinaryNamespaceReader(new FileInputStream(file), false, null);
+		try {
+			long f;
+			while (in.next())
+			{
+				if (in.isDir())
+					continue;
+				for (d = depth; levelStart[d] > in.getParent(); d--)
+					;
+				f = store.addFile(store.getDirAtDepth(d, in.getParent() - levelStart[d]));
+				if (store.getFileName(f) != in.getName())
+					throw new IOException("The files of " + file + " are not named in creation order.");
+				store.setFileCreationStamp(f, in.getCreationStamp());
+				store.setFileSize(f, in.getSize());
+				lastStamp = Math.max(lastStamp, in.getCreationStamp());
+				this.numFiles += 1;
+				metrics.addProgress(1);
+			}
+		} finally {
+			in.close();
+		}
+		store.sortFilesByCreationStamp(this.pool);
+		this.lastStampInSnapshot = Math.max(savedStamp, lastStamp); // the newest file, for the files written without their last stamp
+		this.countStats();
+		metrics.end(phase, this.numDirs + this.numFiles);
+		log.println("Namespace loaded from " + file + "; numDirs = " + this.numDirs + "; numFiles = " + this.numFiles +
+				"; last stamp in namespace: " + this.lastStampInSnapshot);
+	}
+	
+	/*
+	 * Saves the namespace, with its last stamp and its statistics, to a snapshot file that loadSnapshot() maps back
+	 * in memory instead of generating the namespace again (see SnapshotNamespaceStore).
+	 */
+	public void saveSnapshot(File file) throws IOException
+	{
+		if (this.streamed)
+			throw new UnsupportedOperationException("The namespace was written out while it was generated; its files are no longer kept.");
+		if (shards > 1)
+			throw new UnsupportedOperationException("Cannot save a snapshot of a shard of a namespace.");
+		PhaseMetrics.Phase phase = metrics.begin(PhaseMetrics.SNAPSHOT);
+		try {
+			SnapshotNamespaceStore.write(store, this.lastStampInSnapshot, stats, file);
+		} finally {
+			metrics.end(phase, this.numDirs + this.numFiles);
+		}
+		log.println("Snapshot written to " + file);
+	}
+	
+	/*
+	 * Maps the namespace of a snapshot file written by saveSnapshot(), in place of the store, which must be empty:
+	 * the namespace is read from the file as it is visited, and can be printed or walked through getStore(), but
+	 * not changed. The statistics saved with it are used, unless they were counted in other buckets than those of
+	 * the configuration.
+	 */
+	public void loadSnapshot(File file) throws IOException
+	{
+		if (store.getNumDirs() > 4 || store.getNumFiles() > 0)
+			throw new IllegalStateException("A namespace can only be loaded into an empty store.");
+		PhaseMetrics.Phase phase = metrics.begin(PhaseMetrics.LOADING);
+		SnapshotNamespaceStore snapshot = new SnapshotNamespaceStore(file);
+		if (snapshot.getMaxDepth() != store.getMaxDepth())
 		{
-			Collections.sort(this.byDepthFiles.get(i),
-					new Comparator<HierarchicalNamespaceEntry>() {
-			    @Override
-			    public int compare(HierarchicalNamespaceEntry a, HierarchicalNamespaceEntry b) {
-			    	if (a.equals(b)) {
-			    	    return 0;
-			    	} else if (a.getCreationStamp() > b.getCreationStamp()) {
-			    	    return 1;
-			    	} else if (b.getCreationStamp() > a.getCreationStamp()) {
-			    	    return -1;
-			    	} else {
-			    	    return System.identityHashCode(a) > System.identityHashCode(b) ? 1 : -1;
-			    	}
-			    } });
+			snapshot.close();
+			throw new IOException(file + " holds a namespace of depth " + snapshot.getMaxDepth() + "; expected " + store.getMaxDepth() + ".");
 		}
+		this.setStore(snapshot);
+		this.numDirs = snapshot.getNumDirs();
+		this.numFiles = snapshot.getNumFiles();
+		this.lastStampInSnapshot = snapshot.getLastStampInSnapshot();
+		this.stats = snapshot.getStats(params);
+		if (this.stats == null)
+			this.countStats();
+		metrics.end(phase, this.numDirs + this.numFiles);
+		log.println("Namespace mapped from " + file + "; numDirs = " + this.numDirs + "; numFiles = " + this.numFiles +
+				"; last stamp in namespace: " + this.lastStampInSnapshot);
+	}
+	
+	/*
+	 * Creates the namespace under root, as directories and files, level by level: the directories of each depth with
+	 * their files, cut in batches of about params.materializeBatch entries created in parallel by
+	 * params.materializeThreads threads (see NamespaceMaterializer), before those of the next depth. The files get
+	 * their size (empty files unless params.materializeSizes) and a modification time counted back from the time of
+	 * the first run on root. The batches done are listed in the journal root.journal, next to root: another run on
+	 * the same root and namespace skips them, and creates again the batches left halfway. Returns the number of
+	 * directories and files created by this run.
+	 */
+	public long materialize(File root) throws IOException
+	{
+		int i;
+		long j, levelSize, lines;
+		
+		if (this.streamed)
+			throw new UnsupportedOperationException("The namespace was written out while it was generated; its files are no longer kept.");
+		if (shards > 1)
+			throw new UnsupportedOperationException("Cannot materialize a shard of a namespace.");
+		
+		// cut each level in batches; the batches do not span depths, as a level is created before the next one
+		ArrayList<long[]> ranges = new ArrayList<long[]>(); // depth, first and end directory, entries
+		long first;
+		for (i = 0; i < store.getMaxDepth(); i++)
+		{
+			levelSize = store.getNumDirsAtDepth(i);
+			first = 0;
+			lines = 0;
+			for (j = 0; j < levelSize; j++)
+			{
+				lines += this.lines(i, j);
+				if (lines >= params.materializeBatch || j == levelSize - 1)
+				{
+					ranges.add(new long[] {i, first, j + 1, lines});
+					first = j + 1;
+					lines = 0;
+				}
+			}
+		}
+		int[] depth = new int[ranges.size()];
+		long[] lo = new long[depth.length];
+		long[] hi = new long[depth.length];
+		long[] entries = new long[depth.length];
+		for (int k = 0; k < depth.length; k++)
+		{
+			depth[k] = (int) ranges.get(k)[0];
+			lo[k] = ranges.get(k)[1];
+			hi[k] = ranges.get(k)[2];
+			entries[k] = ranges.get(k)[3];
+		}
+		
+		// the journal starts with the namespace and the time of the first run, then lists the batches done
+		root = root.getAbsoluteFile();
+		File journalFile = new File(root.getParentFile(), root.getName() + ".journal");
+		String header = "mimesis-materialize " + store.getNumDirs() + " " + store.getNumFiles() + " " + this.lastStampInSnapshot + " " +
+				params.materializeBatch + " " + params.materializeSizes;
+		long time = System.currentTimeMillis();
+		BitSet done = new BitSet(depth.length);
+		if (journalFile.exists())
+		{
+			BufferedReader in = new BufferedReader(new FileReader(journalFile));
+			try {
+				String line = in.readLine();
+				if (line == null || !line.startsWith(header + " "))
+					throw new IOException(journalFile + " is the journal of another namespace, or of other MATERIALIZE_BATCH or MATERIALIZE_SIZES.");
+				time = Long.parseLong(line.substring(header.length() + 1));
+				while ((line = in.readLine()) != null)
+				{
+					try {
+						done.set(Integer.parseInt(line));
+					} catch (NumberFormatException e) {
+						// the last line, cut by an interrupted run; its batch is created again
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} else {
+			if (!root.isDirectory() && !root.mkdirs())
+				throw new IOException("Cannot create the directory " + root);
+			FileWriter out = new FileWriter(journalFile);
+			out.write(header + " " + time + "\n");
+			out.close();
+		}
+		long created = 0;
+		for (int k = 0; k < depth.length; k++)
+			if (!done.get(k))
+				created += entries[k];
+		
+		int threads = (params.materializeThreads > 0) ? params.materializeThreads : 4 * Runtime.getRuntime().availableProcessors();
+		ForkJoinPool creators = new ForkJoinPool(threads);
+		FileOutputStream journal = new FileOutputStream(journalFile, true);
+		PhaseMetrics.Phase phase = metrics.begin(PhaseMetrics.MATERIALIZING);
+		try {
+			// a level at a time, so that the parent of each directory is there before it
+			for (int from = 0, to; from < depth.length; from = to)
+			{
+				for (to = from + 1; to < depth.length && depth[to] == depth[from]; to++)
+					;
+				creators.invoke(new NamespaceMaterializer(this, root.getPath(), params.materializeSizes, time, this.lastStampInSnapshot,
+						depth, lo, hi, entries, done, journal, from, to));
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			creators.shutdown();
+			journal.close();
+			metrics.end(phase, created);
+		}
+		log.println("Namespace materialized under " + root + "; " + created + " entries created in " + phase.getSeconds() + " s (" +
+				(long) phase.getEntriesPerSecond() + " per second); " + done.cardinality() + " of " + depth.length + " batches were done already");
+		return created;
+	}
+	
+	/*
+	 * Grows the namespace, generated or loaded, to targetDirs directories and targetFiles files (targets below the
+	 * namespace add nothing), without generating it again: its directories and files keep their paths, creation
+	 * stamps and sizes. The namespace is copied level by level to a new store, each level holding the entries it had,
+	 * at the same positions, followed by the entries added (so, for a while, the namespace is kept twice):
+	 *   - the entries added are packed like in packBins(), in depth bins of the entries each depth lacks to hold its
+	 *     share of the targets (see packGrowth()); the objects at depth d + 1 go round the directories at depth d 
+	 *     that have no children of their kind yet, the new ones first, then the others (see growthParents())
+	 *   - time goes on: with a fraction g of the files added, the clock moves past getLastStampInSnapshot() by the
+	 *     g-quantile of the ages, and the ages of the files added are drawn below it, so they are the newest files
+	 *     and the files already there get older by as much. The files at each depth stay sorted by creation stamp
+	 *     by sorting the files added only
+	 * The statistics are kept up to date: the directories that get children move in the histograms, and the ages of
+	 * the files already there are counted again on the new clock (see countAges()). The random numbers are drawn
+	 * from the streams of a seed derived from the seed and the size of the namespace, so that growing a namespace
+	 * always gives the same namespace, and growing it again draws other numbers.
+	 */
+	public void growFileSystem(long targetDirs, long targetFiles)
+	{
+		if (this.streamed)
+			throw new UnsupportedOperationException("The namespace was written out while it was generated; its files are no longer kept.");
+		if (shards > 1)
+			throw new UnsupportedOperationException("Cannot grow a shard of a namespace.");
+		if (store instanceof SnapshotNamespaceStore)
+			throw new UnsupportedOperationException("A namespace mapped from a snapshot is read only; grow it from its binary output instead.");
+		long before = this.numDirs + this.numFiles;
+		PhaseMetrics.Phase phase = metrics.begin(PhaseMetrics.GROWTH);
+		try {
+			this.grow(targetDirs, targetFiles);
+		} catch (IOException e) {
+			throw new RuntimeException(e); // from the fidelity summary
+		} finally {
+			metrics.end(phase, this.numDirs + this.numFiles - before);
+		}
+	}
+	
+	private void grow(long targetDirs, long targetFiles) throws IOException
+	{
+		NamespaceStore old = this.store;
+		int depths = old.getMaxDepth();
+		long addDirs = Math.max(0, targetDirs - old.getNumDirs());
+		long addFiles = Math.max(0, targetFiles - old.getNumFiles());
+		long growthSeed = SplitRandom.seedOf(this.seed, GROWTH, old.getNumDirs() + old.getNumFiles());
+		NamespaceStore grown = this.newStore(old.getNumDirs() + addDirs, old.getNumFiles() + addFiles);
+		log.println("Growing namespace to " + Math.max(targetDirs, old.getNumDirs()) + " directories and " +
+				Math.max(targetFiles, old.getNumFiles()) + " files; numDirs = " + this.numDirs + "; numFiles = " + this.numFiles);
+		
+		//1) Directories: at each depth, those of the namespace, then those added
+		PhaseMetrics.Phase phase = metrics.begin(PhaseMetrics.PACKING_DIRS);
+		BinPacking packing = this.packGrowth(old, targetDirs, addDirs, growthSeed, true);
+		LevelObjects level;
+		int[] parents;
+		long nOld, n, grain;
+		for (int d = 2; d < depths; d++)
+		{
+			nOld = old.getNumDirsAtDepth(d);
+			level = this.growthObjects(packing, d, nOld);
+			n = level.getStart(level.getLength());
+			parents = (n > nOld) ? this.growthParents(old, grown, d - 1, true, level.getLength()) : null;
+			if (parents != null && parents.length == 0) // no directory can take them
+				n = nOld;
+			if (n == 0)
+				continue;
+			grown.reserveDirs(d, n);
+			grown.copyDirs(old, d);
+			if (n > nOld)
+			{
+				grain = Math.max(256, parents.length / (8L * this.pool.getParallelism()));
+				this.pool.invoke(new LevelCreationTask(grown, d, true, level, parents, grain));
+				this.countChildren(old, grown, d - 1, parents, true);
+			}
+			metrics.addProgress(n);
+		}
+		metrics.end(phase, grown.getNumDirs());
+		
+		//2) Files, and the creation stamps and sizes of those added
+		phase = metrics.begin(PhaseMetrics.PACKING_FILES);
+		packing = this.packGrowth(old, targetFiles, addFiles, growthSeed, false);
+		double g = (addFiles == 0) ? 0 : (double) addFiles / (old.getNumFiles() + addFiles);
+		long lastStamp = Math.max(this.lastStampInSnapshot, 0);
+		if (addFiles > 0)
+		{
+			lastStamp += 1 + new WeightedTriangularRanGen(this.random, params.ageAtT0Keys, params.ageAtT0Weights, false).quantile(g);
+			long[] counts = stats.getAgeCounts(); // counted again on the new clock
+			for (int k = 0; k < counts.length; k++)
+				counts[k] = -counts[k];
+			stats.addAges(counts);
+			for (int d = 0; d < depths; d++)
+				countAges(old, d, lastStamp, stats);
+		}
+		for (int d = 2; d < depths; d++)
+		{
+			nOld = old.getNumFilesAtDepth(d);
+			level = this.growthObjects(packing, d, nOld);
+			n = level.getStart(level.getLength());
+			parents = (n > nOld) ? this.growthParents(old, grown, d - 1, false, level.getLength()) : null;
+			if (parents != null && parents.length == 0)
+				n = nOld;
+			if (n == 0)
+				continue;
+			grown.reserveFiles(d, n);
+			grown.copyFiles(old, d);
+			if (n > nOld)
+			{
+				grain = Math.max(256, parents.length / (8L * this.pool.getParallelism()));
+				this.pool.invoke(new LevelCreationTask(grown, d, false, level, parents, grain));
+				this.countChildren(old, grown, d - 1, parents, false);
+				this.pool.invoke(new FileAttributeTask(grown, params, growthSeed, d, nOld, n - nOld, lastStamp, g, stats));
+			}
+			metrics.addProgress(n);
+		}
+		metrics.end(phase, grown.getNumFiles());
+		
+		//3) Sorting the files added at each depth; they are newer than the files already there
+		phase = metrics.begin(PhaseMetrics.SORTING);
+		long[] from = new long[depths];
+		for (int d = 0; d < depths; d++)
+			from[d] = old.getNumFilesAtDepth(d);
+		grown.sortFilesByCreationStamp(this.pool, from);
+		metrics.end(phase, grown.getNumFiles() - old.getNumFiles());
 		
+		this.setStore(grown);
+		this.numDirs = grown.getNumDirs();
+		this.numFiles = grown.getNumFiles();
+		this.numTargetDirs = Math.max(this.numTargetDirs, targetDirs);
+		this.numTargetFiles = Math.max(this.numTargetFiles, targetFiles);
+		this.lastStampInSnapshot = (grown.getNumFiles() > 0) ? lastStamp : this.lastStampInSnapshot;
+		log.println("Namespace grown by " + (grown.getNumDirs() - old.getNumDirs()) + " directories and " +
+				(grown.getNumFiles() - old.getNumFiles()) + " files; numDirs = " + this.numDirs + "; numFiles = " + this.numFiles +
+				"; last stamp in namespace: " + this.lastStampInSnapshot);
+		this.checkFidelity(CHECK_DIRS);
+		this.checkFidelity(CHECK_FILES);
+		this.checkFidelity(CHECK_FILE_ATTRIBUTES);
+	}
+	
+	/*
+	 * Steps 1) - 3) of packBins for the add directories (or files) of growFileSystem(). The bin of each depth is 
+	 * the number of entries it lacks to hold its share of target, the expected number of directories (or files) at
+	 * that depth in a namespace of target entries; the depths holding their share already get none, unless no 
+	 * depth has room left. null when nothing is added.
+	 */
+	private BinPacking packGrowth(NamespaceStore old, long target, long add, long growthSeed, boolean packDirs)
+	{
+		if (add == 0)
+			return null;
+		Long[] keys = (packDirs) ? params.subdirsAtDepthKeys : params.filesAtDepthKeys;
+		double[] weights = (packDirs) ? params.subdirsAtDepthWeights : params.filesAtDepthWeights;
+		double total = 0;
+		for (double w : weights)
+			total += w;
+		int[] bins = new int[maxDepth + 1];
+		int d;
+		long share;
+		for (int k = 0; k < keys.length; k++)
+		{
+			d = keys[k].intValue();
+			if (d < 2 || d >= old.getMaxDepth()) // no entries are packed at depths 0 and 1
+				continue;
+			share = Math.round(target * weights[k] / total) - ((packDirs) ? old.getNumDirsAtDepth(d) : old.getNumFilesAtDepth(d));
+			bins[d] = (int) Math.min(Integer.MAX_VALUE, Math.max(0, share));
+		}
+		this.random.setStream(growthSeed, (packDirs) ? PACK_DIRS : PACK_FILES, 0);
+		BinPacking packing = this.binPacker.pack(bins, add, (packDirs) ? this.subdirsPerDirGen : this.filesPerDirGen,
+				(packDirs) ? this.subdirsDepthGen : this.filesDepthGen, this.random, packDirs);
+		packing.indexByDepth(bins.length);
+		return packing;
+	}
+	
+	/* The objects of packing at depth d, their children placed from position first of the level on */
+	private LevelObjects growthObjects(BinPacking packing, int d, long first)
+	{
+		LevelObjects level = new LevelObjects((packing == null) ? 0 : packing.getNumObjectsAtDepth(d), false, this.scratch);
+		int run = 0;
+		long i;
+		for (long k = 0; k < level.getLength(); k++)
+		{
+			i = packing.getObjectAtDepth(d, k);
+			while (i >= packing.getRunEnd(run))
+				run += 1;
+			level.setSize(k, packing.getRunSize(run), packing.getRunSize(run));
+		}
+		level.place(first);
+		return level;
+	}
+	
+	/*
+	 * The positions of the directories at depth d of grown the objects of the level below go round, in order: the
+	 * directories added, then those of old without children of the kind packed, then (for files) those with some.
+	 * Subdirectories are created before files (see NamespaceStore), so only the directories of old without files 
+	 * get subdirectories. The list stops at the number of objects, since the directories after them get none.
+	 */
+	private int[] growthParents(NamespaceStore old, NamespaceStore grown, int d, boolean dirs, long objects)
+	{
+		long nOld = old.getNumDirsAtDepth(d), n = grown.getNumDirsAtDepth(d), dir;
+		int[] parents = new int[(int) Math.min(n, objects)];
+		int count = 0;
+		for (long p = nOld; p < n && count < parents.length; p++)
+			parents[count++] = (int) p;
+		for (long p = 0; p < nOld && count < parents.length; p++)
+		{
+			dir = old.getDirAtDepth(d, p);
+			if (old.getNumChildFiles(dir) == 0 && (!dirs || old.getNumSubdirs(dir) == 0))
+				parents[count++] = (int) p;
+		}
+		for (long p = 0; p < nOld && count < parents.length; p++)
+		{
+			dir = old.getDirAtDepth(d, p);
+			if ((dirs) ? old.getNumChildFiles(dir) == 0 && old.getNumSubdirs(dir) > 0 : old.getNumChildFiles(dir) > 0)
+				parents[count++] = (int) p;
+		}
+		return Arrays.copyOf(parents, count);
 	}
 	
+	/* Moves the directories at depth d that got the children of a level (see growthParents()) in the statistics */
+	private void countChildren(NamespaceStore old, NamespaceStore grown, int d, int[] parents, boolean dirs)
+	{
+		long nOld = old.getNumDirsAtDepth(d), dir;
+		for (int p : parents)
+		{
+			dir = grown.getDirAtDepth(d, p);
+			if (dirs)
+				stats.addSubdirs((p < nOld) ? old.getNumSubdirs(old.getDirAtDepth(d, p)) : 0, grown.getNumSubdirs(dir));
+			else
+				stats.addFiles((p < nOld) ? old.getNumChildFiles(old.getDirAtDepth(d, p)) : 0, grown.getNumChildFiles(dir));
+		}
+	}
 	
+	/*
+	 * Counts the ages of the files at depth d of store on the clock lastStamp in stats. The files are sorted by
+	 * creation stamp, so those of age up to key k of the buckets (see NamespaceStats) are the files from the first
+	 * one created at lastStamp - key k on, found by binary search, without going over the files.
+	 */
+	private static void countAges(NamespaceStore store, int d, long lastStamp, NamespaceStats stats)
+	{
+		long n = store.getNumFilesAtDepth(d), younger, previous = 0;
+		long[] keys = stats.getAgeKeys();
+		long[] counts = new long[keys.length];
+		long lo, hi, mid;
+		for (int k = 0; k < keys.length - 1; k++)
+		{
+			lo = 0;
+			hi = n;
+			while (lo < hi)
+			{
+				mid = (lo + hi) >>> 1;
+				if (store.getFileCreationStamp(store.getFileAtDepth(d, mid)) < lastStamp - keys[k])
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			younger = n - lo;
+			counts[k] = younger - previous;
+			previous = younger;
+		}
+		counts[keys.length - 1] = n - previous;
+		stats.addAges(counts);
+	}
+	
+	/* Counts the statistics of the whole namespace, once it is loaded or grown, see NamespaceStats */
+	private void countStats()
+	{
+		NamespaceStats counted = new NamespaceStats(params);
+		long dir, n, levelSize;
+		for (int d = 0; d < store.getMaxDepth(); d++)
+		{
+			levelSize = store.getNumDirsAtDepth(d);
+			for (long j = 0; j < levelSize; j++)
+			{
+				dir = store.getDirAtDepth(d, j);
+				if ((n = store.getNumSubdirs(dir)) > 0)
+					counted.addSubdirs(0, n);
+				if ((n = store.getNumChildFiles(dir)) > 0)
+					counted.addFiles(0, n);
+			}
+		}
+		for (int d = 0; d < store.getMaxDepth(); d++)
+			this.pool.invoke(new FileAttributeTask(store, params, seed, FileAttributeTask.COUNT, d, store.getNumFilesAtDepth(d),
+					this.lastStampInSnapshot, counted));
+		this.stats = counted;
+	}
+
 }
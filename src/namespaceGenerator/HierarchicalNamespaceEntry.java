@@ -2,20 +2,19 @@ package namespaceGenerator;
 
 import java.util.ArrayList;
 
-/* 
+/*
  * These are entries in the namespace. They are either directories or files.
  */
 public class HierarchicalNamespaceEntry extends NamespaceEntry {
 	private HierarchicalNamespaceEntry parent = null;
-	private boolean isDir = false;
-	private ArrayList<HierarchicalNamespaceEntry> children = null;
+	private ArrayList<HierarchicalNamespaceEntry> children = null; // null for files
+	private int index = -1; // position of the entry in its depth level; maintained by EntryNamespaceStore
 
 	public HierarchicalNamespaceEntry(long creationStamp, long name,
 			HierarchicalNamespaceEntry p, boolean d) {
 		super(creationStamp, name);
 		this.parent = p;
-		this.isDir = d;
-		if (this.isDir) {
+		if (d) {
 			children = new ArrayList<HierarchicalNamespaceEntry>();
 		}
 	}
@@ -25,11 +24,11 @@ public class HierarchicalNamespaceEntry extends NamespaceEntry {
 	}
 
 	public boolean isDir() {
-		return this.isDir;
+		return this.children != null;
 	}
 
 	public void addChild(HierarchicalNamespaceEntry child) {
-		if (!this.isDir)
+		if (!this.isDir())
 			throw new java.lang.UnsupportedOperationException(
 					"Files cannot have children.");
 
@@ -41,9 +40,17 @@ public class HierarchicalNamespaceEntry extends NamespaceEntry {
 	}
 
 	public int getNumChildren() {
-		if (!this.isDir)
+		if (!this.isDir())
 			throw new UnsupportedOperationException(
 					"Files do not have children.");
 		return this.children.size();
 	}
+
+	int getIndex() {
+		return this.index;
+	}
+
+	void setIndex(int i) {
+		this.index = i;
+	}
 }
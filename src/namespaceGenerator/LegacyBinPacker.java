@@ -0,0 +1,117 @@
+package namespaceGenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import randomGenerator.LongRandomGenerator;
+
+/*
+ * The original packing: one boxed Integer per object, sorted with a comparator, and a scan of all the bins
+ * for each object. Kept to compare against CountingBinPacker.
+ */
+public class LegacyBinPacker implements BinPacker {
+
+	@Override
+	public BinPacking pack(int[] bins, long targetObjects, LongRandomGenerator gen, LongRandomGenerator depthGen,
+			Random random, boolean packDirs) {
+
+		// 1) Generate target objects
+		Integer[] targetObjectCount = new Integer[(int) targetObjects];
+		long allocatedObjects = 0;
+		int numObjects;
+		boolean done = false; //used for finishing the process
+
+		for (int i = 0; i < (int) targetObjects; i++)
+		{
+			if (done)  //used for subdirs per dir: the remaining subdirs will have zero subdirs
+			{
+				targetObjectCount[i] = 0;
+				continue;
+			}
+			numObjects = (int) gen.nextLong();
+			allocatedObjects += numObjects;
+			if (allocatedObjects > targetObjects)
+			{
+				allocatedObjects -= numObjects;
+				numObjects = (int) (targetObjects - allocatedObjects);
+				allocatedObjects += numObjects;
+				done = true; //finish the object generating process
+			}
+			targetObjectCount[i] = numObjects;
+		}
+
+		// 2) Sort objects target list, descending
+		Arrays.sort(targetObjectCount, Collections.reverseOrder());
+
+		// 3) Pack them : assign depths to each object in targetObjectCount. try to find the worst fit!
+		int[] targetDepths = new int[targetObjectCount.length];
+		Arrays.fill(targetDepths, -1);
+
+		long worstFit = -1;
+		long r;
+		for (int i = 0; i < targetObjectCount.length; i++)
+		{
+			worstFit = -1;
+			if (targetObjectCount[i] == 0)
+			{
+				r = depthGen.nextLong();
+				worstFit = r;
+			} else {
+				//when packing bins for directories, depth 0 is root, and depth 1 is user, project, program
+				r = ((packDirs) ? 2 : 1) + random.nextInt(bins.length - ((packDirs) ? 3 : 2));
+				for (int j = (packDirs) ? 2 : 1; j < bins.length; j++)
+					if (bins[(j + (int)r) % bins.length] > 0 && bins[(j + (int)r) % bins.length] >= targetObjectCount[i])
+						if (worstFit == -1)
+							worstFit = (j + (int)r) % bins.length;
+						else if (bins[(j + (int)r) % bins.length] > bins[(int)worstFit])
+							worstFit = (j + (int)r) % bins.length;
+				if (worstFit == -1) //one last attempt; find the worst fit, even if bin is not big enough
+				{
+					r = depthGen.nextLong();
+					worstFit = r;
+					for (int j = (packDirs) ? 2 : 1; j < bins.length; j++)
+						if ( bins[j]  > bins[(int)worstFit] )
+							worstFit = j;
+
+				}
+			}
+			if (worstFit < 0 || worstFit >= bins.length)
+			{
+				System.err.println("Could not find target bin; worstFit = " + worstFit + " i = " + i + "; r = " + r + "; targetObjectCount[i] = " + targetObjectCount[i] + " bins = " + Arrays.toString(bins));
+				System.exit(0);
+			}
+
+			// found a bin; decrease capacity
+			bins[(int)worstFit] -= targetObjectCount[i];
+
+			// assign target depth to corresponding object
+            targetDepths[i] = (int)worstFit;
+		}
+
+		// Convert to runs of objects of the same size
+		ArrayList<Integer> runSize = new ArrayList<Integer>();
+		ArrayList<Long> runEnd = new ArrayList<Long>();
+		byte[] depth = new byte[targetDepths.length];
+		for (int i = 0; i < targetObjectCount.length; i++)
+		{
+			if (i == 0 || !targetObjectCount[i].equals(targetObjectCount[i - 1]))
+			{
+				runSize.add(targetObjectCount[i]);
+				runEnd.add(Long.valueOf(i + 1));
+			} else {
+				runEnd.set(runEnd.size() - 1, Long.valueOf(i + 1));
+			}
+			depth[i] = (byte) targetDepths[i];
+		}
+		int[] sizes = new int[runSize.size()];
+		long[] ends = new long[runEnd.size()];
+		for (int i = 0; i < sizes.length; i++)
+		{
+			sizes[i] = runSize.get(i);
+			ends[i] = runEnd.get(i);
+		}
+		return new BinPacking(sizes, ends, depth);
+	}
+}
@@ -0,0 +1,84 @@
+package namespaceGenerator;
+
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Step 5 of packBins for one depth: creates the children of the directories at depth - 1. Object k of the level
+ * creates its children in directory k % numParents (the objects go round the directories, and the objects with no
+ * children are at the end), at its positions of the level, reserved beforehand (see LevelObjects). 
+ * The directories are split in ranges created in parallel; a range creates the children of its directories in 
+ * object order, so the names and the positions of the children do not depend on the ranges.
+ * With several shards, the files of the other shards are not created (the size of their objects is 0, or less
+ * than their global size), but the files of the shard are named as if they had been.
+ * When a namespace is grown, the objects go round a list of parents instead, see the second constructor.
+ */
+public class LevelCreationTask extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+	private NamespaceStore store;
+	private int depth;
+	private boolean dirs;
+	private LevelObjects objects;
+	private long numParents;
+	private int[] parents = null; // the positions of the directories the objects go round, null for all of them
+	private long lo, hi; // the range of parents of this task
+	private long grain; // ranges with at most this many parents are not split
+
+	public LevelCreationTask(NamespaceStore store, int depth, boolean dirs, LevelObjects objects, long numParents, long grain)
+	{
+		this(store, depth, dirs, objects, numParents, null, 0, numParents, grain);
+	}
+
+	/* Object k creates its children in directory parents[k % parents.length] of depth - 1 */
+	public LevelCreationTask(NamespaceStore store, int depth, boolean dirs, LevelObjects objects, int[] parents, long grain)
+	{
+		this(store, depth, dirs, objects, parents.length, parents, 0, parents.length, grain);
+	}
+
+	private LevelCreationTask(NamespaceStore store, int depth, boolean dirs, LevelObjects objects, long numParents,
+			int[] parents, long lo, long hi, long grain)
+	{
+		this.store = store;
+		this.depth = depth;
+		this.dirs = dirs;
+		this.objects = objects;
+		this.numParents = numParents;
+		this.parents = parents;
+		this.lo = lo;
+		this.hi = hi;
+		this.grain = Math.max(grain, 1);
+	}
+
+	@Override
+	protected void compute() {
+		if (hi - lo > grain)
+		{
+			long mid = (lo + hi) >>> 1;
+			invokeAll(new LevelCreationTask(store, depth, dirs, objects, numParents, parents, lo, mid, grain),
+					new LevelCreationTask(store, depth, dirs, objects, numParents, parents, mid, hi, grain));
+			return;
+		}
+		long n = objects.getLength();
+		long parent, i, end, file, skipped;
+		int all;
+		for (long p = lo; p < hi; p++)
+		{
+			parent = store.getDirAtDepth(depth - 1, (parents != null) ? parents[(int) p] : p);
+			skipped = 0; // files of the directory in the other shards so far
+			for (long k = p; k < n && (all = objects.getGlobalSize(k)) > 0; k += numParents)
+			{
+				end = objects.getStart(k + 1);
+				for (i = objects.getStart(k); i < end; i++)
+				{
+					if (dirs)
+						store.createDir(depth, i, parent);
+					else {
+						file = store.createFile(depth, i, parent);
+						if (skipped > 0)
+							store.setFileName(file, store.getFileName(file) + skipped);
+					}
+				}
+				skipped += all - objects.getSize(k);
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package namespaceGenerator;
+
+import java.io.File;
+
+/*
+ * The objects of step 5 of packBins whose children are created at one depth, in the order of
+ * BinPacking.getObjectAtDepth(): object k creates getSize(k) children, which take positions getStart(k) ..
+ * getStart(k + 1) - 1 of the level. With several shards, getGlobalSize(k) is the number of children of object k
+ * in all the shards, and getSize(k) the number created by this one. The objects are kept in arrays, or in
+ * MappedArrays for the namespaces kept in MappedNamespaceStore.
+ */
+public class LevelObjects {
+	private long length;
+	private int[] size = null;
+	private int[] globalSize = null; // null when all the children are created
+	private long[] start = null;
+	private MappedArray mappedSize = null; // int, instead of size
+	private MappedArray mappedStart = null; // long, instead of start
+
+	/* length objects, kept in the heap when dir is null, in scratch files of dir otherwise */
+	public LevelObjects(long length, boolean sharded, File dir)
+	{
+		this.length = length;
+		if (dir != null)
+		{
+			if (sharded)
+				throw new UnsupportedOperationException("The objects of a shard are kept in the heap.");
+			mappedSize = new MappedArray(dir, 4, length);
+			mappedStart = new MappedArray(dir, 8, length + 1);
+		} else {
+			if (length > Integer.MAX_VALUE - 8)
+				throw new UnsupportedOperationException("Cannot keep more than " + (Integer.MAX_VALUE - 8) + " objects of a level in the heap; requested " + length);
+			size = new int[(int) length];
+			globalSize = (sharded) ? new int[size.length] : null;
+			start = new long[size.length + 1];
+		}
+	}
+
+	public long getLength()
+	{
+		return length;
+	}
+
+	public boolean isSharded()
+	{
+		return globalSize != null;
+	}
+
+	public int getSize(long k)
+	{
+		return (size != null) ? size[(int) k] : mappedSize.getInt(k);
+	}
+
+	public int getGlobalSize(long k)
+	{
+		return (globalSize != null) ? globalSize[(int) k] : getSize(k);
+	}
+
+	/* Object k creates size of its globalSize children, see isSharded() */
+	public void setSize(long k, int size, int globalSize)
+	{
+		if (this.size != null)
+			this.size[(int) k] = size;
+		else
+			mappedSize.putInt(k, size);
+		if (this.globalSize != null)
+			this.globalSize[(int) k] = globalSize;
+	}
+
+	public long getStart(long k)
+	{
+		return (start != null) ? start[(int) k] : mappedStart.getLong(k);
+	}
+
+	/* Places the children of the objects one after the other, the first one at position first of the level */
+	public void place(long first)
+	{
+		long s = first;
+		for (long k = 0; k < length; k++)
+		{
+			if (start != null)
+				start[(int) k] = s;
+			else
+				mappedStart.putLong(k, s);
+			s += getSize(k);
+		}
+		if (start != null)
+			start[(int) length] = s;
+		else
+			mappedStart.putLong(length, s);
+	}
+}
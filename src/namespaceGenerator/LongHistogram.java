@@ -0,0 +1,116 @@
+package namespaceGenerator;
+
+import java.util.Arrays;
+
+/*
+ * Counts of long values, without boxing: the values 0 .. DENSE_LIMIT - 1 are counted in an array, which grows up 
+ * to the largest value seen, and the other values (but Long.MIN_VALUE) in an open addressing hash table. Not
+ * thread safe.
+ */
+public class LongHistogram {
+	private static final int DENSE_LIMIT = 1 << 16;
+	private static final long EMPTY = Long.MIN_VALUE; // a free slot of the table
+	private long[] dense = new long[64];
+	private long[] sparseKeys = null;
+	private long[] sparseCounts = null;
+	private int sparseSize = 0;
+	private long total = 0;
+
+	/* Adds n (which may be negative) to the count of value */
+	public void add(long value, long n)
+	{
+		total += n;
+		if (value >= 0 && value < DENSE_LIMIT)
+		{
+			if (value >= dense.length)
+				dense = Arrays.copyOf(dense, (int) Math.min(DENSE_LIMIT, Math.max(value + 1, 2L * dense.length)));
+			dense[(int) value] += n;
+			return;
+		}
+		if (sparseKeys == null || 2 * (sparseSize + 1) > sparseKeys.length)
+			rehash();
+		int i = slot(sparseKeys, value);
+		if (sparseKeys[i] == EMPTY)
+		{
+			sparseKeys[i] = value;
+			sparseSize += 1;
+		}
+		sparseCounts[i] += n;
+	}
+
+	public long get(long value)
+	{
+		if (value >= 0 && value < DENSE_LIMIT)
+			return (value < dense.length) ? dense[(int) value] : 0;
+		if (sparseKeys == null)
+			return 0;
+		int i = slot(sparseKeys, value);
+		return (sparseKeys[i] == EMPTY) ? 0 : sparseCounts[i];
+	}
+
+	/* The sum of the counts */
+	public long getTotal()
+	{
+		return total;
+	}
+
+	/* The values with a count other than 0, in ascending order */
+	public long[] getValues()
+	{
+		long[] values = new long[dense.length + sparseSize];
+		int n = 0;
+		if (sparseKeys != null)
+			for (int i = 0; i < sparseKeys.length; i++)
+				if (sparseKeys[i] != EMPTY && sparseCounts[i] != 0 && sparseKeys[i] < 0)
+					values[n++] = sparseKeys[i];
+		Arrays.sort(values, 0, n);
+		for (int i = 0; i < dense.length; i++)
+			if (dense[i] != 0)
+				values[n++] = i;
+		int large = n;
+		if (sparseKeys != null)
+			for (int i = 0; i < sparseKeys.length; i++)
+				if (sparseKeys[i] != EMPTY && sparseCounts[i] != 0 && sparseKeys[i] > 0)
+					values[n++] = sparseKeys[i];
+		Arrays.sort(values, large, n);
+		return Arrays.copyOf(values, n);
+	}
+
+	/* The counts of the values, in the same order */
+	public long[] getCounts(long[] values)
+	{
+		long[] counts = new long[values.length];
+		for (int i = 0; i < values.length; i++)
+			counts[i] = this.get(values[i]);
+		return counts;
+	}
+
+	private static int slot(long[] keys, long value)
+	{
+		int mask = keys.length - 1;
+		long h = value * 0x9E3779B97F4A7C15L;
+		int i = (int) (h ^ (h >>> 32)) & mask;
+		while (keys[i] != EMPTY && keys[i] != value)
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	private void rehash()
+	{
+		long[] oldKeys = sparseKeys, oldCounts = sparseCounts;
+		int capacity = (oldKeys == null) ? 64 : 2 * oldKeys.length;
+		sparseKeys = new long[capacity];
+		sparseCounts = new long[capacity];
+		Arrays.fill(sparseKeys, EMPTY);
+		if (oldKeys == null)
+			return;
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldKeys[i] == EMPTY)
+				continue;
+			int j = slot(sparseKeys, oldKeys[i]);
+			sparseKeys[j] = oldKeys[i];
+			sparseCounts[j] = oldCounts[i];
+		}
+	}
+}
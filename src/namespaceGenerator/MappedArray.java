@@ -0,0 +1,174 @@
+package namespaceGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/*
+ * A long-indexed array of bytes, ints or longs kept in a scratch file mapped in memory instead of the heap, for
+ * the namespaces that do not fit in the heap or in Java arrays (see MappedNamespaceStore). A MappedByteBuffer is
+ * indexed by int, so the file is mapped in chunks of 1 << CHUNK_BITS bytes, and grows by whole chunks. The file
+ * is deleted as soon as it is created: its space goes back to the disk when the chunks are collected, or when the
+ * JVM exits, even if the run fails. The elements start at 0, and the file stays sparse until they are written.
+ * The elements are read and written at absolute positions, so several threads can write distinct elements at
+ * once; growing the array cannot be done while other threads use it. The columns of a SnapshotNamespaceStore are
+ * MappedArrays too, mapped read only from the snapshot file.
+ */
+public class MappedArray {
+	static final int CHUNK_BITS = 27; // 128 MB
+	private FileChannel channel;
+	private int shift; // of an element: 0, 2 or 3 for bytes, ints or longs
+	private int chunkBits;
+	private long chunkMask;
+	private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+	/* An array of length elements of the given bytes each (1, 4 or 8), in a new file of the directory dir */
+	public MappedArray(File dir, int bytes, long length)
+	{
+		this(dir, bytes, length, CHUNK_BITS);
+	}
+
+	MappedArray(File dir, int bytes, long length, int chunkBits)
+	{
+		if (bytes != 1 && bytes != 4 && bytes != 8)
+			throw new IllegalArgumentException("Elements of " + bytes + " bytes are not supported; expected 1, 4 or 8.");
+		this.shift = Integer.numberOfTrailingZeros(bytes);
+		this.chunkBits = chunkBits;
+		this.chunkMask = (1L << chunkBits) - 1;
+		try {
+			if (!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("Cannot create the directory");
+			File file = File.createTempFile("mimesis", ".scratch", dir);
+			this.channel = new RandomAccessFile(file, "rw").getChannel();
+			if (!file.delete()) // not while it is open on some systems
+				file.deleteOnExit();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot create a scratch file in " + dir, e);
+		}
+		ensureCapacity(length);
+	}
+
+	/*
+	 * The length elements of the given bytes each stored in the file of channel from offset on, little-endian,
+	 * mapped read only; the array cannot grow. The elements must not cross a chunk, so offset is a multiple of 8.
+	 */
+	MappedArray(FileChannel channel, long offset, int bytes, long length)
+	{
+		if (bytes != 1 && bytes != 4 && bytes != 8)
+			throw new IllegalArgumentException("Elements of " + bytes + " bytes are not supported; expected 1, 4 or 8.");
+		this.shift = Integer.numberOfTrailingZeros(bytes);
+		this.chunkBits = CHUNK_BITS;
+		this.chunkMask = (1L << chunkBits) - 1;
+		this.channel = channel;
+		long size = length << shift;
+		chunks = new MappedByteBuffer[(int) ((size + chunkMask) >>> chunkBits)];
+		try {
+			for (int c = 0; c < chunks.length; c++)
+			{
+				chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset + ((long) c << chunkBits), Math.min(1L << chunkBits, size - ((long) c << chunkBits)));
+				chunks[c].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot map " + (size >> 20) + " MB at offset " + offset, e);
+		}
+	}
+
+	/* The number of elements the array can hold without growing */
+	public long capacity()
+	{
+		return ((long) chunks.length << chunkBits) >> shift;
+	}
+
+	/* Grows the array, if needed, to hold at least length elements */
+	public void ensureCapacity(long length)
+	{
+		if (length <= capacity())
+			return;
+		long bytes = Math.max(length, 1) << shift;
+		int n = (int) ((bytes + chunkMask) >>> chunkBits);
+		MappedByteBuffer[] grown = Arrays.copyOf(chunks, n);
+		try {
+			for (int c = chunks.length; c < n; c++)
+			{
+				grown[c] = channel.map(FileChannel.MapMode.READ_WRITE, (long) c << chunkBits, 1L << chunkBits);
+				grown[c].order(ByteOrder.nativeOrder()); // the file is never read by another process
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot map " + (bytes >> 20) + " MB of scratch space", e);
+		}
+		chunks = grown;
+	}
+
+	public byte getByte(long i)
+	{
+		return chunks[(int) (i >>> chunkBits)].get((int) (i & chunkMask));
+	}
+
+	public void putByte(long i, byte v)
+	{
+		chunks[(int) (i >>> chunkBits)].put((int) (i & chunkMask), v);
+	}
+
+	public int getInt(long i)
+	{
+		long b = i << 2;
+		return chunks[(int) (b >>> chunkBits)].getInt((int) (b & chunkMask));
+	}
+
+	public void putInt(long i, int v)
+	{
+		long b = i << 2;
+		chunks[(int) (b >>> chunkBits)].putInt((int) (b & chunkMask), v);
+	}
+
+	public long getLong(long i)
+	{
+		long b = i << 3;
+		return chunks[(int) (b >>> chunkBits)].getLong((int) (b & chunkMask));
+	}
+
+	public void putLong(long i, long v)
+	{
+		long b = i << 3;
+		chunks[(int) (b >>> chunkBits)].putLong((int) (b & chunkMask), v);
+	}
+
+	/* Copies the n elements of from (of the same size) at positions src .. src + n - 1 to positions dst .. of this array */
+	public void copy(MappedArray from, long src, long dst, long n)
+	{
+		if (from.shift != shift)
+			throw new IllegalArgumentException("Cannot copy elements of " + (1 << from.shift) + " bytes to elements of " + (1 << shift) + " bytes.");
+		long s = src << shift, t = dst << shift, end = s + (n << shift);
+		int len;
+		ByteBuffer in, out;
+		while (s < end)
+		{
+			len = (int) Math.min(end - s, Math.min((1L << from.chunkBits) - (s & from.chunkMask), (1L << chunkBits) - (t & chunkMask)));
+			in = from.chunks[(int) (s >>> from.chunkBits)].duplicate(); // so that other threads can use the chunks meanwhile
+			in.position((int) (s & from.chunkMask));
+			in.limit(in.position() + len);
+			out = chunks[(int) (t >>> chunkBits)].duplicate();
+			out.position((int) (t & chunkMask));
+			out.put(in);
+			s += len;
+			t += len;
+		}
+	}
+
+	/* Releases the file; its space goes back to the disk once the chunks are collected */
+	public void close()
+	{
+		chunks = new MappedByteBuffer[0];
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,554 @@
+package namespaceGenerator;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Namespace store that keeps the namespace in MappedArrays, in scratch files of a directory, instead of the heap:
+ * the same columns as CompactNamespaceStore, indexed by long, so the namespace can hold more than 2^31 directories
+ * or files and only needs the heap for the data of one level at a time. Each level can hold up to 2^31 - 1
+ * directories and as many files, so the parent of an entry is kept as its position in the level above it, and
+ * the childFiles index as positions in the level of the files. Directories take 24 bytes each and files 28 bytes
+ * each, including the childFiles index.
+ *
+ * The columns are written and read in the order of the levels (see packBins() and FileAttributeTask), and the
+ * files of each level are sorted by merging runs sorted in the heap, so the scratch files are mostly read and
+ * written sequentially. Files cannot be renamed, so this store cannot generate a shard of a namespace.
+ */
+public class MappedNamespaceStore implements NamespaceStore {
+	static final int RUN = 1 << 20; // files sorted at once in the heap, see sortFilesByCreationStamp()
+	private int maxDepth;
+	private File dir; // of the scratch files
+
+	// Directories; directories are always created with a creation stamp of 0
+	private long numDirs = 0;
+	private MappedArray dirParent; // int, position of the parent in its level, -1 for the root
+	private MappedArray dirName; // int
+	private MappedArray dirSubdirs; // int, number of subdirectories of each directory
+	private MappedArray dirFiles; // int, number of files of each directory
+	private long[] dirDepthStart; // dirDepthStart[d] = index of the first directory at depth d, for d <= lastDirDepth
+	private int lastDirDepth = 0;
+
+	// Files
+	private long numFiles = 0;
+	private MappedArray fileParent; // int, position of the parent in its level
+	private MappedArray fileName; // int
+	private MappedArray fileStamp; // long
+	private MappedArray fileSize; // long, -1 until set
+	private long[] fileDepthStart; // fileDepthStart[d] = index of the first file at depth d, for d <= lastFileDepth
+	private int lastFileDepth = 0;
+
+	// The files of directory i are at positions childFiles[firstChildFile[i]] ... childFiles[firstChildFile[i + 1] - 1]
+	// of the level below it
+	private MappedArray firstChildFile = null; // long
+	private MappedArray childIndex = null; // int, kept to be built again after the files change
+	private volatile MappedArray childFiles = null; // childIndex once it is built, see indexChildFiles()
+
+	/*
+	 * 		initializing the File System.
+	 * 			Depth 0 is root.
+	 * 			Depth 1 is: user, project, other.
+	 * 		expectedDirs and expectedFiles are only used to size the columns; the scratch files are created in dir.
+	 */
+	public MappedNamespaceStore(int maxDepth, long expectedDirs, long expectedFiles, File dir)
+	{
+		this.maxDepth = maxDepth;
+		this.dir = dir;
+		long dirs = expectedDirs + 4;
+		dirParent = new MappedArray(dir, 4, dirs);
+		dirName = new MappedArray(dir, 4, dirs);
+		dirSubdirs = new MappedArray(dir, 4, dirs);
+		dirFiles = new MappedArray(dir, 4, dirs);
+		dirDepthStart = new long[maxDepth];
+		fileParent = new MappedArray(dir, 4, expectedFiles);
+		fileName = new MappedArray(dir, 4, expectedFiles);
+		fileStamp = new MappedArray(dir, 8, expectedFiles);
+		fileSize = new MappedArray(dir, 8, expectedFiles);
+		fileDepthStart = new long[maxDepth];
+
+		dirParent.putInt(0, -1);
+		for (int i = 1; i <= 3; i++) // user, projects and other are not counted as children of the root
+		{
+			dirParent.putInt(i, 0);
+			dirName.putInt(i, i);
+		}
+		dirDepthStart[1] = 1;
+		lastDirDepth = 1;
+		numDirs = 4;
+	}
+
+	private void ensureDirCapacity(long needed)
+	{
+		dirParent.ensureCapacity(needed);
+		dirName.ensureCapacity(needed);
+		dirSubdirs.ensureCapacity(needed);
+		dirFiles.ensureCapacity(needed);
+	}
+
+	private void ensureFileCapacity(long needed)
+	{
+		fileParent.ensureCapacity(needed);
+		fileName.ensureCapacity(needed);
+		fileStamp.ensureCapacity(needed);
+		fileSize.ensureCapacity(needed);
+	}
+
+	/* Returns the level of an entry, i.e., the last depth whose range starts at or before it */
+	private static int depthOf(long[] depthStart, int last, long entry)
+	{
+		int lo = 0, hi = last, mid;
+		while (lo < hi)
+		{
+			mid = (lo + hi + 1) >>> 1;
+			if (depthStart[mid] <= entry)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return lo;
+	}
+
+	private int childDepth(long parent)
+	{
+		if (parent < 0 || parent >= numDirs)
+			throw new IllegalArgumentException("No such directory: " + parent);
+		int d = depthOf(dirDepthStart, lastDirDepth, parent) + 1;
+		if (d >= maxDepth)
+			throw new IllegalArgumentException("Cannot create entries deeper than " + (maxDepth - 1));
+		return d;
+	}
+
+	/* Checks that a level of n entries can be kept */
+	private static void checkLevel(int depth, long n)
+	{
+		if (n > Integer.MAX_VALUE)
+			throw new UnsupportedOperationException("MappedNamespaceStore cannot hold more than " + Integer.MAX_VALUE + " directories or files at one depth; requested " + n + " at depth " + depth);
+	}
+
+	@Override
+	public int getMaxDepth() {
+		return this.maxDepth;
+	}
+
+	@Override
+	public long getNumDirs() {
+		return this.numDirs;
+	}
+
+	@Override
+	public long getNumFiles() {
+		return this.numFiles;
+	}
+
+	@Override
+	public long addDir(long parent) {
+		int d = childDepth(parent);
+		if (d < lastDirDepth)
+			throw new IllegalStateException("Directories must be created level by level; depth " + d + " after depth " + lastDirDepth);
+		if (dirFiles.getInt(parent) > 0)
+			throw new UnsupportedOperationException("Cannot add a subdirectory to a directory that already has files.");
+		for (; lastDirDepth < d; lastDirDepth++)
+			dirDepthStart[lastDirDepth + 1] = numDirs;
+		checkLevel(d, numDirs + 1 - dirDepthStart[d]);
+		ensureDirCapacity(numDirs + 1);
+		int subdirs = dirSubdirs.getInt(parent) + 1;
+		dirSubdirs.putInt(parent, subdirs);
+		dirParent.putInt(numDirs, (int) (parent - dirDepthStart[d - 1]));
+		dirName.putInt(numDirs, subdirs);
+		return numDirs++;
+	}
+
+	@Override
+	public long addFile(long parent) {
+		int d = childDepth(parent);
+		if (d < lastFileDepth)
+			throw new IllegalStateException("Files must be created level by level; depth " + d + " after depth " + lastFileDepth);
+		for (; lastFileDepth < d; lastFileDepth++)
+			fileDepthStart[lastFileDepth + 1] = numFiles;
+		checkLevel(d, numFiles + 1 - fileDepthStart[d]);
+		ensureFileCapacity(numFiles + 1);
+		childFiles = null;
+		this.setFile(numFiles, d, parent);
+		return numFiles++;
+	}
+
+	/* Makes file the last child of parent, at depth d */
+	private void setFile(long file, int d, long parent)
+	{
+		int files = dirFiles.getInt(parent) + 1;
+		dirFiles.putInt(parent, files);
+		fileParent.putInt(file, (int) (parent - dirDepthStart[d - 1]));
+		fileName.putInt(file, dirSubdirs.getInt(parent) + files);
+		fileStamp.putLong(file, 0);
+		fileSize.putLong(file, -1);
+	}
+
+	@Override
+	public long reserveDirs(int depth, long n) {
+		if (depth < 1 || depth >= maxDepth)
+			throw new IllegalArgumentException("Cannot create directories at depth " + depth);
+		if (depth < lastDirDepth)
+			throw new IllegalStateException("Directories must be created level by level; depth " + depth + " after depth " + lastDirDepth);
+		for (; lastDirDepth < depth; lastDirDepth++)
+			dirDepthStart[lastDirDepth + 1] = numDirs;
+		checkLevel(depth, numDirs + n - dirDepthStart[depth]);
+		ensureDirCapacity(numDirs + n);
+		long first = numDirs - dirDepthStart[depth];
+		numDirs += n;
+		return first;
+	}
+
+	@Override
+	public long createDir(int depth, long i, long parent) {
+		if (childDepth(parent) != depth)
+			throw new IllegalArgumentException("Directory " + parent + " is not at depth " + (depth - 1));
+		long dir = dirDepthStart[depth] + i;
+		if (i < 0 || dir >= ((depth == lastDirDepth) ? numDirs : dirDepthStart[depth + 1]))
+			throw new IllegalArgumentException("No reserved directory " + i + " at depth " + depth);
+		int files = dirFiles.getInt(parent);
+		if (files > 0)
+			throw new UnsupportedOperationException("Cannot add a subdirectory to a directory that already has files.");
+		int subdirs = dirSubdirs.getInt(parent) + 1;
+		dirSubdirs.putInt(parent, subdirs);
+		dirParent.putInt(dir, (int) (parent - dirDepthStart[depth - 1]));
+		dirName.putInt(dir, subdirs + files);
+		return dir;
+	}
+
+	@Override
+	public long reserveFiles(int depth, long n) {
+		if (depth < 1 || depth >= maxDepth)
+			throw new IllegalArgumentException("Cannot create files at depth " + depth);
+		if (depth < lastFileDepth)
+			throw new IllegalStateException("Files must be created level by level; depth " + depth + " after depth " + lastFileDepth);
+		for (; lastFileDepth < depth; lastFileDepth++)
+			fileDepthStart[lastFileDepth + 1] = numFiles;
+		checkLevel(depth, numFiles + n - fileDepthStart[depth]);
+		ensureFileCapacity(numFiles + n);
+		long first = numFiles - fileDepthStart[depth];
+		numFiles += n;
+		childFiles = null;
+		return first;
+	}
+
+	@Override
+	public long createFile(int depth, long i, long parent) {
+		if (childDepth(parent) != depth)
+			throw new IllegalArgumentException("Directory " + parent + " is not at depth " + (depth - 1));
+		long file = fileDepthStart[depth] + i;
+		if (i < 0 || file >= ((depth == lastFileDepth) ? numFiles : fileDepthStart[depth + 1]))
+			throw new IllegalArgumentException("No reserved file " + i + " at depth " + depth);
+		this.setFile(file, depth, parent);
+		return file;
+	}
+
+	/* The positions of the parents are kept in their level, so the columns are copied as they are */
+	@Override
+	public void copyDirs(NamespaceStore from, int depth) {
+		MappedNamespaceStore s = (MappedNamespaceStore) from;
+		long n = s.getNumDirsAtDepth(depth);
+		if (depth < 2 || n > getNumDirsAtDepth(depth))
+			throw new IllegalArgumentException("Cannot copy " + n + " directories at depth " + depth + " into " + getNumDirsAtDepth(depth));
+		dirParent.copy(s.dirParent, s.dirDepthStart[depth], dirDepthStart[depth], n);
+		dirName.copy(s.dirName, s.dirDepthStart[depth], dirDepthStart[depth], n);
+		dirSubdirs.copy(s.dirSubdirs, s.dirDepthStart[depth - 1], dirDepthStart[depth - 1], s.getNumDirsAtDepth(depth - 1));
+	}
+
+	@Override
+	public void copyFiles(NamespaceStore from, int depth) {
+		MappedNamespaceStore s = (MappedNamespaceStore) from;
+		long n = s.getNumFilesAtDepth(depth);
+		if (depth < 1 || n > getNumFilesAtDepth(depth))
+			throw new IllegalArgumentException("Cannot copy " + n + " files at depth " + depth + " into " + getNumFilesAtDepth(depth));
+		fileParent.copy(s.fileParent, s.fileDepthStart[depth], fileDepthStart[depth], n);
+		fileName.copy(s.fileName, s.fileDepthStart[depth], fileDepthStart[depth], n);
+		fileStamp.copy(s.fileStamp, s.fileDepthStart[depth], fileDepthStart[depth], n);
+		fileSize.copy(s.fileSize, s.fileDepthStart[depth], fileDepthStart[depth], n);
+		dirFiles.copy(s.dirFiles, s.dirDepthStart[depth - 1], dirDepthStart[depth - 1], s.getNumDirsAtDepth(depth - 1));
+		childFiles = null;
+	}
+
+	@Override
+	public long getNumDirsAtDepth(int depth) {
+		if (depth > lastDirDepth)
+			return 0;
+		return ((depth == lastDirDepth) ? numDirs : dirDepthStart[depth + 1]) - dirDepthStart[depth];
+	}
+
+	@Override
+	public long getDirAtDepth(int depth, long i) {
+		return dirDepthStart[depth] + i;
+	}
+
+	@Override
+	public long getDirIndex(long dir) {
+		return dir - dirDepthStart[depthOf(dirDepthStart, lastDirDepth, dir)];
+	}
+
+	@Override
+	public long getNumFilesAtDepth(int depth) {
+		if (depth > lastFileDepth)
+			return 0;
+		return ((depth == lastFileDepth) ? numFiles : fileDepthStart[depth + 1]) - fileDepthStart[depth];
+	}
+
+	@Override
+	public long getFileAtDepth(int depth, long i) {
+		return fileDepthStart[depth] + i;
+	}
+
+	@Override
+	public long getFileIndex(long file) {
+		return file - fileDepthStart[depthOf(fileDepthStart, lastFileDepth, file)];
+	}
+
+	@Override
+	public long getDirName(long dir) {
+		return dirName.getInt(dir);
+	}
+
+	@Override
+	public long getDirParent(long dir) {
+		int p = dirParent.getInt(dir);
+		return (p < 0) ? -1 : dirDepthStart[depthOf(dirDepthStart, lastDirDepth, dir) - 1] + p;
+	}
+
+	@Override
+	public long getDirCreationStamp(long dir) {
+		return 0;
+	}
+
+	@Override
+	public int getNumSubdirs(long dir) {
+		return dirSubdirs.getInt(dir);
+	}
+
+	@Override
+	public int getNumChildFiles(long dir) {
+		return dirFiles.getInt(dir);
+	}
+
+	@Override
+	public long getChildFile(long dir, int k) {
+		MappedArray index = childFiles;
+		if (index == null)
+			index = indexChildFiles();
+		int d = depthOf(dirDepthStart, lastDirDepth, dir) + 1;
+		return fileDepthStart[d] + index.getInt(firstChildFile.getLong(dir) + k);
+	}
+
+	/*
+	 * The files of a directory are named after its subdirectories, in creation order, so the name gives the slot.
+	 * The files are visited level by level, so the directories whose slots are written are those of one level.
+	 * Built by the first reader; childFiles is set last, so that readers on other threads see a complete index.
+	 */
+	private synchronized MappedArray indexChildFiles()
+	{
+		if (childFiles != null)
+			return childFiles;
+		long p, f, end;
+		if (firstChildFile == null)
+		{
+			firstChildFile = new MappedArray(dir, 8, numDirs + 1);
+			childIndex = new MappedArray(dir, 4, numFiles);
+		}
+		firstChildFile.ensureCapacity(numDirs + 1);
+		childIndex.ensureCapacity(numFiles);
+		long first = 0;
+		for (long i = 0; i < numDirs; i++)
+		{
+			firstChildFile.putLong(i, first);
+			first += dirFiles.getInt(i);
+		}
+		firstChildFile.putLong(numDirs, first);
+		MappedArray index = childIndex;
+		for (int d = 1; d <= lastFileDepth; d++)
+		{
+			end = fileDepthStart[d] + getNumFilesAtDepth(d);
+			for (f = fileDepthStart[d]; f < end; f++)
+			{
+				p = dirDepthStart[d - 1] + fileParent.getInt(f);
+				index.putInt(firstChildFile.getLong(p) + fileName.getInt(f) - dirSubdirs.getInt(p) - 1, (int) (f - fileDepthStart[d]));
+			}
+		}
+		childFiles = index;
+		return index;
+	}
+
+	private void checkFile(long file)
+	{
+		if (file < 0 || file >= numFiles)
+			throw new IllegalArgumentException("No such file: " + file);
+	}
+
+	@Override
+	public long getFileName(long file) {
+		checkFile(file);
+		return fileName.getInt(file);
+	}
+
+	@Override
+	public void setFileName(long file, long name) {
+		throw new UnsupportedOperationException("The files of MappedNamespaceStore cannot be renamed.");
+	}
+
+	@Override
+	public long getFileParent(long file) {
+		checkFile(file);
+		return dirDepthStart[depthOf(fileDepthStart, lastFileDepth, file) - 1] + fileParent.getInt(file);
+	}
+
+	@Override
+	public long getFileCreationStamp(long file) {
+		checkFile(file);
+		return fileStamp.getLong(file);
+	}
+
+	@Override
+	public void setFileCreationStamp(long file, long stamp) {
+		checkFile(file);
+		fileStamp.putLong(file, stamp);
+	}
+
+	@Override
+	public long getFileSize(long file) {
+		checkFile(file);
+		long size = fileSize.getLong(file);
+		if (size < 0)
+			throw new IllegalStateException("Method getSize() cannot be called for file " + fileName.getInt(file) + " because size has not been set yet.");
+		return size;
+	}
+
+	@Override
+	public void setFileSize(long file, long size) {
+		checkFile(file);
+		if (size < 0)
+			throw new IllegalArgumentException("File size cannot be negative: size(" + fileName.getInt(file) + ") = " + size);
+		fileSize.putLong(file, size);
+	}
+
+	@Override
+	public void sortFilesByCreationStamp(ForkJoinPool pool) {
+		this.sortFilesByCreationStamp(pool, new long[maxDepth]);
+	}
+
+	/*
+	 * Sorts the files at each depth by creation stamp (ties keep creation order). The level is cut in runs of RUN
+	 * files, each sorted in the heap (see CreationStampSort); a level of one run is written back in place, the
+	 * runs of a larger one are written to scratch columns and merged back into the level, by stamp and then by
+	 * run, which keeps the order of the files with the same stamp.
+	 */
+	@Override
+	public void sortFilesByCreationStamp(ForkJoinPool pool, long[] from) {
+		long largest = 0;
+		for (int d = 0; d <= lastFileDepth; d++)
+			largest = Math.max(largest, getNumFilesAtDepth(d) - Math.min(from[d], getNumFilesAtDepth(d)));
+		MappedArray[] runs = null;
+		if (largest > RUN)
+			runs = new MappedArray[] {new MappedArray(dir, 4, largest), new MappedArray(dir, 4, largest),
+					new MappedArray(dir, 8, largest), new MappedArray(dir, 8, largest)};
+		long start, n;
+		for (int d = 0; d <= lastFileDepth; d++)
+		{
+			start = fileDepthStart[d] + Math.min(from[d], getNumFilesAtDepth(d));
+			n = getNumFilesAtDepth(d) - (start - fileDepthStart[d]);
+			if (n < 2)
+				continue;
+			if (n <= RUN)
+			{
+				sortRun(start, (int) n, fileParent, fileName, fileStamp, fileSize, start, pool);
+				continue;
+			}
+			for (long r = 0; r < n; r += RUN)
+				sortRun(start + r, (int) Math.min(RUN, n - r), runs[0], runs[1], runs[2], runs[3], r, pool);
+			merge(runs, n, start);
+		}
+		if (runs != null)
+			for (MappedArray column : runs)
+				column.close();
+		childFiles = null;
+	}
+
+	/* Sorts the n files from start on, and writes them to the given columns from position to on */
+	private void sortRun(long start, int n, MappedArray parent, MappedArray name, MappedArray stamp, MappedArray size, long to,
+			ForkJoinPool pool)
+	{
+		long[] values = new long[n];
+		int[] ints = new int[n];
+		for (int i = 0; i < n; i++)
+			values[i] = fileStamp.getLong(start + i);
+		int[] perm = CreationStampSort.order(values, pool);
+		for (int i = 0; i < n; i++)
+			stamp.putLong(to + i, values[perm[i]]);
+		for (int i = 0; i < n; i++)
+			values[i] = fileSize.getLong(start + i);
+		for (int i = 0; i < n; i++)
+			size.putLong(to + i, values[perm[i]]);
+		for (int i = 0; i < n; i++)
+			ints[i] = fileParent.getInt(start + i);
+		for (int i = 0; i < n; i++)
+			parent.putInt(to + i, ints[perm[i]]);
+		for (int i = 0; i < n; i++)
+			ints[i] = fileName.getInt(start + i);
+		for (int i = 0; i < n; i++)
+			name.putInt(to + i, ints[perm[i]]);
+	}
+
+	/*
+	 * Merges the sorted runs of RUN files of runs[0 .. 3] (parent, name, stamp and size) into the n files of the
+	 * level from start on. The next file of each run is kept in a binary heap ordered by stamp, then by run.
+	 */
+	private void merge(MappedArray[] runs, long n, long start)
+	{
+		int k = (int) ((n + RUN - 1) / RUN);
+		long[] next = new long[k]; // the next file of each run
+		long[] stamp = new long[k]; // its stamp
+		int[] heap = new int[k];
+		for (int r = 0; r < k; r++)
+		{
+			next[r] = (long) r * RUN;
+			stamp[r] = runs[2].getLong(next[r]);
+			heap[r] = r;
+		}
+		for (int i = k / 2 - 1; i >= 0; i--)
+			sift(heap, k, i, stamp);
+		int r;
+		long f;
+		for (long j = start; k > 0; j++)
+		{
+			r = heap[0];
+			f = next[r];
+			fileParent.putInt(j, runs[0].getInt(f));
+			fileName.putInt(j, runs[1].getInt(f));
+			fileStamp.putLong(j, stamp[r]);
+			fileSize.putLong(j, runs[3].getLong(f));
+			next[r] = f + 1;
+			if (next[r] < Math.min((long) (r + 1) * RUN, n))
+				stamp[r] = runs[2].getLong(next[r]);
+			else
+				heap[0] = heap[--k];
+			sift(heap, k, 0, stamp);
+		}
+	}
+
+	/* Moves heap[i] down the heap of the first k runs, ordered by stamp and then by run */
+	private static void sift(int[] heap, int k, int i, long[] stamp)
+	{
+		int c, r = heap[i];
+		while ((c = 2 * i + 1) < k)
+		{
+			if (c + 1 < k && before(heap[c + 1], heap[c], stamp))
+				c += 1;
+			if (!before(heap[c], r, stamp))
+				break;
+			heap[i] = heap[c];
+			i = c;
+		}
+		heap[i] = r;
+	}
+
+	private static boolean before(int a, int b, long[] stamp)
+	{
+		return stamp[a] < stamp[b] || (stamp[a] == stamp[b] && a < b);
+	}
+}
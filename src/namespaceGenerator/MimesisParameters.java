@@ -18,14 +18,14 @@ public class MimesisParameters  {
 
 	// target number of files in namespace
 	public final String targetFilesInNamespaceKey = "FILES_IN_NAMESPACE";
-	public final int targetFilesInNamespaceDefault = 0;
-	public int targetFilesInNamespace;
+	public final long targetFilesInNamespaceDefault = 0;
+	public long targetFilesInNamespace;
 	
 	
 	// target number of directories in namespace
 	public final String targetDirsInNamespaceKey = "DIRS_IN_NAMESPACE";
-	public final int targetDirsInNamespaceDefault = 0;
-	public int targetDirsInNamespace;
+	public final long targetDirsInNamespaceDefault = 0;
+	public long targetDirsInNamespace;
 		
 	// Files per dir
 	public final String filesPerDirKeysKey = "FILES_PER_DIRECTORY_KEYS";
@@ -62,6 +62,127 @@ public class MimesisParameters  {
 	public boolean printNamespaceStats; 
 	public boolean printNamespaceStatsDefault = false;
 	
+	// How the namespace is kept in memory: "entries" (one object per entry), "compact" (primitive arrays) or
+	// "mapped" (scratch files of SCRATCH_DIR mapped in memory, see MappedNamespaceStore)
+	public final String namespaceStoreKey = "NAMESPACE_STORE";
+	public String namespaceStore;
+	public String namespaceStoreDefault = "entries";
+	public final String scratchDirKey = "SCRATCH_DIR";
+	public String scratchDir;
+	public String scratchDirDefault = "../output/scratch";
+	
+	// Flag to write the namespace out while it is generated, instead of after generating all of it
+	public final String streamOutputKey = "STREAM_OUTPUT";
+	public boolean streamOutput;
+	public boolean streamOutputDefault = false;
+	
+	// A namespace written with OUTPUT_FORMAT = binary, to load and grow to DIRS_IN_NAMESPACE and FILES_IN_NAMESPACE
+	// instead of generating a new one (see HierarchicalFileSystemGenerator.growFileSystem()); not set to generate one
+	public final String growFromKey = "GROW_FROM";
+	public String growFrom;
+	public String growFromDefault = null;
+	
+	// A file to also save the namespace to once it is generated or grown, as a snapshot mapped back in memory by
+	// HierarchicalFileSystemGenerator.loadSnapshot() (see SnapshotNamespaceStore); not set to save none
+	public final String snapshotKey = "SNAPSHOT";
+	public String snapshot;
+	public String snapshotDefault = null;
+	
+	// A directory to create the namespace in as directories and files (see HierarchicalFileSystemGenerator.materialize());
+	// not set to create none. The files are sparse files of their size, or empty unless MATERIALIZE_SIZES; the
+	// entries are created by MATERIALIZE_THREADS threads (0 for 4 per processor) in batches of about MATERIALIZE_BATCH
+	public final String materializeDirKey = "MATERIALIZE_DIR";
+	public String materializeDir;
+	public String materializeDirDefault = null;
+	public final String materializeSizesKey = "MATERIALIZE_SIZES";
+	public boolean materializeSizes;
+	public boolean materializeSizesDefault = true;
+	public final String materializeThreadsKey = "MATERIALIZE_THREADS";
+	public int materializeThreads;
+	public int materializeThreadsDefault = 0;
+	public final String materializeBatchKey = "MATERIALIZE_BATCH";
+	public int materializeBatch;
+	public int materializeBatchDefault = 10000;
+	
+	// How packBins generates and packs the objects: "counting" (primitive arrays) or "legacy" (boxed objects)
+	public final String binPackerKey = "BIN_PACKER";
+	public String binPacker;
+	public String binPackerDefault = "counting";
+	
+	// How the depths of directories and files are sampled: "alias" (constant time) or "weighted" (binary search)
+	public final String depthSamplerKey = "DEPTH_SAMPLER";
+	public String depthSampler;
+	public String depthSamplerDefault = "alias";
+	
+	// Seed of the namespace: the same seed and configuration always generate the same namespace; random if not set
+	public final String seedKey = "SEED";
+	public Long seed;
+	public Long seedDefault = null;
+	
+	// Threads generating the namespace; 0 for one per processor. The namespace does not depend on it
+	public final String threadsKey = "THREADS";
+	public int threads;
+	public int threadsDefault = 0;
+	
+	// The namespace can be generated in SHARDS shards, on independent processes; SHARD is the one to generate.
+	// All the shards plan the same namespace, so SEED must be set; each shard only creates part of it
+	public final String shardsKey = "SHARDS";
+	public int shards;
+	public int shardsDefault = 1;
+	public final String shardKey = "SHARD";
+	public int shard;
+	public int shardDefault = 0;
+	
+	// Number of files the namespace is written to, in parallel, in OUTPUT_DIR; 0 to print it to the standard output
+	public final String outputPartsKey = "OUTPUT_PARTS";
+	public int outputParts;
+	public int outputPartsDefault = 0;
+	public final String outputDirKey = "OUTPUT_DIR";
+	public String outputDir;
+	public String outputDirDefault = "../output/namespace";
+	
+	// Format of the namespace: "text" (one line per entry) or "binary" (see BinaryNamespaceWriter), written to OUTPUT_DIR
+	public final String outputFormatKey = "OUTPUT_FORMAT";
+	public String outputFormat;
+	public String outputFormatDefault = "text";
+	
+	// Compression of the text namespace: "none" or "gzip" (compressed in parallel, written to OUTPUT_DIR)
+	public final String outputCompressionKey = "OUTPUT_COMPRESSION";
+	public String outputCompression;
+	public String outputCompressionDefault = "none";
+	
+	// Compare the generated distributions with the configured ones while generating (see FidelityMonitor), and
+	// stop when one is beyond FIDELITY_MAX_KS or FIDELITY_MAX_RELATIVE_ERROR (0 for no limit); setting a limit
+	// also enables FIDELITY_CHECK
+	public final String fidelityCheckKey = "FIDELITY_CHECK";
+	public boolean fidelityCheck;
+	public boolean fidelityCheckDefault = false;
+	public final String fidelityMaxKsKey = "FIDELITY_MAX_KS";
+	public double fidelityMaxKs;
+	public double fidelityMaxKsDefault = 0;
+	public final String fidelityMaxRelativeErrorKey = "FIDELITY_MAX_RELATIVE_ERROR";
+	public double fidelityMaxRelativeError;
+	public double fidelityMaxRelativeErrorDefault = 0;
+	
+	// Where the messages and progress reports of the run go, instead of the standard output (see PhaseMetrics):
+	// LOG_FILE, or the standard error when it is not set; every PROGRESS_INTERVAL seconds (0 for none); METRICS
+	// also writes the duration, throughput and memory of each phase to metrics.json in the output folder
+	public final String logFileKey = "LOG_FILE";
+	public String logFile;
+	public String logFileDefault = null;
+	public final String progressIntervalKey = "PROGRESS_INTERVAL";
+	public double progressInterval;
+	public double progressIntervalDefault = 10;
+	public final String metricsKey = "METRICS";
+	public boolean metrics;
+	public boolean metricsDefault = false;
+	
+	// Checks the heap the run needs before it starts (see RunPlanner): "auto" switches to a mode keeping less in
+	// memory when the configured one does not fit, "check" refuses to start, "off" does neither
+	public final String plannerKey = "PLANNER";
+	public String planner;
+	public String plannerDefault = "auto";
+	
 	DataConfiguration config = null;
 	public boolean persistConfig = false;
 	
@@ -80,8 +201,8 @@ public class MimesisParameters  {
 	{
 		config = new DataConfiguration(c) ;
 		
-		this.targetFilesInNamespace = config.getInteger(this.targetFilesInNamespaceKey, this.targetFilesInNamespaceDefault);
-		this.targetDirsInNamespace = config.getInteger(this.targetDirsInNamespaceKey, this.targetDirsInNamespaceDefault);
+		this.targetFilesInNamespace = config.getLong(this.targetFilesInNamespaceKey, this.targetFilesInNamespaceDefault);
+		this.targetDirsInNamespace = config.getLong(this.targetDirsInNamespaceKey, this.targetDirsInNamespaceDefault);
 
 		this.filesAtDepthKeys = config.getLongList(this.filesAtDepthKeysKey).toArray(ArrayUtils.EMPTY_LONG_OBJECT_ARRAY);
 		this.filesAtDepthWeights = config.getDoubleArray(this.filesAtDepthWeightsKey);
@@ -121,6 +242,101 @@ public class MimesisParameters  {
 		
 		this.printNamespaceStats = config.getBoolean(this.printNamespaceStatsKey, this.printNamespaceStatsDefault);
 		
+		this.namespaceStore = config.getString(this.namespaceStoreKey, this.namespaceStoreDefault);
+		if (!this.namespaceStore.equals("entries") && !this.namespaceStore.equals("compact") && !this.namespaceStore.equals("mapped"))
+			throw new RuntimeException("Unknown NAMESPACE_STORE: " + this.namespaceStore + "; expected entries, compact or mapped.");
+		this.scratchDir = config.getString(this.scratchDirKey, this.scratchDirDefault);
+		
+		this.streamOutput = config.getBoolean(this.streamOutputKey, this.streamOutputDefault);
+		if (this.streamOutput && this.namespaceStore.equals("mapped"))
+			throw new RuntimeException("STREAM_OUTPUT cannot be used with the mapped NAMESPACE_STORE.");
+		
+		this.growFrom = config.getString(this.growFromKey, this.growFromDefault);
+		if (this.growFrom != null && this.streamOutput)
+			throw new RuntimeException("GROW_FROM cannot be used with STREAM_OUTPUT.");
+		
+		this.snapshot = config.getString(this.snapshotKey, this.snapshotDefault);
+		if (this.snapshot != null && this.streamOutput)
+			throw new RuntimeException("SNAPSHOT cannot be used with STREAM_OUTPUT.");
+		
+		this.materializeDir = config.getString(this.materializeDirKey, this.materializeDirDefault);
+		this.materializeSizes = config.getBoolean(this.materializeSizesKey, this.materializeSizesDefault);
+		this.materializeThreads = config.getInt(this.materializeThreadsKey, this.materializeThreadsDefault);
+		this.materializeBatch = config.getInt(this.materializeBatchKey, this.materializeBatchDefault);
+		if (this.materializeDir != null && this.streamOutput)
+			throw new RuntimeException("MATERIALIZE_DIR cannot be used with STREAM_OUTPUT.");
+		if (this.materializeThreads < 0)
+			throw new RuntimeException("MATERIALIZE_THREADS cannot be negative: " + this.materializeThreads);
+		if (this.materializeBatch < 1)
+			throw new RuntimeException("MATERIALIZE_BATCH must be positive: " + this.materializeBatch);
+		
+		this.binPacker = config.getString(this.binPackerKey, this.binPackerDefault);
+		if (!this.binPacker.equals("counting") && !this.binPacker.equals("legacy"))
+			throw new RuntimeException("Unknown BIN_PACKER: " + this.binPacker + "; expected counting or legacy.");
+		if (this.binPacker.equals("legacy") && this.namespaceStore.equals("mapped"))
+			throw new RuntimeException("BIN_PACKER = legacy cannot be used with the mapped NAMESPACE_STORE.");
+		
+		this.depthSampler = config.getString(this.depthSamplerKey, this.depthSamplerDefault);
+		if (!this.depthSampler.equals("alias") && !this.depthSampler.equals("weighted"))
+			throw new RuntimeException("Unknown DEPTH_SAMPLER: " + this.depthSampler + "; expected alias or weighted.");
+		
+		this.seed = config.getLong(this.seedKey, this.seedDefault);
+		
+		this.threads = config.getInt(this.threadsKey, this.threadsDefault);
+		if (this.threads < 0)
+			throw new RuntimeException("THREADS cannot be negative: " + this.threads);
+		
+		this.shards = config.getInt(this.shardsKey, this.shardsDefault);
+		this.shard = config.getInt(this.shardKey, this.shardDefault);
+		if (this.shards < 1 || this.shard < 0 || this.shard >= this.shards)
+			throw new RuntimeException("Invalid SHARD " + this.shard + " of SHARDS = " + this.shards + "; expected 0 <= SHARD < SHARDS.");
+		if (this.shards > 1 && this.seed == null)
+			throw new RuntimeException("SEED must be set when SHARDS > 1, so that all the shards generate the same namespace.");
+		if (this.shards > 1 && this.namespaceStore.equals("mapped"))
+			throw new RuntimeException("SHARDS > 1 cannot be used with the mapped NAMESPACE_STORE.");
+		if (this.shards > 1 && this.growFrom != null)
+			throw new RuntimeException("SHARDS > 1 cannot be used with GROW_FROM.");
+		if (this.shards > 1 && this.snapshot != null)
+			throw new RuntimeException("SHARDS > 1 cannot be used with SNAPSHOT.");
+		if (this.shards > 1 && this.materializeDir != null)
+			throw new RuntimeException("SHARDS > 1 cannot be used with MATERIALIZE_DIR.");
+		
+		this.outputParts = config.getInt(this.outputPartsKey, this.outputPartsDefault);
+		this.outputDir = config.getString(this.outputDirKey, this.outputDirDefault);
+		if (this.outputParts < 0)
+			throw new RuntimeException("OUTPUT_PARTS cannot be negative: " + this.outputParts);
+		if (this.outputParts > 0 && this.streamOutput)
+			throw new RuntimeException("OUTPUT_PARTS cannot be used with STREAM_OUTPUT.");
+		
+		this.outputFormat = config.getString(this.outputFormatKey, this.outputFormatDefault);
+		if (!this.outputFormat.equals("text") && !this.outputFormat.equals("binary"))
+			throw new RuntimeException("Unknown OUTPUT_FORMAT: " + this.outputFormat + "; expected text or binary.");
+		if (this.outputFormat.equals("binary") && this.outputParts > 0)
+			throw new RuntimeException("OUTPUT_PARTS cannot be used with the binary OUTPUT_FORMAT.");
+		
+		this.outputCompression = config.getString(this.outputCompressionKey, this.outputCompressionDefault);
+		if (!this.outputCompression.equals("none") && !this.outputCompression.equals("gzip"))
+			throw new RuntimeException("Unknown OUTPUT_COMPRESSION: " + this.outputCompression + "; expected none or gzip.");
+		if (this.outputCompression.equals("gzip") && (this.outputParts > 0 || this.outputFormat.equals("binary")))
+			throw new RuntimeException("OUTPUT_COMPRESSION = gzip only applies to the text namespace, without OUTPUT_PARTS.");
+		
+		this.fidelityMaxKs = config.getDouble(this.fidelityMaxKsKey, this.fidelityMaxKsDefault);
+		this.fidelityMaxRelativeError = config.getDouble(this.fidelityMaxRelativeErrorKey, this.fidelityMaxRelativeErrorDefault);
+		if (this.fidelityMaxKs < 0 || this.fidelityMaxRelativeError < 0)
+			throw new RuntimeException("FIDELITY_MAX_KS and FIDELITY_MAX_RELATIVE_ERROR cannot be negative.");
+		this.fidelityCheck = config.getBoolean(this.fidelityCheckKey, this.fidelityCheckDefault)
+				|| this.fidelityMaxKs > 0 || this.fidelityMaxRelativeError > 0;
+		
+		this.logFile = config.getString(this.logFileKey, this.logFileDefault);
+		this.progressInterval = config.getDouble(this.progressIntervalKey, this.progressIntervalDefault);
+		if (this.progressInterval < 0)
+			throw new RuntimeException("PROGRESS_INTERVAL cannot be negative.");
+		this.metrics = config.getBoolean(this.metricsKey, this.metricsDefault);
+		
+		this.planner = config.getString(this.plannerKey, this.plannerDefault);
+		if (!this.planner.equals("auto") && !this.planner.equals("check") && !this.planner.equals("off"))
+			throw new RuntimeException("Unknown PLANNER: " + this.planner + "; expected auto, check or off.");
+		
 		if (!this.persistConfig)
 			this.config = null;
 	}
@@ -20,6 +20,11 @@ public class NamespaceEntry {
 		return this.name;
 	}
 	
+	public void setName(long n)
+	{
+		this.name = n;
+	}
+	
 	public long getSize()
 	{
 		if (this.size < 0)
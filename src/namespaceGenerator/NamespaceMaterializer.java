@@ -0,0 +1,100 @@
+package namespaceGenerator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Creates batches from .. to - 1 of the namespace under a root directory, see
+ * HierarchicalFileSystemGenerator.materialize(). Batch k is the directories lo[k] .. hi[k] - 1 at depth depth[k]
+ * with their files, created by one thread; the batches are split in halves created in parallel. The batches of
+ * done are skipped, and each batch created is appended to the journal.
+ *
+ * The files are created with their size, as sparse files (nothing is written to them), or empty, and their
+ * modification time is time minus their age in milliseconds (lastStamp minus their creation stamp). Creating a
+ * batch again is harmless: the directories already there are kept, and the files get their size and time again.
+ */
+public class NamespaceMaterializer extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+	private HierarchicalFileSystemGenerator generator;
+	private String root;
+	private boolean sizes;
+	private long time, lastStamp;
+	private int[] depth;
+	private long[] lo, hi, entries;
+	private BitSet done;
+	private FileOutputStream journal;
+	private int from, to;
+
+	public NamespaceMaterializer(HierarchicalFileSystemGenerator generator, String root, boolean sizes, long time, long lastStamp,
+			int[] depth, long[] lo, long[] hi, long[] entries, BitSet done, FileOutputStream journal, int from, int to)
+	{
+		this.generator = generator;
+		this.root = root;
+		this.sizes = sizes;
+		this.time = time;
+		this.lastStamp = lastStamp;
+		this.depth = depth;
+		this.lo = lo;
+		this.hi = hi;
+		this.entries = entries;
+		this.done = done;
+		this.journal = journal;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	protected void compute() {
+		if (to - from > 1)
+		{
+			int mid = (from + to) >>> 1;
+			invokeAll(new NamespaceMaterializer(generator, root, sizes, time, lastStamp, depth, lo, hi, entries, done, journal, from, mid),
+					new NamespaceMaterializer(generator, root, sizes, time, lastStamp, depth, lo, hi, entries, done, journal, mid, to));
+			return;
+		}
+		for (int k = from; k < to; k++)
+		{
+			if (done.get(k))
+				continue;
+			try {
+				for (long j = lo[k]; j < hi[k]; j++)
+					this.createDir(generator.getStore().getDirAtDepth(depth[k], j));
+				synchronized (journal) {
+					journal.write((k + "\n").getBytes(StandardCharsets.US_ASCII));
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e); // rethrown by materialize()
+			}
+			generator.getMetrics().addProgress(entries[k]);
+		}
+	}
+
+	/* Creates a directory, then its files */
+	private void createDir(long dir) throws IOException
+	{
+		NamespaceStore store = generator.getStore();
+		String path = root + generator.path(dir);
+		File d = new File(path);
+		if (!d.mkdir() && !d.isDirectory())
+			throw new IOException("Cannot create the directory " + d);
+		long file;
+		int files = store.getNumChildFiles(dir);
+		for (int k = 0; k < files; k++)
+		{
+			file = store.getChildFile(dir, k);
+			File f = new File(path + store.getFileName(file));
+			try (RandomAccessFile out = new RandomAccessFile(f, "rw")) {
+				if (sizes && store.getFileSize(file) > 0)
+					out.setLength(store.getFileSize(file));
+			}
+			if (!f.setLastModified(Math.max(0, time - (lastStamp - store.getFileCreationStamp(file)))))
+				throw new IOException("Cannot set the modification time of " + f);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package namespaceGenerator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Writes parts from .. to - 1 of the namespace, see HierarchicalFileSystemGenerator.print(dir, parts). Part k is
+ * the directories from directory lo[k] at depth loDepth[k] to directory hi[k] - 1 at depth hiDepth[k], in the
+ * order of print(), with their files, written to its own file by one thread, with its own NamespaceRecordEncoder;
+ * the parts are split in halves written in parallel.
+ */
+public class NamespacePartWriter extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+	private HierarchicalFileSystemGenerator generator;
+	private File dir;
+	private String prefix;
+	private int[] loDepth, hiDepth;
+	private long[] lo, hi;
+	private int from, to;
+
+	public NamespacePartWriter(HierarchicalFileSystemGenerator generator, File dir, String prefix, int[] loDepth, long[] lo,
+			int[] hiDepth, long[] hi)
+	{
+		this(generator, dir, prefix, loDepth, lo, hiDepth, hi, 0, loDepth.length);
+	}
+
+	private NamespacePartWriter(HierarchicalFileSystemGenerator generator, File dir, String prefix, int[] loDepth, long[] lo,
+			int[] hiDepth, long[] hi, int from, int to)
+	{
+		this.generator = generator;
+		this.dir = dir;
+		this.prefix = prefix;
+		this.loDepth = loDepth;
+		this.lo = lo;
+		this.hiDepth = hiDepth;
+		this.hi = hi;
+		this.from = from;
+		this.to = to;
+	}
+
+	/* The name of the file of part k */
+	public static String partName(String prefix, int k)
+	{
+		return prefix + String.format("part-%05d", k);
+	}
+
+	@Override
+	protected void compute() {
+		if (to - from > 1)
+		{
+			int mid = (from + to) >>> 1;
+			invokeAll(new NamespacePartWriter(generator, dir, prefix, loDepth, lo, hiDepth, hi, from, mid),
+					new NamespacePartWriter(generator, dir, prefix, loDepth, lo, hiDepth, hi, mid, to));
+			return;
+		}
+		for (int k = from; k < to; k++)
+		{
+			NamespaceStore store = generator.getStore();
+			try (FileOutputStream file = new FileOutputStream(new File(dir, partName(prefix, k)))) {
+				NamespaceRecordEncoder out = new NamespaceRecordEncoder(store, file.getChannel(), HierarchicalFileSystemGenerator.BLOCK);
+				for (int d = loDepth[k]; d <= hiDepth[k]; d++)
+				{
+					long end = (d == hiDepth[k]) ? hi[k] : store.getNumDirsAtDepth(d);
+					for (long j = (d == loDepth[k]) ? lo[k] : 0; j < end; j++)
+						generator.printDir(out, store.getDirAtDepth(d, j), generator.inShard(d, j));
+				}
+				out.flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e); // rethrown by print(dir, parts)
+			}
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package namespaceGenerator;
+
+/*
+ * A directory or file of a namespace read by BinaryNamespaceReader. toString() gives its line in the format of
+ * HierarchicalFileSystemGenerator.print().
+ */
+public class NamespaceRecord {
+	private boolean dir;
+	private String path;
+	private long name;
+	private long creationStamp;
+	private long size;
+
+	public NamespaceRecord(boolean dir, String path, long name, long creationStamp, long size)
+	{
+		this.dir = dir;
+		this.path = path;
+		this.name = name;
+		this.creationStamp = creationStamp;
+		this.size = size;
+	}
+
+	public boolean isDir()
+	{
+		return dir;
+	}
+
+	/* The full path, e.g. "/0/1/2/" for a directory and "/0/1/2/5" for a file */
+	public String getPath()
+	{
+		return path;
+	}
+
+	public long getName()
+	{
+		return name;
+	}
+
+	public long getCreationStamp()
+	{
+		return creationStamp;
+	}
+
+	/* The size of a file; -1 for a directory */
+	public long getSize()
+	{
+		return size;
+	}
+
+	@Override
+	public String toString()
+	{
+		return creationStamp + "\t" + path + "\t" + (dir ? "null" : Long.toString(size));
+	}
+}
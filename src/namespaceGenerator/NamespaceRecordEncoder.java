@@ -0,0 +1,236 @@
+package namespaceGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/*
+ * Writes the lines of the namespace in the format of HierarchicalFileSystemGenerator.print(), byte for byte,
+ * without building Strings: the numbers are formatted straight into a reusable line buffer, the path of a
+ * directory is built once for all its lines (see setDir()), and the lines are written out in large
+ * blocks. The namespace is made of digits, '/', tabs and "null", so its bytes are the same in any charset the
+ * Writer of print() could have used. Not thread safe; each writer thread has its own encoder.
+ */
+public class NamespaceRecordEncoder implements NamespaceSink {
+	private static final byte[] NEWLINE = System.lineSeparator().getBytes();
+	private static final byte[] NULL = {'\t', 'n', 'u', 'l', 'l'};
+	private static final int MAX_LINE = 1024; // stamp, path (see path()), name, size and separators
+	private static final byte[] DIGIT_TENS = new byte[100]; // the digits of 0 .. 99
+	private static final byte[] DIGIT_ONES = new byte[100];
+	static {
+		for (int i = 0; i < 100; i++)
+		{
+			DIGIT_TENS[i] = (byte) ('0' + i / 10);
+			DIGIT_ONES[i] = (byte) ('0' + i % 10);
+		}
+	}
+
+	private NamespaceStore store;
+	private ByteBuffer buffer;
+	private WritableByteChannel channel = null; // where the blocks go; exactly one of the three is set
+	private OutputStream stream = null;
+	private Writer writer = null;
+	private char[] chars = null; // for the writer
+	private byte[] path = new byte[256*2 + 1]; // the path of directory pathDir is path[pathStart ..]
+	private int pathStart = path.length;
+	private long pathDir = -1;
+	private byte[] line = new byte[MAX_LINE];
+	private static final int BATCH = 256; // files whose attributes are read at once, see writeFiles()
+	private long[] stamps = new long[BATCH];
+	private long[] names = new long[BATCH];
+	private long[] sizes = new long[BATCH];
+
+	/* Writes blocks of blockSize bytes from a direct buffer to the channel, e.g. a FileChannel */
+	public NamespaceRecordEncoder(NamespaceStore store, WritableByteChannel channel, int blockSize)
+	{
+		this.store = store;
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(Math.max(blockSize, MAX_LINE));
+	}
+
+	public NamespaceRecordEncoder(NamespaceStore store, OutputStream stream, int blockSize)
+	{
+		this.store = store;
+		this.stream = stream;
+		this.buffer = ByteBuffer.allocate(Math.max(blockSize, MAX_LINE));
+	}
+
+	/* For the callers of print(BufferedWriter); the bytes are turned back into chars */
+	public NamespaceRecordEncoder(NamespaceStore store, Writer writer, int blockSize)
+	{
+		this.store = store;
+		this.writer = writer;
+		this.buffer = ByteBuffer.allocate(Math.max(blockSize, MAX_LINE));
+		this.chars = new char[buffer.capacity()];
+	}
+
+	/* Builds the path of dir, e.g. "/0/1/2/", like path(dir) */
+	private void setDir(long dir)
+	{
+		int pos = path.length - 1;
+		long id;
+		path[pos--] = '/';
+		for (long i = dir; i != -1; i = store.getDirParent(i))
+		{
+			id = store.getDirName(i);
+			do {
+				path[pos--] = (byte) ('0' + id % 10);
+				id = id / 10;
+			} while (id != 0);
+			path[pos--] = '/';
+		}
+		pathStart = pos + 1;
+		pathDir = dir;
+	}
+
+	/* Writes the line of the directory, unless it is in another shard: creation stamp, path, "null" */
+	@Override
+	public void writeDir(long dir, boolean inShard) throws IOException
+	{
+		if (!inShard)
+			return; // its path is only built if it has files in the shard
+		setDir(dir);
+		int n = putLong(line, 0, store.getDirCreationStamp(dir));
+		line[n++] = '\t';
+		n = putPath(line, n);
+		System.arraycopy(NULL, 0, line, n, NULL.length);
+		n += NULL.length;
+		n = putNewLine(line, n);
+		put(line, n);
+	}
+
+	/*
+	 * Writes the lines of the files of the directory: creation stamp, path and name, size. Their 
+	 * attributes are read first, in a tight loop, and formatted afterwards: once the files are sorted by creation
+	 * stamp, the files of a directory are scattered in the store, and the reads are faster when they do not wait
+	 * for each other.
+	 */
+	@Override
+	public void writeFiles(long dir, int numFiles) throws IOException
+	{
+		long file;
+		if (numFiles == 0)
+			return;
+		if (pathDir != dir)
+			setDir(dir);
+		for (int k = 0; k < numFiles; k += BATCH)
+		{
+			int len = Math.min(BATCH, numFiles - k);
+			for (int i = 0; i < len; i++)
+			{
+				file = store.getChildFile(dir, k + i);
+				stamps[i] = store.getFileCreationStamp(file);
+				names[i] = store.getFileName(file);
+				sizes[i] = store.getFileSize(file);
+			}
+			for (int i = 0; i < len; i++)
+			{
+				int n = putLong(line, 0, stamps[i]);
+				line[n++] = '\t';
+				n = putPath(line, n);
+				n = putLong(line, n, names[i]);
+				line[n++] = '\t';
+				n = putLong(line, n, sizes[i]);
+				n = putNewLine(line, n);
+				put(line, n);
+			}
+		}
+	}
+
+	/* The text output has no room for the last stamp */
+	@Override
+	public void setLastStamp(long lastStamp)
+	{
+	}
+
+	/* Writes out the buffered lines, and flushes the stream or the writer */
+	@Override
+	public void flush() throws IOException
+	{
+		drain();
+		if (stream != null)
+			stream.flush();
+		else if (writer != null)
+			writer.flush();
+	}
+
+	private void put(byte[] b, int n) throws IOException
+	{
+		if (buffer.remaining() < n)
+			drain();
+		buffer.put(b, 0, n);
+	}
+
+	private void drain() throws IOException
+	{
+		buffer.flip();
+		if (channel != null) {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		} else if (stream != null) {
+			stream.write(buffer.array(), 0, buffer.limit());
+		} else {
+			byte[] b = buffer.array();
+			int n = buffer.limit();
+			for (int i = 0; i < n; i++)
+				chars[i] = (char) b[i];
+			writer.write(chars, 0, n);
+		}
+		buffer.clear();
+	}
+
+	private int putPath(byte[] b, int n)
+	{
+		int len = path.length - pathStart;
+		System.arraycopy(path, pathStart, b, n, len);
+		return n + len;
+	}
+
+	private static int putNewLine(byte[] b, int n)
+	{
+		for (int i = 0; i < NEWLINE.length; i++)
+			b[n++] = NEWLINE[i];
+		return n;
+	}
+
+	/* Writes the decimal digits of v at b[n ..], like Long.toString(v), and returns the end */
+	static int putLong(byte[] b, int n, long v)
+	{
+		if (v < 0)
+			b[n++] = '-';
+		else
+			v = -v; // the digits are taken from the negative value, which holds Long.MIN_VALUE
+		int digits = 1;
+		for (long p = -10; digits < 19 && v <= p; p *= 10)
+			digits += 1;
+		int pos = n + digits;
+		long q;
+		int r;
+		while (v < Integer.MIN_VALUE) // two digits at a time, with long divisions while needed
+		{
+			q = v / 100;
+			r = (int) (q * 100 - v);
+			v = q;
+			b[--pos] = DIGIT_ONES[r];
+			b[--pos] = DIGIT_TENS[r];
+		}
+		int iv = (int) v, iq;
+		while (iv <= -100)
+		{
+			iq = iv / 100;
+			r = iq * 100 - iv;
+			iv = iq;
+			b[--pos] = DIGIT_ONES[r];
+			b[--pos] = DIGIT_TENS[r];
+		}
+		if (iv <= -10)
+		{
+			b[--pos] = DIGIT_ONES[-iv];
+			b[--pos] = DIGIT_TENS[-iv];
+		} else
+			b[--pos] = (byte) ('0' - iv);
+		return n + digits;
+	}
+}
@@ -0,0 +1,25 @@
+package namespaceGenerator;
+
+import java.io.IOException;
+
+/*
+ * Where HierarchicalFileSystemGenerator writes the namespace: every directory of the store, level by level (all
+ * the directories at depth d before the directories at depth d + 1), each followed by its files. A directory
+ * that is not in the shard of the generator (see HierarchicalFileSystemGenerator.inShard()) is still given, as
+ * the parent of the files of the shard it holds and of its subdirectories. See NamespaceRecordEncoder (text)
+ * and BinaryNamespaceWriter.
+ */
+public interface NamespaceSink {
+
+	/* The last stamp of the namespace (see HierarchicalFileSystemGenerator.getLastStampInSnapshot()), before its first directory */
+	public void setLastStamp(long lastStamp) throws IOException;
+
+	/* The next directory; inShard is false for the directories of the other shards */
+	public void writeDir(long dir, boolean inShard) throws IOException;
+
+	/* The files of the directory given last, numFiles = store.getNumChildFiles(dir) */
+	public void writeFiles(long dir, int numFiles) throws IOException;
+
+	/* Writes out everything written so far */
+	public void flush() throws IOException;
+}
@@ -0,0 +1,135 @@
+package namespaceGenerator;
+
+import java.util.Arrays;
+
+/*
+ * The statistics of the namespace printed by HierarchicalFileSystemGenerator.printStats(), kept up to date while
+ * the namespace is generated, so that printing them does not go over the namespace again:
+ *   - the number of subdirectories and of files of each directory, counted in LongHistograms; a directory with
+ *     n children is counted under n, and moved to n + m when it gets m more (see addSubdirs(), addFiles())
+ *   - the sizes and the ages of the files, counted in the buckets of FILE_SIZE_AT_T0_KEYS and AGE_AT_T0_KEYS:
+ *     bucket k holds the values above key k - 1, up to key k (see FileAttributeTask)
+ * The directories and files at each depth are counted by the store. Directories without subdirectories or
+ * files are not counted.
+ */
+public class NamespaceStats {
+	private LongHistogram subdirsPerDir = new LongHistogram();
+	private LongHistogram filesPerDir = new LongHistogram();
+	private long[] sizeKeys, ageKeys; // sorted
+	private long[] sizeCounts, ageCounts;
+	private int[] sizeGuide, ageGuide; // see bucket()
+
+	public NamespaceStats(MimesisParameters params)
+	{
+		sizeKeys = params.fileSizesAtT0Keys.clone();
+		Arrays.sort(sizeKeys);
+		sizeCounts = new long[sizeKeys.length];
+		ageKeys = params.ageAtT0Keys.clone();
+		Arrays.sort(ageKeys);
+		ageCounts = new long[ageKeys.length];
+		sizeGuide = guide(sizeKeys);
+		ageGuide = guide(ageKeys);
+	}
+
+	/* A directory had before subdirectories, and now has after */
+	public void addSubdirs(long before, long after)
+	{
+		move(subdirsPerDir, before, after);
+	}
+
+	/* A directory had before files, and now has after */
+	public void addFiles(long before, long after)
+	{
+		move(filesPerDir, before, after);
+	}
+
+	private static void move(LongHistogram h, long before, long after)
+	{
+		if (before > 0)
+			h.add(before, -1);
+		if (after > 0)
+			h.add(after, 1);
+	}
+
+	public LongHistogram getSubdirsPerDir()
+	{
+		return subdirsPerDir;
+	}
+
+	public LongHistogram getFilesPerDir()
+	{
+		return filesPerDir;
+	}
+
+	public long[] getSizeKeys()
+	{
+		return sizeKeys;
+	}
+
+	public long[] getAgeKeys()
+	{
+		return ageKeys;
+	}
+
+	/* The bucket of a file size, an index in getSizeKeys() */
+	public int getSizeBucket(long size)
+	{
+		return bucket(sizeKeys, sizeGuide, size);
+	}
+
+	public int getAgeBucket(long age)
+	{
+		return bucket(ageKeys, ageGuide, age);
+	}
+
+	/*
+	 * The first key at or above v, or the last key. It is called for every file, so instead of a binary search,
+	 * the keys are scanned from guide[b], the first key at or above 2^(b - 1), where b is the bit length of v:
+	 * the keys of the configurations grow about geometrically, so there are few keys to scan
+	 */
+	private static int bucket(long[] keys, int[] guide, long v)
+	{
+		if (v < 0)
+			return 0;
+		int i = guide[64 - Long.numberOfLeadingZeros(v)];
+		while (i < keys.length - 1 && keys[i] < v)
+			i++;
+		return i;
+	}
+
+	private static int[] guide(long[] keys)
+	{
+		int[] guide = new int[64];
+		for (int b = 0, i = 0; b < guide.length; b++)
+		{
+			long low = (b == 0) ? 0 : 1L << (b - 1); // the smallest value of bit length b
+			while (i < keys.length - 1 && keys[i] < low)
+				i++;
+			guide[b] = i;
+		}
+		return guide;
+	}
+
+	/* Adds the counts of a part of the files, by bucket; called by several threads at once */
+	public synchronized void addSizes(long[] counts)
+	{
+		for (int i = 0; i < counts.length; i++)
+			sizeCounts[i] += counts[i];
+	}
+
+	public synchronized void addAges(long[] counts)
+	{
+		for (int i = 0; i < counts.length; i++)
+			ageCounts[i] += counts[i];
+	}
+
+	public synchronized long[] getSizeCounts()
+	{
+		return sizeCounts.clone();
+	}
+
+	public synchronized long[] getAgeCounts()
+	{
+		return ageCounts.clone();
+	}
+}
@@ -0,0 +1,109 @@
+package namespaceGenerator;
+
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Storage backend for the namespace built by HierarchicalFileSystemGenerator. Directories and files are
+ * referred to by handles returned by the store; a handle is only meaningful to the store that returned it.
+ * Directories and files are created level by level (all entries at depth d before any entry at depth d + 1),
+ * and all the subdirectories of a directory are created before its files. The handles of the files may
+ * change when sortFilesByCreationStamp() is called.
+ */
+public interface NamespaceStore {
+
+	/* Number of depth levels in the store; depth 0 is the root */
+	public int getMaxDepth();
+
+	public long getNumDirs();
+
+	public long getNumFiles();
+
+	/* Creates a new directory as the last child of the given directory, and returns its handle */
+	public long addDir(long parent);
+
+	/* Creates a new file as the last child of the given directory, and returns its handle */
+	public long addFile(long parent);
+
+	/*
+	 * Reserves n directories at the end of the given depth level, to be created with createDir(), and returns 
+	 * the position of the first one in the level. Reserving follows the same order as addDir().
+	 */
+	public long reserveDirs(int depth, long n);
+
+	/*
+	 * Creates the reserved directory at position i of the given depth as the last child of the given directory,
+	 * and returns its handle. May be called from several threads at once, as long as no two threads create 
+	 * children of the same directory.
+	 */
+	public long createDir(int depth, long i, long parent);
+
+	/* Same as reserveDirs(), for files */
+	public long reserveFiles(int depth, long n);
+
+	/* Same as createDir(), for files */
+	public long createFile(int depth, long i, long parent);
+
+	/*
+	 * Creates the directories at the given depth of from, a store of the same class whose directories at depth - 1
+	 * are at the same positions here, at the first reserved positions of the level: each one keeps its position,
+	 * its name and the position of its parent. Called before any other directory is created at that depth; from is
+	 * left as it is. Used to grow a namespace, see HierarchicalFileSystemGenerator.growFileSystem()
+	 */
+	public void copyDirs(NamespaceStore from, int depth);
+
+	/* Same as copyDirs(), for files; each one also keeps its creation stamp and its size */
+	public void copyFiles(NamespaceStore from, int depth);
+
+	public long getNumDirsAtDepth(int depth);
+
+	/* Returns the i-th directory at the given depth, in creation order */
+	public long getDirAtDepth(int depth, long i);
+
+	/* Returns the position of the directory in its depth level: i for getDirAtDepth(depth, i) */
+	public long getDirIndex(long dir);
+
+	public long getNumFilesAtDepth(int depth);
+
+	/* Returns the i-th file at the given depth; in creation order until the files are sorted */
+	public long getFileAtDepth(int depth, long i);
+
+	/* Returns the position of the file in its depth level: i for getFileAtDepth(depth, i) */
+	public long getFileIndex(long file);
+
+	public long getDirName(long dir);
+
+	/* Returns the parent of the given directory, or -1 for the root */
+	public long getDirParent(long dir);
+
+	public long getDirCreationStamp(long dir);
+
+	public int getNumSubdirs(long dir);
+
+	public int getNumChildFiles(long dir);
+
+	/* Returns the k-th file of the given directory, in creation order */
+	public long getChildFile(long dir, int k);
+
+	public long getFileName(long file);
+
+	/* Renames a file; the files of a directory are otherwise named in creation order, see createFile() */
+	public void setFileName(long file, long name);
+
+	public long getFileParent(long file);
+
+	public long getFileCreationStamp(long file);
+
+	public void setFileCreationStamp(long file, long stamp);
+
+	public long getFileSize(long file);
+
+	public void setFileSize(long file, long size);
+
+	/* Sorts the files at each depth by creation stamp, on the threads of pool; files created with the same stamp keep
+	 * their creation order (see CreationStampSort) */
+	public void sortFilesByCreationStamp(ForkJoinPool pool);
+
+	/* Same as sortFilesByCreationStamp(pool), for the files from position from[d] of each depth d on; the files
+	 * before them keep their positions */
+	public void sortFilesByCreationStamp(ForkJoinPool pool, long[] from);
+}
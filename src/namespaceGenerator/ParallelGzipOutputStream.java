@@ -0,0 +1,285 @@
+package namespaceGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/*
+ * A gzip stream compressed in parallel, like pigz: the bytes are cut in blocks of about blockSize bytes, each
+ * compressed on the pool as a gzip member of its own, and the members are written in order. A gzip file may hold
+ * any number of members, so the output is read by gzip, zcat or GZIPInputStream as one stream. The blocks are cut
+ * after the last line separator of the block when there is one, so that each block holds whole lines.
+ *
+ * Blocks are compressed while the next ones are filled, so compression overlaps with the generation and the
+ * encoding of the namespace; at most 2 blocks per thread of the pool are waiting, and write() blocks beyond that.
+ *
+ * close() ends the file with a block index, for random access (see GzipBlockIndex): empty gzip members, which the
+ * readers skip, whose header holds the compressed and uncompressed lengths of the blocks in an extra field
+ * ("MB" subfields of varints), and a last empty member of LOCATOR_LENGTH bytes whose "ML" subfield holds the
+ * offset of the first index member and the number of blocks.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+	static final int LOCATOR_LENGTH = 42; // header 10, XLEN 2, subfield 4 + 16, empty deflate 2, trailer 8
+	static final int MAX_SUBFIELD = 65531; // the extra field is at most 65535 bytes, with its 4 bytes of header
+	private static final byte[] EMPTY_DEFLATE = {0x03, 0x00};
+	private static final byte LINE_END = (byte) System.lineSeparator().charAt(System.lineSeparator().length() - 1);
+
+	private OutputStream out;
+	private ForkJoinPool pool;
+	private int level;
+	private byte[] block; // being filled
+	private int length = 0;
+	private int maxPending;
+	private ArrayDeque<Compression> pending = new ArrayDeque<Compression>();
+	private ArrayDeque<byte[]> free = new ArrayDeque<byte[]>(); // blocks already compressed and written out
+	private long offset = 0; // bytes written to out
+	private byte[] index = new byte[1024]; // varints: compressed and uncompressed length of each block
+	private int indexLength = 0;
+	private long numBlocks = 0;
+	private boolean closed = false;
+
+	public ParallelGzipOutputStream(OutputStream out, ForkJoinPool pool, int blockSize, int level)
+	{
+		this.out = out;
+		this.pool = pool;
+		this.level = level;
+		this.block = new byte[blockSize];
+		this.maxPending = 2 * pool.getParallelism();
+	}
+
+	public ParallelGzipOutputStream(OutputStream out, ForkJoinPool pool, int blockSize)
+	{
+		this(out, pool, blockSize, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		if (closed)
+			throw new IOException("Stream closed");
+		if (length == block.length)
+			cut();
+		block[length++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		if (closed)
+			throw new IOException("Stream closed");
+		while (len > 0)
+		{
+			if (length == block.length)
+				cut();
+			int n = Math.min(len, block.length - length);
+			System.arraycopy(b, off, block, length, n);
+			length += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/* Compresses the blocks filled so far and writes them out; the block being filled is ended first */
+	@Override
+	public void flush() throws IOException
+	{
+		if (length > 0)
+			submit(length);
+		while (!pending.isEmpty())
+			writeNext();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+			return;
+		flush();
+		writeIndex();
+		out.close();
+		closed = true;
+	}
+
+	/* Hands the full block to the pool, up to its last line separator, and starts the next one with the rest */
+	private void cut() throws IOException
+	{
+		int end = length;
+		while (end > 0 && block[end - 1] != LINE_END)
+			end--;
+		if (end == 0)
+			end = length; // a line longer than a block
+		submit(end);
+	}
+
+	private void submit(int end) throws IOException
+	{
+		byte[] full = block;
+		int rest = length - end;
+		while (pending.size() >= maxPending)
+			writeNext();
+		block = free.isEmpty() ? new byte[full.length] : free.poll();
+		System.arraycopy(full, end, block, 0, rest);
+		length = rest;
+		Compression c = new Compression(full, end, level);
+		pool.execute(c);
+		pending.add(c);
+	}
+
+	/* Waits for the oldest block and writes it out */
+	private void writeNext() throws IOException
+	{
+		Compression c = pending.poll();
+		byte[] member;
+		try {
+			member = c.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not compress a block", e.getCause());
+		}
+		out.write(member);
+		offset += member.length;
+		free.add(c.input);
+		if (indexLength + 20 > index.length)
+			index = Arrays.copyOf(index, index.length * 2);
+		indexLength = putVarLong(index, indexLength, member.length);
+		indexLength = putVarLong(index, indexLength, c.length);
+		numBlocks += 1;
+	}
+
+	private void writeIndex() throws IOException
+	{
+		long indexStart = offset;
+		int from = 0, to;
+		while (from < indexLength)
+		{
+			to = from;
+			while (to < indexLength && to - from < MAX_SUBFIELD - 20) // whole entries, of 2 varints of 10 bytes at most
+			{
+				to = skipVarLong(index, to);
+				to = skipVarLong(index, to);
+			}
+			writeEmptyMember('M', 'B', index, from, to - from);
+			from = to;
+		}
+		byte[] locator = new byte[16];
+		putLongLE(locator, 0, indexStart);
+		putLongLE(locator, 8, numBlocks);
+		writeEmptyMember('M', 'L', locator, 0, 16);
+		out.flush();
+	}
+
+	/* A gzip member with no data, and one subfield si1 si2 in its extra field */
+	private void writeEmptyMember(char si1, char si2, byte[] b, int off, int len) throws IOException
+	{
+		byte[] member = new byte[10 + 2 + 4 + len + EMPTY_DEFLATE.length + 8];
+		putHeader(member, 0x04); // FEXTRA
+		putShortLE(member, 10, 4 + len);
+		member[12] = (byte) si1;
+		member[13] = (byte) si2;
+		putShortLE(member, 14, len);
+		System.arraycopy(b, off, member, 16, len);
+		System.arraycopy(EMPTY_DEFLATE, 0, member, 16 + len, EMPTY_DEFLATE.length); // the trailer is all 0
+		out.write(member);
+		offset += member.length;
+	}
+
+	static void putHeader(byte[] b, int flags)
+	{
+		b[0] = 0x1f; // magic
+		b[1] = (byte) 0x8b;
+		b[2] = Deflater.DEFLATED;
+		b[3] = (byte) flags;
+		// no modification time (b[4 .. 7]) nor extra flags (b[8])
+		b[9] = (byte) 255; // unknown OS
+	}
+
+	static void putShortLE(byte[] b, int n, int v)
+	{
+		b[n] = (byte) v;
+		b[n + 1] = (byte) (v >>> 8);
+	}
+
+	static void putIntLE(byte[] b, int n, int v)
+	{
+		putShortLE(b, n, v);
+		putShortLE(b, n + 2, v >>> 16);
+	}
+
+	static void putLongLE(byte[] b, int n, long v)
+	{
+		putIntLE(b, n, (int) v);
+		putIntLE(b, n + 4, (int) (v >>> 32));
+	}
+
+	private static int putVarLong(byte[] b, int n, long v)
+	{
+		while ((v & ~0x7FL) != 0)
+		{
+			b[n++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		b[n++] = (byte) v;
+		return n;
+	}
+
+	private static int skipVarLong(byte[] b, int n)
+	{
+		while (b[n++] < 0)
+			;
+		return n;
+	}
+
+	/* Compresses input[0 .. length - 1] into a gzip member, with a deflater of the worker thread */
+	private static class Compression extends RecursiveTask<byte[]> {
+		private static final long serialVersionUID = 1L;
+		private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>();
+		private byte[] input;
+		private int length;
+		private int level;
+
+		Compression(byte[] input, int length, int level)
+		{
+			this.input = input;
+			this.length = length;
+			this.level = level;
+		}
+
+		@Override
+		protected byte[] compute()
+		{
+			Deflater deflater = DEFLATER.get();
+			if (deflater == null)
+			{
+				deflater = new Deflater(level, true); // raw deflate, the gzip header and trailer are written here
+				DEFLATER.set(deflater);
+			}
+			deflater.reset();
+			deflater.setLevel(level);
+			deflater.setInput(input, 0, length);
+			deflater.finish();
+			byte[] member = new byte[10 + length + length / 1000 + 64];
+			int n = 10;
+			while (!deflater.finished())
+			{
+				if (n == member.length - 8)
+					member = Arrays.copyOf(member, member.length * 2);
+				n += deflater.deflate(member, n, member.length - 8 - n);
+			}
+			CRC32 crc = new CRC32();
+			crc.update(input, 0, length);
+			putHeader(member, 0);
+			putIntLE(member, n, (int) crc.getValue());
+			putIntLE(member, n + 4, length);
+			return Arrays.copyOf(member, n + 8);
+		}
+	}
+}
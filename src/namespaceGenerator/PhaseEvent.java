@@ -0,0 +1,52 @@
+package namespaceGenerator;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * The JDK Flight Recorder event of a phase of the generation, see PhaseMetrics, e.g. with
+ *   java -XX:StartFlightRecording=filename=mimesis.jfr ...
+ *   jfr print --events mimesis.Phase mimesis.jfr
+ * This class is only loaded when the JVM has the jdk.jfr API (JDK 11, or 8u272 and later).
+ */
+@Name("mimesis.Phase")
+@Label("Mimesis Phase")
+@Category("Mimesis")
+@Description("A phase of the generation of a namespace")
+public class PhaseEvent extends Event {
+	@Label("Phase")
+	String phase;
+
+	@Label("Entries")
+	@Description("Directories and files handled by the phase")
+	long entries;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocated;
+
+	@Label("Heap High-Water Mark")
+	@DataAmount
+	long heapHighWater;
+
+	static Object begin(String phase)
+	{
+		PhaseEvent event = new PhaseEvent();
+		event.phase = phase;
+		event.begin();
+		return event;
+	}
+
+	static void commit(Object e, PhaseMetrics.Phase phase)
+	{
+		PhaseEvent event = (PhaseEvent) e;
+		event.entries = phase.getEntries();
+		event.allocated = phase.getAllocatedBytes();
+		event.heapHighWater = phase.getHeapHighWater();
+		event.commit();
+	}
+}
@@ -0,0 +1,282 @@
+package namespaceGenerator;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/*
+ * Measures the phases of a run: the generation, and within it the packing of the directories and of the files,
+ * the assignment of the file attributes and the sorting of the files (or the loading of a namespace and its growth,
+ * see HierarchicalFileSystemGenerator.growFileSystem()); then the printing of the namespace, of its snapshot
+ * (see SnapshotNamespaceStore) and of its statistics, and its creation on a filesystem (see
+ * HierarchicalFileSystemGenerator.materialize()). For each phase:
+ *   - its duration, and the directories and files it handled per second
+ *   - the bytes allocated by all the threads during the phase (by the threads alive at its end, when the JVM can
+ *     count them; -1 otherwise)
+ *   - the high-water mark of the heap during the phase, the used bytes of all the heap pools at their peak
+ * Each phase is also a PhaseEvent for the JDK Flight Recorder, when the JVM has it. Phases may be nested.
+ *
+ * The messages of the run go to the log (stderr, or LOG_FILE), never to the namespace output, and so do the
+ * progress reports: every interval milliseconds while a phase is open, the innermost phase, how long it has run,
+ * the entries it has handled so far (and per second) and the heap in use.
+ */
+public class PhaseMetrics {
+	public static final String GENERATION = "generation";
+	public static final String PACKING_DIRS = "packing_dirs";
+	public static final String PACKING_FILES = "packing_files";
+	public static final String ATTRIBUTES = "attributes";
+	public static final String SORTING = "sorting";
+	public static final String PRINTING = "printing";
+	public static final String STATS = "stats";
+	public static final String LOADING = "loading";
+	public static final String GROWTH = "growth";
+	public static final String SNAPSHOT = "snapshot";
+	public static final String MATERIALIZING = "materializing";
+	private static final Method[] JFR = jfr(); // PhaseEvent.begin() and commit(); null when the JVM has no jdk.jfr
+
+	private PrintStream log;
+	private long interval; // of the progress reports, in milliseconds; 0 for none
+	private ArrayList<Phase> phases = new ArrayList<Phase>(); // in the order they started
+	private ArrayList<Phase> open = new ArrayList<Phase>(); // innermost last
+	private Timer reporter = null;
+	private long runStart = System.nanoTime();
+
+	/* A phase of the run */
+	public static class Phase {
+		private String name;
+		private long start, end = -1;
+		private volatile long entries = 0;
+		private long allocatedStart, allocated = -1;
+		private long heapHighWater = 0;
+		private Object event = null; // a PhaseEvent
+
+		private Phase(String name)
+		{
+			this.name = name;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		/* In seconds, up to now while the phase runs */
+		public double getSeconds()
+		{
+			return (((end >= 0) ? end : System.nanoTime()) - start) / 1e9;
+		}
+
+		public long getEntries()
+		{
+			return entries;
+		}
+
+		public double getEntriesPerSecond()
+		{
+			double s = getSeconds();
+			return (s > 0) ? entries / s : 0;
+		}
+
+		/* -1 when the JVM does not count the bytes allocated by each thread */
+		public long getAllocatedBytes()
+		{
+			return allocated;
+		}
+
+		public long getHeapHighWater()
+		{
+			return heapHighWater;
+		}
+	}
+
+	public PhaseMetrics(PrintStream log, long interval)
+	{
+		this.log = log;
+		this.interval = interval;
+	}
+
+	public PrintStream getLog()
+	{
+		return log;
+	}
+
+	public ArrayList<Phase> getPhases()
+	{
+		return phases;
+	}
+
+	public synchronized Phase begin(String name)
+	{
+		Phase phase = new Phase(name);
+		updateHeapHighWater(); // before the peaks are reset for the new phase
+		phase.allocatedStart = allocatedBytes();
+		phase.start = System.nanoTime();
+		if (JFR != null)
+		{
+			try {
+				phase.event = JFR[0].invoke(null, name);
+			} catch (ReflectiveOperationException e) {
+				phase.event = null; // the phase is still measured, without its event
+			}
+		}
+		phases.add(phase);
+		open.add(phase);
+		if (open.size() == 1 && interval > 0)
+			startReports();
+		return phase;
+	}
+
+	/* Ends the phase, which handled the given number of directories and files; and the phases still open within it */
+	public synchronized void end(Phase phase, long entries)
+	{
+		int i = open.indexOf(phase);
+		while (i >= 0 && open.size() > i + 1)
+			end(open.get(open.size() - 1), open.get(open.size() - 1).entries);
+		phase.end = System.nanoTime();
+		phase.entries = entries;
+		long allocated = allocatedBytes();
+		if (phase.allocatedStart >= 0 && allocated >= phase.allocatedStart)
+			phase.allocated = allocated - phase.allocatedStart;
+		updateHeapHighWater();
+		open.remove(phase);
+		if (phase.event != null)
+		{
+			try {
+				JFR[1].invoke(null, phase.event, phase);
+			} catch (ReflectiveOperationException e) {
+				// the event is lost, not the phase
+			}
+		}
+		phase.event = null;
+		if (open.isEmpty() && reporter != null)
+		{
+			reporter.cancel();
+			reporter = null;
+		}
+	}
+
+	/* Counts n more entries handled by the innermost phase, for the progress reports */
+	public synchronized void addProgress(long n)
+	{
+		if (!open.isEmpty())
+		{
+			Phase phase = open.get(open.size() - 1);
+			phase.entries += n;
+		}
+	}
+
+	/* Logs a table of the phases that have ended */
+	public synchronized void report()
+	{
+		log.println(String.format(Locale.ROOT, "%-14s %10s %12s %14s %14s %14s", "phase", "seconds", "entries", "entries/s",
+				"allocated MB", "heap peak MB"));
+		for (Phase phase : phases)
+			if (phase.end >= 0)
+				log.println(String.format(Locale.ROOT, "%-14s %10.3f %12d %14.0f %14.1f %14.1f", phase.name, phase.getSeconds(),
+						phase.entries, phase.getEntriesPerSecond(), phase.allocated / 1e6, phase.heapHighWater / 1e6));
+	}
+
+	/* Writes the phases that have ended to a JSON file */
+	public synchronized void writeSummary(String file) throws IOException
+	{
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		out.write("{\"phases\": [");
+		boolean first = true;
+		for (Phase phase : phases)
+		{
+			if (phase.end < 0)
+				continue;
+			out.write((first) ? "" : ",");
+			out.newLine();
+			out.write(String.format(Locale.ROOT, "  {\"name\": \"%s\", \"seconds\": %.6f, \"entries\": %d, \"entries_per_second\": %.1f, " +
+					"\"allocated_bytes\": %d, \"heap_high_water_bytes\": %d}", phase.name, phase.getSeconds(), phase.entries,
+					phase.getEntriesPerSecond(), phase.allocated, phase.heapHighWater));
+			first = false;
+		}
+		out.newLine();
+		out.write("]}");
+		out.newLine();
+		out.close();
+	}
+
+	private void startReports()
+	{
+		reporter = new Timer("mimesis-progress", true);
+		reporter.schedule(new TimerTask() {
+			@Override
+			public void run()
+			{
+				progress();
+			}
+		}, interval, interval);
+	}
+
+	private synchronized void progress()
+	{
+		if (open.isEmpty())
+			return;
+		Phase phase = open.get(open.size() - 1);
+		Runtime runtime = Runtime.getRuntime();
+		log.println(String.format(Locale.ROOT, "[%.1f s] %s for %.1f s; %d entries (%.0f/s); heap %d of %d MB",
+				(System.nanoTime() - runStart) / 1e9, phase.name, phase.getSeconds(), phase.entries, phase.getEntriesPerSecond(),
+				(runtime.totalMemory() - runtime.freeMemory()) >> 20, runtime.maxMemory() >> 20));
+	}
+
+	/* Folds the peak of the heap since the last call into the open phases, and starts a new peak */
+	private void updateHeapHighWater()
+	{
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() != MemoryType.HEAP || !pool.isValid())
+				continue;
+			peak += pool.getPeakUsage().getUsed();
+			pool.resetPeakUsage();
+		}
+		for (Phase phase : open)
+			phase.heapHighWater = Math.max(phase.heapHighWater, peak);
+	}
+
+	/* The bytes allocated so far by the threads alive; -1 when the JVM does not count them */
+	private static long allocatedBytes()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean counted = (com.sun.management.ThreadMXBean) threads;
+		if (!counted.isThreadAllocatedMemorySupported() || !counted.isThreadAllocatedMemoryEnabled())
+			return -1;
+		long total = 0;
+		for (long bytes : counted.getThreadAllocatedBytes(threads.getAllThreadIds()))
+			if (bytes > 0)
+				total += bytes;
+		return total;
+	}
+
+	/*
+	 * PhaseEvent is looked up rather than linked: it is compiled apart from the other classes, against the jdk.jfr
+	 * API of the JDK building the generator (see generator/pom.xml), and is only loaded when the JVM has that API.
+	 */
+	private static Method[] jfr()
+	{
+		try {
+			Class.forName("jdk.jfr.Event");
+			Class<?> event = Class.forName("namespaceGenerator.PhaseEvent");
+			return new Method[] { event.getDeclaredMethod("begin", String.class), event.getDeclaredMethod("commit", Object.class, Phase.class) };
+		} catch (ReflectiveOperationException e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,406 @@
+package namespaceGenerator;
+
+import java.util.Locale;
+
+/*
+ * Plans a run before it starts, from its configuration alone: for each way of keeping the namespace in memory
+ * (the entries or the compact NAMESPACE_STORE, STREAM_OUTPUT, which only keeps the directories and one level of
+ * files, or the mapped NAMESPACE_STORE, which keeps the namespace in scratch files), the heap each phase of the run
+ * needs, the bytes of the output (and of the scratch files) and about how long the run takes.
+ *
+ * The directories and files at each depth, the objects packed at each depth, and the digits of the names, stamps
+ * and sizes, follow from the targets and the distributions of the configuration. The heap is counted from the
+ * bytes of each directory, file and packed object in the data structures of each phase (see
+ * CompactNamespaceStore, EntryNamespaceStore, MappedNamespaceStore, BinPacking and packBins()); BASE_HEAP and
+ * HEADROOM, the binary bytes per record, the gzip ratio and the seconds per entry of each phase were measured with
+ * conf/mimesis.properties at 1 to 60 times its size (1000 times for the mapped store, see the README).
+ *
+ * choose() checks the configured mode against the heap of the JVM, see PLANNER: with "check" the run is refused
+ * when it would not fit, with "auto" it is switched to the first mode keeping less in memory that fits.
+ */
+public class RunPlanner {
+	public static final String ENTRIES = "entries";
+	public static final String COMPACT = "compact";
+	public static final String STREAM = "stream";
+	public static final String MAPPED = "mapped";
+	public static final String[] PHASES = {PhaseMetrics.PACKING_DIRS, PhaseMetrics.PACKING_FILES, PhaseMetrics.ATTRIBUTES,
+			PhaseMetrics.SORTING, PhaseMetrics.PRINTING, PhaseMetrics.STATS};
+
+	// heap, in bytes
+	static final long BASE_HEAP = 8L << 20; // the classes, the configuration, the samplers and the output buffers
+	static final double HEADROOM = 1.1; // of the garbage collector, over the live bytes
+	static final int COMPACT_DIR = 16; // the columns of CompactNamespaceStore
+	static final int COMPACT_FILE = 24;
+	static final int CHILD_INDEX = 4; // per directory and per file, the index of the files of each directory
+	static final int ENTRY_DIR = 96; // a HierarchicalNamespaceEntry with its list of children, and its slots in the lists
+	static final int ENTRY_FILE = 56;
+	static final int PACKED_OBJECT = 5; // the depth of each object and its position by depth, see BinPacking
+	static final int LEVEL_OBJECT = 12; // the size and start of each object of a level, see packBins()
+	static final int SORTED_FILE = 32; // the keys, order and permuted column of each file of the level sorted
+	static final double LEVEL_MARGIN = 1.1; // of the largest level of files over its expected size
+	static final long MAPPED_HEAP = 4L << 20; // the buffers of the phases of the mapped store
+	static final int SORTED_RUN_FILE = 32; // the values, order and keys of each file of a run sorted in the heap
+	// scratch files of the mapped store, in bytes
+	static final int MAPPED_DIR = 24; // the columns of MappedNamespaceStore, with the index of the files
+	static final int MAPPED_FILE = 28;
+	static final int MAPPED_OBJECT = 9; // the depth of each object and its position by depth, see BinPacking
+	static final int MAPPED_RUN_FILE = 24; // the columns of the runs of files merged, see MappedNamespaceStore
+	// output, in bytes
+	static final int BINARY_DIR = 4; // see BinaryNamespaceWriter
+	static final int BINARY_FILE = 13;
+	static final double GZIP_RATIO = 5.4;
+	static final double ANCESTOR_DIGITS = 1.1; // of the name of a directory with subdirectories or files
+	static final int FILE_NAME_OFFSET = 14; // the files of a directory are named after its subdirectories
+	// nanoseconds per directory or file, on one core
+	static final double[] NANOS_ENTRIES = {750, 540, 450, 1000, 410, 21}; // of each phase of PHASES
+	static final double[] NANOS_COMPACT = {440, 480, 400, 600, 280, 23};
+	static final double[] NANOS_STREAM = {400, 1400, 0, 0, 0, 20};
+	static final double[] NANOS_MAPPED = {220, 240, 240, 440, 400, 5};
+	static final double NANOS_GZIP = 1600; // per file and directory printed, when the output is compressed
+	static final double WARMUP_SECONDS = 1.5; // the start of the JVM and the compilation of the generator
+	private static final int SAMPLES = 16; // values of each bucket of the distributions, see quantiles()
+
+	private MimesisParameters params;
+	private int threads;
+	private double dirs, files; // targets
+	private double dirsLevel, filesLevel; // the largest level of directories and of files
+	private double dirLine, fileLine; // mean bytes of the text lines
+
+	/* The plan of a run in one mode */
+	public static class Plan {
+		private String mode;
+		private long[] heap = new long[PHASES.length]; // live bytes at the peak of each phase, without BASE_HEAP
+		private double[] seconds = new double[PHASES.length];
+		private long requiredHeap;
+		private long outputBytes;
+		private long scratchBytes = 0;
+		private String note = null;
+
+		private Plan(String mode)
+		{
+			this.mode = mode;
+		}
+
+		public String getMode()
+		{
+			return mode;
+		}
+
+		/* The live bytes at the peak of phase i of PHASES; 0 for the phases the run skips */
+		public long getHeap(int i)
+		{
+			return heap[i];
+		}
+
+		public double getSeconds(int i)
+		{
+			return seconds[i];
+		}
+
+		/* The smallest -Xmx the run should complete with */
+		public long getRequiredHeap()
+		{
+			return requiredHeap;
+		}
+
+		public long getOutputBytes()
+		{
+			return outputBytes;
+		}
+
+		/* The bytes of the scratch files of the mapped store, at most; 0 in the other modes */
+		public long getScratchBytes()
+		{
+			return scratchBytes;
+		}
+
+		public double getTotalSeconds()
+		{
+			double s = 0;
+			for (double t : seconds)
+				s += t;
+			return s;
+		}
+
+		public boolean fits(long maxHeap)
+		{
+			return requiredHeap <= maxHeap;
+		}
+
+		/* Why choose() picked this plan, when it is not the configured mode; null otherwise */
+		public String getNote()
+		{
+			return note;
+		}
+
+		/* A table of the phases, as in PhaseMetrics.report() */
+		public String describe()
+		{
+			StringBuilder b = new StringBuilder();
+			if (note != null)
+				b.append(note).append(System.lineSeparator());
+			b.append(String.format(Locale.ROOT, "Plan (%s): heap %d MB (-Xmx), output %.1f MB, about %.0f s", mode,
+					mb(requiredHeap), outputBytes / 1e6, getTotalSeconds()));
+			if (scratchBytes > 0)
+				b.append(String.format(Locale.ROOT, ", scratch files %.1f MB", scratchBytes / 1e6));
+			b.append(System.lineSeparator());
+			b.append(String.format(Locale.ROOT, "%-14s %10s %14s", "phase", "seconds", "heap MB"));
+			for (int i = 0; i < PHASES.length; i++)
+				if (heap[i] > 0)
+					b.append(System.lineSeparator()).append(String.format(Locale.ROOT, "%-14s %10.1f %14d", PHASES[i], seconds[i],
+							mb(BASE_HEAP + heap[i])));
+			return b.toString();
+		}
+	}
+
+	public RunPlanner(MimesisParameters params)
+	{
+		this.params = params;
+		this.threads = (params.threads > 0) ? params.threads : Runtime.getRuntime().availableProcessors();
+		this.dirs = params.targetDirsInNamespace;
+		this.files = params.targetFilesInNamespace;
+		this.dirsLevel = dirs * largestShare(params.subdirsAtDepthKeys, params.subdirsAtDepthWeights);
+		this.filesLevel = files * largestShare(params.filesAtDepthKeys, params.filesAtDepthWeights);
+
+		// paths: "/0/", then the name of the directory at each depth and "/"; depth 1 is user, project or other.
+		// The directories with subdirectories or files are mostly the first ones of their level (the largest
+		// objects are packed first, see packBins()), whose names are short: ANCESTOR_DIGITS
+		double dirDepth = meanDepth(params.subdirsAtDepthKeys, params.subdirsAtDepthWeights);
+		double fileDepth = meanDepth(params.filesAtDepthKeys, params.filesAtDepthWeights);
+		double dirPath = path(dirDepth - 1) + nameDigits(params.subdirsPerDirKeys, params.subdirsPerDirWeights, 0) + 1;
+		double parentPath = path(fileDepth - 1);
+		int newLine = System.lineSeparator().length();
+
+		double[][] ages = quantiles(params.ageAtT0Keys, params.ageAtT0Weights);
+		double[][] sizes = quantiles(params.fileSizesAtT0Keys, params.fileSizesAtT0Weights);
+		long oldest = 0;
+		for (long k : params.ageAtT0Keys)
+			oldest = Math.max(oldest, k);
+		double stampDigits = 0, sizeDigits = 0;
+		for (int i = 0; i < ages[0].length; i++)
+			stampDigits += ages[1][i] * digits((long) (oldest - ages[0][i]));
+		for (int i = 0; i < sizes[0].length; i++)
+			sizeDigits += sizes[1][i] * digits((long) sizes[0][i]);
+		this.dirLine = 1 + 1 + dirPath + 5 + newLine;
+		this.fileLine = stampDigits + 1 + parentPath + nameDigits(params.filesPerDirKeys, params.filesPerDirWeights, FILE_NAME_OFFSET) +
+				1 + sizeDigits + newLine;
+	}
+
+	/* The expected size of the largest level of files, to size the columns of a streamed namespace */
+	public long getLargestFileLevel()
+	{
+		return (long) Math.ceil(filesLevel * LEVEL_MARGIN);
+	}
+
+	/* The plan of the run in mode ENTRIES, COMPACT, STREAM or MAPPED, with the output and the shards of params */
+	public Plan plan(String mode)
+	{
+		Plan plan = new Plan(mode);
+		boolean stream = mode.equals(STREAM);
+		boolean mapped = mode.equals(MAPPED);
+		boolean entries = mode.equals(ENTRIES);
+		double fileLevel = getLargestFileLevel();
+		double dirStore = ((entries) ? ENTRY_DIR : COMPACT_DIR) * dirs;
+		double fileStore = (stream) ? COMPACT_FILE * fileLevel : ((entries) ? ENTRY_FILE : COMPACT_FILE) * files;
+		double packDirs = PACKED_OBJECT * dirs + LEVEL_OBJECT * dirsLevel;
+		double packFiles = PACKED_OBJECT * files + LEVEL_OBJECT * filesLevel;
+		double printBuffers = 0;
+		if (params.outputParts > 0)
+			printBuffers = threads * HierarchicalFileSystemGenerator.BLOCK;
+		else if (params.outputCompression.equals("gzip"))
+			printBuffers = 2 * (2 * threads + 1) * HierarchicalFileSystemGenerator.BLOCK; // the blocks and their members
+
+		// the compact store has all its columns from the start; the entries are created as the levels are packed.
+		// A namespace grown (GROW_FROM) is copied level by level from the namespace loaded, at most as large; the
+		// binary output is read without its paths, a block at a time, so reading it keeps nothing per directory
+		double loaded = (params.growFrom != null) ? dirStore + fileStore : 0;
+		plan.heap[0] = (long) (loaded + dirStore + ((entries) ? 0 : fileStore) + packDirs);
+		plan.heap[1] = (long) (loaded + dirStore + fileStore + packFiles);
+		if (mapped)
+		{
+			// the namespace and the packing are in scratch files (those of the packing go back to the disk when
+			// collected), the heap holds the runs of files sorted
+			plan.heap[0] = plan.heap[1] = plan.heap[2] = MAPPED_HEAP;
+			plan.heap[3] = (long) (MAPPED_HEAP + SORTED_RUN_FILE * Math.min(fileLevel, MappedNamespaceStore.RUN));
+			plan.heap[4] = (long) (MAPPED_HEAP + printBuffers);
+			double namespace = MAPPED_DIR * dirs + MAPPED_FILE * files; // twice when it is grown from the namespace loaded
+			plan.scratchBytes = (long) (((params.growFrom != null) ? 2 : 1) * namespace + MAPPED_OBJECT * (dirs + files) +
+					LEVEL_OBJECT * (dirsLevel + filesLevel) + ((fileLevel > MappedNamespaceStore.RUN) ? MAPPED_RUN_FILE * fileLevel : 0));
+		} else if (stream)
+			plan.heap[1] += (long) (CHILD_INDEX * (dirs + fileLevel) + printBuffers); // printing each level
+		else {
+			plan.heap[2] = (long) (dirStore + fileStore);
+			plan.heap[3] = (long) (dirStore + fileStore + SORTED_FILE * fileLevel);
+			plan.heap[4] = (long) (dirStore + fileStore + ((entries) ? 0 : CHILD_INDEX * (dirs + files)) + printBuffers);
+		}
+		if (params.printNamespaceStats)
+			plan.heap[5] = (mapped) ? MAPPED_HEAP : (long) (dirStore + fileStore);
+		long peak = 0;
+		for (long h : plan.heap)
+			peak = Math.max(peak, h);
+		plan.requiredHeap = (long) ((BASE_HEAP + peak) * HEADROOM);
+
+		// the shard prints its directories and files, and in binary all the directories
+		double shardDirs = dirs / params.shards, shardFiles = files / params.shards;
+		if (params.outputFormat.equals("binary"))
+			plan.outputBytes = (long) (BINARY_DIR * dirs + BINARY_FILE * shardFiles);
+		else if (params.outputCompression.equals("gzip"))
+			plan.outputBytes = (long) ((dirLine * shardDirs + fileLine * shardFiles) / GZIP_RATIO);
+		else
+			plan.outputBytes = (long) (dirLine * shardDirs + fileLine * shardFiles);
+
+		// the attributes, the sorting, the parts and the compression run on all the threads
+		double[] nanos = (stream) ? NANOS_STREAM : ((entries) ? NANOS_ENTRIES : ((mapped) ? NANOS_MAPPED : NANOS_COMPACT));
+		double[] count = {dirs, shardFiles, shardFiles, shardFiles, shardDirs + shardFiles, shardDirs + shardFiles};
+		double gzip = (params.outputCompression.equals("gzip")) ? NANOS_GZIP * (shardDirs + shardFiles) / threads : 0;
+		for (int i = 0; i < PHASES.length; i++)
+			plan.seconds[i] = nanos[i] * count[i] / 1e9;
+		plan.seconds[2] /= threads;
+		plan.seconds[3] /= threads;
+		if (params.outputParts > 0)
+			plan.seconds[4] /= threads;
+		plan.seconds[(stream) ? 1 : 4] += gzip / 1e9;
+		plan.seconds[0] += WARMUP_SECONDS;
+		if (!params.printNamespaceStats)
+			plan.seconds[5] = 0;
+		return plan;
+	}
+
+	/* The configured mode */
+	public String getMode()
+	{
+		return (params.streamOutput) ? STREAM : params.namespaceStore;
+	}
+
+	/*
+	 * The plan of the configured mode, checked against maxHeap bytes of heap unless PLANNER is off. When it does not
+	 * fit: with PLANNER = check, or when no mode keeping less in memory fits either, throws a RuntimeException
+	 * naming the heap needed; with PLANNER = auto, switches params to the first mode that fits, in the order
+	 * entries, compact, stream (not with OUTPUT_PARTS or GROW_FROM), mapped (not with SHARDS or the legacy
+	 * BIN_PACKER), and returns its plan.
+	 */
+	public Plan choose(long maxHeap)
+	{
+		String mode = getMode();
+		Plan plan = plan(mode);
+		if (params.planner.equals("off") || plan.fits(maxHeap))
+			return plan;
+		String needs = "The " + mode + " namespace needs about " + mb(plan.requiredHeap) + " MB of heap, and the JVM has " +
+				mb(maxHeap) + " MB";
+		if (params.planner.equals("check"))
+			throw new RuntimeException(needs + "; run it with -Xmx" + mb(plan.requiredHeap) + "m, or set PLANNER = auto.");
+		String[] lower = {ENTRIES, COMPACT, STREAM, MAPPED};
+		Plan smallest = plan;
+		int i = 0;
+		while (!lower[i].equals(mode))
+			i++;
+		for (i = i + 1; i < lower.length; i++)
+		{
+			if (lower[i].equals(STREAM) && (params.outputParts > 0 || params.growFrom != null))
+				continue;
+			if (lower[i].equals(MAPPED) && (params.shards > 1 || params.binPacker.equals("legacy")))
+				break;
+			Plan p = plan(lower[i]);
+			if (!p.fits(maxHeap))
+			{
+				smallest = p;
+				continue;
+			}
+			p.note = needs + "; switching to " + p.mode + ", which needs about " + mb(p.requiredHeap) + " MB.";
+			if (p.mode.equals(STREAM))
+				params.streamOutput = true;
+			else {
+				params.streamOutput = false;
+				params.namespaceStore = p.mode;
+			}
+			return p;
+		}
+		throw new RuntimeException(needs + ", and no mode keeping less in memory fits; run it with -Xmx" + mb(plan.requiredHeap) + "m" +
+				((smallest != plan) ? ", or in " + smallest.mode + " mode with -Xmx" + mb(smallest.requiredHeap) + "m." : "."));
+	}
+
+	private static long mb(double bytes)
+	{
+		return (long) Math.ceil(bytes / (1 << 20));
+	}
+
+	/* The largest weight of a distribution of depths, over the sum of its weights */
+	private static double largestShare(Long[] keys, double[] weights)
+	{
+		double sum = 0, max = 0;
+		for (int i = 0; i < weights.length; i++)
+		{
+			sum += weights[i];
+			max = Math.max(max, weights[i]);
+		}
+		return (sum > 0) ? max / sum : 1;
+	}
+
+	private static double meanDepth(Long[] keys, double[] weights)
+	{
+		double sum = 0, mean = 0;
+		for (int i = 0; i < weights.length; i++)
+		{
+			sum += weights[i];
+			mean += weights[i] * keys[i];
+		}
+		return (sum > 0) ? mean / sum : 0;
+	}
+
+	/* The mean bytes of the path of a directory at the given depth with subdirectories or files, see ANCESTOR_DIGITS */
+	private static double path(double depth)
+	{
+		return 3 + ((depth >= 1) ? 2 : 0) + Math.max(0, depth - 1) * (ANCESTOR_DIGITS + 1);
+	}
+
+	/*
+	 * The mean digits of the names of the children of a directory, named offset + 1 .. offset + n, with n from the
+	 * distribution: the digits of all the names over the number of names
+	 */
+	private static double nameDigits(long[] keys, double[] weights, int offset)
+	{
+		double[][] q = quantiles(keys, weights);
+		double names = 0, digits = 0;
+		long n;
+		for (int i = 0; i < q[0].length; i++)
+		{
+			n = Math.round(q[0][i]);
+			names += q[1][i] * n;
+			for (long p = 1, d = 1; p <= offset + n; p *= 10, d++) // the names p .. 10p - 1 have d digits
+				digits += q[1][i] * d * Math.max(0, Math.min(offset + n, 10 * p - 1) - Math.max(offset + 1, p) + 1);
+		}
+		return (names > 0) ? digits / names : 1;
+	}
+
+	/*
+	 * Values of a distribution of WeightedTriangularRanGen, and their probabilities: the first key, and SAMPLES
+	 * quantiles of the triangle between each pair of keys (a single value between consecutive keys)
+	 */
+	private static double[][] quantiles(long[] keys, double[] weights)
+	{
+		double[][] q = new double[2][keys.length * SAMPLES];
+		double sum = 0;
+		for (double w : weights)
+			sum += w;
+		q[0][0] = keys[0];
+		q[1][0] = weights[0] / sum;
+		double a, b, u;
+		for (int i = 1; i < keys.length; i++)
+		{
+			a = keys[i - 1];
+			b = keys[i];
+			for (int s = 0; s < SAMPLES; s++)
+			{
+				u = (s + 0.5) / SAMPLES;
+				q[0][i * SAMPLES + s] = (Math.abs(b - a) <= 1) ? b : a + (b - a) * Math.sqrt(u); // the mode is at b
+				q[1][i * SAMPLES + s] = weights[i] / sum / SAMPLES;
+			}
+		}
+		return q;
+	}
+
+	private static int digits(long v)
+	{
+		return Long.toString(Math.max(v, 0)).length();
+	}
+}
@@ -0,0 +1,507 @@
+package namespaceGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Read-only namespace store over a snapshot file, written by write() once a namespace is generated (see
+ * HierarchicalFileSystemGenerator.saveSnapshot()) and mapped in memory as it is: opening a snapshot only reads its
+ * header and its statistics, and the entries are read from the page cache as they are visited, without an object
+ * per entry. The columns are those of MappedNamespaceStore, with its childFiles index, so a snapshot takes 24 bytes
+ * per directory and 28 per file. All the numbers are little-endian:
+ *
+ *   header:   int MAGIC, int VERSION, int maxDepth, int 0, long numDirs, long numFiles, long lastStampInSnapshot,
+ *             long[maxDepth] directories at each depth, long[maxDepth] files at each depth
+ *   columns:  dirParent       int per directory, the position of its parent in the level above (-1 for the root)
+ *             dirName         int per directory
+ *             dirSubdirs      int per directory
+ *             dirFiles        int per directory
+ *             firstChildFile  long per directory and one more: the files of directory i are childFiles[
+ *                             firstChildFile[i]] .. childFiles[firstChildFile[i + 1] - 1], in creation order
+ *             childFiles      int per file, a position in the level of the files
+ *             fileParent      int per file, the position of its parent in the level above
+ *             fileName        int per file
+ *             fileStamp       long per file
+ *             fileSize        long per file
+ *   stats:    the directories by number of subdirectories, then by number of files, each as a long number of
+ *             values followed by (value, count) pairs; then the age and the size buckets, each as an int number of
+ *             keys followed by the keys and the counts (see NamespaceStats)
+ *
+ * The directories and files of each column are in level order, the files of each level in the order of the store
+ * written (by creation stamp, once generated). Each column starts at a multiple of 8 bytes, the int columns being
+ * padded. The reader refuses the versions after its own.
+ */
+public class SnapshotNamespaceStore implements NamespaceStore {
+	public static final int MAGIC = 0x4D4E5353; // "MNSS"
+	public static final int VERSION = 1;
+	private static final int HEADER = 40; // bytes, before the levels
+	private int maxDepth;
+	private long numDirs, numFiles;
+	private long lastStamp;
+	private long[] dirDepthStart, fileDepthStart; // index of the first directory (file) at each depth
+	private MappedArray dirParent, dirName, dirSubdirs, dirFiles, firstChildFile, childFiles;
+	private MappedArray fileParent, fileName, fileStamp, fileSize;
+	private long[] subdirValues, subdirCounts, fileValues, fileCounts;
+	private long[] ageKeys, ageCounts, sizeKeys, sizeCounts;
+
+	/* Maps the snapshot file; its columns stay mapped until close() */
+	public SnapshotNamespaceStore(File file) throws IOException
+	{
+		FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+		try {
+			ByteBuffer header = read(channel, 0, HEADER);
+			if (header.getInt() != MAGIC)
+				throw new IOException(file + " is not a namespace snapshot.");
+			int version = header.getInt();
+			if (version > VERSION)
+				throw new IOException(file + " is a snapshot of version " + version + "; this reader supports up to version " + VERSION + ".");
+			maxDepth = header.getInt();
+			header.getInt();
+			numDirs = header.getLong();
+			numFiles = header.getLong();
+			lastStamp = header.getLong();
+			ByteBuffer levels = read(channel, HEADER, 16L * maxDepth);
+			dirDepthStart = new long[maxDepth];
+			fileDepthStart = new long[maxDepth];
+			long dirs = 0, files = 0;
+			for (int d = 0; d < maxDepth; d++)
+			{
+				dirDepthStart[d] = dirs;
+				dirs += levels.getLong();
+			}
+			for (int d = 0; d < maxDepth; d++)
+			{
+				fileDepthStart[d] = files;
+				files += levels.getLong();
+			}
+			long offset = HEADER + 16L * maxDepth;
+			long stats = offset + 4 * column(numDirs, 4) + column(numDirs + 1, 8) + 3 * column(numFiles, 4) + 2 * column(numFiles, 8);
+			if (dirs != numDirs || files != numFiles || channel.size() < stats)
+				throw new IOException(file + " is truncated or damaged.");
+			dirParent = new MappedArray(channel, offset, 4, numDirs);
+			dirName = new MappedArray(channel, offset += column(numDirs, 4), 4, numDirs);
+			dirSubdirs = new MappedArray(channel, offset += column(numDirs, 4), 4, numDirs);
+			dirFiles = new MappedArray(channel, offset += column(numDirs, 4), 4, numDirs);
+			firstChildFile = new MappedArray(channel, offset += column(numDirs, 4), 8, numDirs + 1);
+			childFiles = new MappedArray(channel, offset += column(numDirs + 1, 8), 4, numFiles);
+			fileParent = new MappedArray(channel, offset += column(numFiles, 4), 4, numFiles);
+			fileName = new MappedArray(channel, offset += column(numFiles, 4), 4, numFiles);
+			fileStamp = new MappedArray(channel, offset += column(numFiles, 4), 8, numFiles);
+			fileSize = new MappedArray(channel, offset += column(numFiles, 8), 8, numFiles);
+			ByteBuffer in = read(channel, stats, channel.size() - stats);
+			subdirValues = new long[(int) in.getLong()];
+			subdirCounts = pairs(in, subdirValues);
+			fileValues = new long[(int) in.getLong()];
+			fileCounts = pairs(in, fileValues);
+			ageKeys = new long[in.getInt()];
+			ageCounts = buckets(in, ageKeys);
+			sizeKeys = new long[in.getInt()];
+			sizeCounts = buckets(in, sizeKeys);
+		} finally {
+			channel.close(); // the mapped columns stay valid
+		}
+	}
+
+	/* The bytes of a column of n values of the given bytes each, padded to a multiple of 8 */
+	private static long column(long n, int bytes)
+	{
+		return (n * bytes + 7) & ~7L;
+	}
+
+	private static ByteBuffer read(FileChannel channel, long offset, long length) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, offset + buffer.position()) < 0)
+				throw new EOFException("The snapshot ends at " + (offset + buffer.position()) + "; expected " + (offset + length) + " bytes.");
+		buffer.flip();
+		return buffer;
+	}
+
+	/* Reads the (value, count) pairs of a histogram; returns the counts */
+	private static long[] pairs(ByteBuffer in, long[] values)
+	{
+		long[] counts = new long[values.length];
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = in.getLong();
+			counts[i] = in.getLong();
+		}
+		return counts;
+	}
+
+	/* Reads the keys, then the counts, of buckets; returns the counts */
+	private static long[] buckets(ByteBuffer in, long[] keys)
+	{
+		long[] counts = new long[keys.length];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = in.getLong();
+		for (int i = 0; i < keys.length; i++)
+			counts[i] = in.getLong();
+		return counts;
+	}
+
+	/*
+	 * Writes the namespace of store to file, with the last stamp of the snapshot and the statistics of the
+	 * namespace. The columns are written one after the other, each going over the store in level order.
+	 */
+	public static void write(NamespaceStore store, long lastStamp, NamespaceStats stats, File file) throws IOException
+	{
+		int maxDepth = store.getMaxDepth();
+		Output out = new Output(new BufferedOutputStream(new FileOutputStream(file), HierarchicalFileSystemGenerator.BLOCK));
+		try {
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(maxDepth);
+			out.putInt(0);
+			out.putLong(store.getNumDirs());
+			out.putLong(store.getNumFiles());
+			out.putLong(lastStamp);
+			for (int d = 0; d < maxDepth; d++)
+				out.putLong(store.getNumDirsAtDepth(d));
+			for (int d = 0; d < maxDepth; d++)
+				out.putLong(store.getNumFilesAtDepth(d));
+			long dir, parent, entry, first = 0;
+			for (int c = 0; c < 6; c++) // dirParent, dirName, dirSubdirs, dirFiles, firstChildFile and childFiles
+			{
+				for (int d = 0; d < maxDepth; d++)
+				{
+					for (long i = 0; i < store.getNumDirsAtDepth(d); i++)
+					{
+						dir = store.getDirAtDepth(d, i);
+						if (c == 0)
+						{
+							parent = store.getDirParent(dir);
+							out.putInt((parent < 0) ? -1 : (int) store.getDirIndex(parent));
+						} else if (c == 1)
+							out.putInt((int) store.getDirName(dir));
+						else if (c == 2)
+							out.putInt(store.getNumSubdirs(dir));
+						else if (c == 3)
+							out.putInt(store.getNumChildFiles(dir));
+						else if (c == 4)
+						{
+							out.putLong(first);
+							first += store.getNumChildFiles(dir);
+						} else {
+							for (int k = 0; k < store.getNumChildFiles(dir); k++)
+								out.putInt((int) store.getFileIndex(store.getChildFile(dir, k)));
+						}
+					}
+				}
+				if (c == 4)
+					out.putLong(first);
+				out.pad();
+			}
+			for (int c = 0; c < 4; c++) // fileParent, fileName, fileStamp and fileSize
+			{
+				for (int d = 0; d < maxDepth; d++)
+				{
+					for (long i = 0; i < store.getNumFilesAtDepth(d); i++)
+					{
+						entry = store.getFileAtDepth(d, i);
+						if (c == 0)
+							out.putInt((int) store.getDirIndex(store.getFileParent(entry)));
+						else if (c == 1)
+							out.putInt((int) store.getFileName(entry));
+						else if (c == 2)
+							out.putLong(store.getFileCreationStamp(entry));
+						else
+							out.putLong(store.getFileSize(entry));
+					}
+				}
+				out.pad();
+			}
+			for (LongHistogram h : new LongHistogram[] { stats.getSubdirsPerDir(), stats.getFilesPerDir() })
+			{
+				long[] values = h.getValues(), counts = h.getCounts(values);
+				out.putLong(values.length);
+				for (int i = 0; i < values.length; i++)
+				{
+					out.putLong(values[i]);
+					out.putLong(counts[i]);
+				}
+			}
+			putBuckets(out, stats.getAgeKeys(), stats.getAgeCounts());
+			putBuckets(out, stats.getSizeKeys(), stats.getSizeCounts());
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void putBuckets(Output out, long[] keys, long[] counts) throws IOException
+	{
+		out.putInt(keys.length);
+		for (long key : keys)
+			out.putLong(key);
+		for (long count : counts)
+			out.putLong(count);
+	}
+
+	/* Little-endian numbers written through a buffer */
+	private static class Output {
+		private OutputStream out;
+		private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		private long written = 0;
+
+		Output(OutputStream out)
+		{
+			this.out = out;
+		}
+
+		void putInt(int v) throws IOException
+		{
+			if (buffer.remaining() < 4)
+				flush();
+			buffer.putInt(v);
+			written += 4;
+		}
+
+		void putLong(long v) throws IOException
+		{
+			if (buffer.remaining() < 8)
+				flush();
+			buffer.putLong(v);
+			written += 8;
+		}
+
+		/* Pads with zeros to a multiple of 8 bytes */
+		void pad() throws IOException
+		{
+			if (written % 8 != 0)
+				putInt(0);
+		}
+
+		private void flush() throws IOException
+		{
+			out.write(buffer.array(), 0, buffer.position());
+			buffer.clear();
+		}
+
+		void close() throws IOException
+		{
+			flush();
+			out.close();
+		}
+	}
+
+	/* The last creation stamp of the namespace written, see HierarchicalFileSystemGenerator.getLastStampInSnapshot() */
+	public long getLastStampInSnapshot()
+	{
+		return lastStamp;
+	}
+
+	/* The statistics of the namespace written, or null if they were counted in buckets other than those of params */
+	public NamespaceStats getStats(MimesisParameters params)
+	{
+		NamespaceStats stats = new NamespaceStats(params);
+		if (!Arrays.equals(stats.getAgeKeys(), ageKeys) || !Arrays.equals(stats.getSizeKeys(), sizeKeys))
+			return null;
+		for (int i = 0; i < subdirValues.length; i++)
+			stats.getSubdirsPerDir().add(subdirValues[i], subdirCounts[i]);
+		for (int i = 0; i < fileValues.length; i++)
+			stats.getFilesPerDir().add(fileValues[i], fileCounts[i]);
+		stats.addAges(ageCounts);
+		stats.addSizes(sizeCounts);
+		return stats;
+	}
+
+	/* Unmaps the columns, once they are collected */
+	public void close()
+	{
+		for (MappedArray column : new MappedArray[] { dirParent, dirName, dirSubdirs, dirFiles, firstChildFile, childFiles,
+				fileParent, fileName, fileStamp, fileSize })
+			column.close();
+	}
+
+	/* Returns the level of an entry, i.e., the last depth whose range starts at or before it */
+	private static int depthOf(long[] depthStart, long entry)
+	{
+		int lo = 0, hi = depthStart.length - 1, mid;
+		while (lo < hi)
+		{
+			mid = (lo + hi + 1) >>> 1;
+			if (depthStart[mid] <= entry)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return lo;
+	}
+
+	private static UnsupportedOperationException readOnly()
+	{
+		return new UnsupportedOperationException("A namespace snapshot is read only.");
+	}
+
+	@Override
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	@Override
+	public long getNumDirs() {
+		return numDirs;
+	}
+
+	@Override
+	public long getNumFiles() {
+		return numFiles;
+	}
+
+	@Override
+	public long addDir(long parent) {
+		throw readOnly();
+	}
+
+	@Override
+	public long addFile(long parent) {
+		throw readOnly();
+	}
+
+	@Override
+	public long reserveDirs(int depth, long n) {
+		throw readOnly();
+	}
+
+	@Override
+	public long createDir(int depth, long i, long parent) {
+		throw readOnly();
+	}
+
+	@Override
+	public long reserveFiles(int depth, long n) {
+		throw readOnly();
+	}
+
+	@Override
+	public long createFile(int depth, long i, long parent) {
+		throw readOnly();
+	}
+
+	@Override
+	public void copyDirs(NamespaceStore from, int depth) {
+		throw readOnly();
+	}
+
+	@Override
+	public void copyFiles(NamespaceStore from, int depth) {
+		throw readOnly();
+	}
+
+	@Override
+	public long getNumDirsAtDepth(int depth) {
+		return ((depth == maxDepth - 1) ? numDirs : dirDepthStart[depth + 1]) - dirDepthStart[depth];
+	}
+
+	@Override
+	public long getDirAtDepth(int depth, long i) {
+		return dirDepthStart[depth] + i;
+	}
+
+	@Override
+	public long getDirIndex(long dir) {
+		return dir - dirDepthStart[depthOf(dirDepthStart, dir)];
+	}
+
+	@Override
+	public long getNumFilesAtDepth(int depth) {
+		return ((depth == maxDepth - 1) ? numFiles : fileDepthStart[depth + 1]) - fileDepthStart[depth];
+	}
+
+	@Override
+	public long getFileAtDepth(int depth, long i) {
+		return fileDepthStart[depth] + i;
+	}
+
+	@Override
+	public long getFileIndex(long file) {
+		return file - fileDepthStart[depthOf(fileDepthStart, file)];
+	}
+
+	@Override
+	public long getDirName(long dir) {
+		return dirName.getInt(dir);
+	}
+
+	@Override
+	public long getDirParent(long dir) {
+		int p = dirParent.getInt(dir);
+		return (p < 0) ? -1 : dirDepthStart[depthOf(dirDepthStart, dir) - 1] + p;
+	}
+
+	@Override
+	public long getDirCreationStamp(long dir) {
+		return 0;
+	}
+
+	@Override
+	public int getNumSubdirs(long dir) {
+		return dirSubdirs.getInt(dir);
+	}
+
+	@Override
+	public int getNumChildFiles(long dir) {
+		return dirFiles.getInt(dir);
+	}
+
+	@Override
+	public long getChildFile(long dir, int k) {
+		return fileDepthStart[depthOf(dirDepthStart, dir) + 1] + childFiles.getInt(firstChildFile.getLong(dir) + k);
+	}
+
+	@Override
+	public long getFileName(long file) {
+		return fileName.getInt(file);
+	}
+
+	@Override
+	public void setFileName(long file, long name) {
+		throw readOnly();
+	}
+
+	@Override
+	public long getFileParent(long file) {
+		return dirDepthStart[depthOf(fileDepthStart, file) - 1] + fileParent.getInt(file);
+	}
+
+	@Override
+	public long getFileCreationStamp(long file) {
+		return fileStamp.getLong(file);
+	}
+
+	@Override
+	public void setFileCreationStamp(long file, long stamp) {
+		throw readOnly();
+	}
+
+	@Override
+	public long getFileSize(long file) {
+		return fileSize.getLong(file);
+	}
+
+	@Override
+	public void setFileSize(long file, long size) {
+		throw readOnly();
+	}
+
+	@Override
+	public void sortFilesByCreationStamp(ForkJoinPool pool) {
+		throw readOnly();
+	}
+
+	@Override
+	public void sortFilesByCreationStamp(ForkJoinPool pool, long[] from) {
+		throw readOnly();
+	}
+}
@@ -1,8 +1,11 @@
 package namespaceGenerator;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.Random;
 import java.util.Scanner;
 
@@ -20,31 +23,97 @@ public class StandaloneNamespaceGenerationModule {
 		}
 		configFile = "../conf/"+args[0];
 		PropertiesConfiguration config = new PropertiesConfiguration(configFile);
+		if (args.length > 1) // the shard to generate, see SHARDS
+			config.setProperty("SHARD", args[1]);
 		MimesisParameters params = new MimesisParameters(config);
 	    
 		try {
 			
-			Random r = new Random();
+			long seed = (params.seed != null) ? params.seed : new Random().nextLong();
 			
-			//Create the File System
-		    HierarchicalFileSystemGenerator fsg =  new HierarchicalFileSystemGenerator(r, params);
-		    fsg.generateFileSystem();
-		    System.out.println("File system generated; last stamp in namespace: " + fsg.getLastStampInSnapshot());
-		    
-		    //Print the File System
-		    BufferedWriter sysOut = new BufferedWriter(new OutputStreamWriter(System.out));
-		    fsg.print(sysOut);
+			//Check that the run fits in the heap (see PLANNER); it may switch to a mode keeping less in memory
+			RunPlanner.Plan plan = (params.planner.equals("off")) ? null : new RunPlanner(params).choose(Runtime.getRuntime().maxMemory());
+			
+			//Create the File System; the messages go to the log, the standard output only gets the namespace
+		    HierarchicalFileSystemGenerator fsg =  new HierarchicalFileSystemGenerator(seed, params);
+		    PhaseMetrics metrics = fsg.getMetrics();
+		    PrintStream log = metrics.getLog();
+		    if (params.growFrom != null)
+		    	log.println("Growing namespace " + params.growFrom + "; SEED = " + seed);
+		    else
+		    	log.println("Generating namespace; SEED = " + seed + ((params.shards > 1) ? "; SHARD " + params.shard + " of " + params.shards : ""));
+		    if (plan != null)
+		    	log.println(plan.describe());
+		    //Load and grow the namespace before its output, which may be the same file, is opened
+		    if (params.growFrom != null) {
+		    	fsg.loadFileSystem(new File(params.growFrom));
+		    	fsg.growFileSystem(params.targetDirsInNamespace, params.targetFilesInNamespace);
+		    }
+		    OutputStream sysOut = System.out; //the namespace is written as bytes, see NamespaceRecordEncoder
+		    OutputStream textOut = sysOut;
+		    BinaryNamespaceWriter binaryOut = null;
+		    File outputFile = null;
+		    String prefix = (params.shards > 1) ? "shard" + params.shard + "_" : "";
+		    if (params.outputFormat.equals("binary")) {
+		    	new File(params.outputDir).mkdirs();
+		    	outputFile = new File(params.outputDir, prefix + "namespace.bin");
+		    	binaryOut = new BinaryNamespaceWriter(fsg.getStore(), new BufferedOutputStream(new FileOutputStream(outputFile), HierarchicalFileSystemGenerator.BLOCK));
+		    } else if (params.outputCompression.equals("gzip")) {
+		    	new File(params.outputDir).mkdirs();
+		    	outputFile = new File(params.outputDir, prefix + "namespace.txt.gz");
+		    	textOut = new ParallelGzipOutputStream(new FileOutputStream(outputFile), fsg.getPool(), HierarchicalFileSystemGenerator.BLOCK);
+		    }
+		    if (params.streamOutput) {
+		    	//Print the File System while it is created
+		    	if (binaryOut != null)
+		    		fsg.generateFileSystem(binaryOut);
+		    	else
+		    		fsg.generateFileSystem(textOut);
+		    	log.println("File system generated; last stamp in namespace: " + fsg.getLastStampInSnapshot());
+		    } else if (params.growFrom == null) {
+		    	fsg.generateFileSystem();
+		    	log.println("File system generated; last stamp in namespace: " + fsg.getLastStampInSnapshot());
+		    }
+		    if (params.snapshot != null)
+		    	fsg.saveSnapshot(new File(params.snapshot));
+		    PhaseMetrics.Phase phase = null; // when streaming, the namespace is written out while packing the files
+		    if (!params.streamOutput) {
+		    	//Print the File System
+		    	phase = metrics.begin(PhaseMetrics.PRINTING);
+		    	if (binaryOut != null)
+		    		fsg.print(binaryOut);
+		    	else if (params.outputParts > 0) {
+		    		fsg.print(new File(params.outputDir), params.outputParts);
+		    		log.println("File system written to " + params.outputDir);
+		    	} else
+		    		fsg.print(textOut);
+		    }
 		    sysOut.flush();
+		    if (binaryOut != null)
+		    	binaryOut.close();
+		    else if (textOut != sysOut)
+		    	textOut.close();
+		    if (phase != null)
+		    	metrics.end(phase, fsg.getStore().getNumDirs() + fsg.getStore().getNumFiles());
+		    if (outputFile != null)
+		    	log.println("File system written to " + outputFile);
+		    if (params.materializeDir != null)
+		    	fsg.materialize(new File(params.materializeDir));
 		    
 		    //Get the statistics
 		    if (params.printNamespaceStats) {
-		    	System.out.println("Printing file system stats to *.cdf files.");
+		    	log.println("Printing file system stats to *.cdf files.");
+		    	phase = metrics.begin(PhaseMetrics.STATS);
 		    	fsg.printStats();
-		    	System.out.println("finished!");
+		    	metrics.end(phase, fsg.getStore().getNumDirs() + fsg.getStore().getNumFiles());
+		    	log.println("finished!");
 		    }
 		    sysOut.flush();
 		    
 			sysOut.close();
+			metrics.report();
+			if (params.metrics)
+				metrics.writeSummary("../output/" + prefix + "metrics.json");
 			
 		} catch (IOException e) {
 			e.printStackTrace();			
@@ -0,0 +1,137 @@
+package randomGenerator;
+
+import java.util.Random;
+/*
+ * This class generates random keys from a list of keys based on the weights of the keys, like WeightedRanGen,
+ * in constant time: it uses Vose's alias method. The keys are split in equal slots; a slot holds its own key
+ * with probability prob[i] and the key alias[i] otherwise. A draw takes one random double, whose integer part
+ * (once scaled) picks the slot and whose fractional part picks between the two keys of the slot.
+ */
+public class AliasRanGen implements LongRandomGenerator {
+    private final Random random;
+    private int numTrials = 1000;
+    private Long[] keys;
+    private double[] weights;
+    private Long[] slotKeys; // keys with a positive weight, boxed once so that next() does not allocate
+    private long[] values; // the same keys, unboxed
+    private double[] prob;
+    private int[] alias;
+
+	/**
+	 * @param rnd	The random number generator
+	 * @param keys	Array of size s of keys
+	 * @param weights	Array of size s of weights, one for each key
+	 */
+	public AliasRanGen(Random rnd, Long[] keys, double[] weights)
+	{
+		this.random = rnd;
+		if (keys.length != weights.length)
+		{
+			throw new IllegalArgumentException("Mismatch key/weights length: " + keys.length + " vs. " + weights.length);
+		}
+		this.keys = keys;
+		this.weights = weights;
+
+		int n = 0;
+		double total = 0;
+		for (int i = 0; i < weights.length; i++)
+		{
+			if (weights[i] <= 0) continue;
+			n += 1;
+			total += weights[i];
+		}
+		if (n == 0)
+			throw new IllegalArgumentException("No key has a positive weight.");
+
+		slotKeys = new Long[n];
+		values = new long[n];
+		prob = new double[n];
+		alias = new int[n];
+		double[] scaled = new double[n];
+		for (int i = 0, j = 0; i < weights.length; i++)
+		{
+			if (weights[i] <= 0) continue;
+			slotKeys[j] = keys[i];
+			values[j] = keys[i];
+			scaled[j] = weights[i] * n / total;
+			j += 1;
+		}
+
+		// Vose: pair each slot that is too small with a slot that is too large
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int numSmall = 0, numLarge = 0, s, l;
+		for (int i = 0; i < n; i++)
+		{
+			if (scaled[i] < 1.0)
+				small[numSmall++] = i;
+			else
+				large[numLarge++] = i;
+		}
+		while (numSmall > 0 && numLarge > 0)
+		{
+			s = small[--numSmall];
+			l = large[--numLarge];
+			prob[s] = scaled[s];
+			alias[s] = l;
+			scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+			if (scaled[l] < 1.0)
+				small[numSmall++] = l;
+			else
+				large[numLarge++] = l;
+		}
+		// whatever is left is full, up to rounding errors
+		while (numLarge > 0)
+		{
+			l = large[--numLarge];
+			prob[l] = 1.0;
+			alias[l] = l;
+		}
+		while (numSmall > 0)
+		{
+			s = small[--numSmall];
+			prob[s] = 1.0;
+			alias[s] = s;
+		}
+	}
+
+	@Override
+	//returns a next randomly generated key based on the weights
+	public Long next() {
+		return slotKeys[slot(random.nextDouble())];
+	}
+
+	@Override
+	public long nextLong() {
+		return values[slot(random.nextDouble())];
+	}
+
+	@Override
+	public void fill(long[] dst, int off, int len) {
+		Random random = this.random;
+		long[] values = this.values;
+		for (int i = off; i < off + len; i++)
+			dst[i] = values[slot(random.nextDouble())];
+	}
+
+	/* The slot key, or its alias, for the uniform random number u */
+	private int slot(double u)
+	{
+		u = u * prob.length;
+		int i = (int) u;
+		if (i >= prob.length) // u can round up to prob.length
+			i = prob.length - 1;
+		return (u - i < prob[i]) ? i : alias[i];
+	}
+
+	@Override
+	public Long expectedValue(Long span) {
+		return WeightedDraws.expectedValue(this, numTrials, span);
+	}
+
+	@Override
+	//returns a list of randomly generated keys based on the weights; same as WeightedRanGen.next(n, span)
+	public Long[] next(long n, Long span) {
+		return WeightedDraws.next(this.random, this.keys, this.weights, n, span);
+	}
+}
@@ -0,0 +1,12 @@
+package randomGenerator;
+
+/*
+ * A RandomGenerator of longs that can also return its values unboxed, for the loops that draw one value per
+ * file or directory.
+ */
+public interface LongRandomGenerator extends RandomGenerator<Long> {
+	public long nextLong();
+
+	/* Stores len values in dst[off] .. dst[off + len - 1]; the same values, from the same random numbers, as len calls to nextLong() */
+	public void fill(long[] dst, int off, int len);
+}
@@ -0,0 +1,84 @@
+package randomGenerator;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+/*
+ * A Random that draws from a SplittableRandom, so that it can be given to the generators of this package. 
+ * Unlike Random it is not thread safe; each thread uses its own. 
+ * 
+ * The generation is split in streams, e.g. the ages of the files of one chunk at one depth, and each stream 
+ * has its own seed, derived from the seed of the namespace with seedOf(). A stream draws the same numbers 
+ * whichever thread generates it and in whatever order the streams are generated, so the namespace only 
+ * depends on its seed.
+ */
+public class SplitRandom extends Random {
+	private static final long serialVersionUID = 1L;
+	private SplittableRandom rnd;
+
+	public SplitRandom(long seed)
+	{
+		super(seed); // calls setSeed()
+	}
+
+	/* The seed of stream (stream, key) of the namespace with the given seed */
+	public static long seedOf(long seed, int stream, long key)
+	{
+		return mix(mix(mix(seed) + stream) + key);
+	}
+
+	/* The finalizer of SplitMix64 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/* Starts drawing from stream (stream, key) of the namespace with the given seed */
+	public void setStream(long seed, int stream, long key)
+	{
+		this.setSeed(seedOf(seed, stream, key));
+	}
+
+	@Override
+	public void setSeed(long seed)
+	{
+		this.rnd = new SplittableRandom(seed);
+	}
+
+	@Override
+	protected int next(int bits)
+	{
+		return rnd.nextInt() >>> (32 - bits);
+	}
+
+	@Override
+	public int nextInt()
+	{
+		return rnd.nextInt();
+	}
+
+	@Override
+	public int nextInt(int bound)
+	{
+		return rnd.nextInt(bound);
+	}
+
+	@Override
+	public long nextLong()
+	{
+		return rnd.nextLong();
+	}
+
+	@Override
+	public double nextDouble()
+	{
+		return rnd.nextDouble();
+	}
+
+	@Override
+	public boolean nextBoolean()
+	{
+		return rnd.nextBoolean();
+	}
+}
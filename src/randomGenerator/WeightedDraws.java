@@ -0,0 +1,82 @@
+package randomGenerator;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/*
+ * The draws the samplers share: the expected number of values drawn until their sum reaches a span, for any
+ * sampler, and the list of keys drawn in proportion to their weights, for the samplers of weighted keys
+ * (WeightedRanGen and AliasRanGen).
+ */
+final class WeightedDraws {
+
+	private WeightedDraws()
+	{
+	}
+
+	/* The average number of values gen draws until their sum reaches span, over numTrials trials (twice as many for large averages) */
+	static Long expectedValue(RandomGenerator<Long> gen, int numTrials, Long span) {
+
+		long sum = 0;
+		for (int i = 0; i < numTrials; i++)
+		{
+			long curr = 0;
+			long arrivals = 1;
+			while (curr < span)
+			{
+				curr += gen.next();
+				arrivals += 1;
+			}
+			if (curr > span)
+				arrivals -= 1;
+			sum += arrivals;
+		}
+
+		long heuristic = 100000;
+		if (sum / numTrials > heuristic)
+		{
+			int moreTrials = 1000;
+			for (int i = 0; i < moreTrials; i++)
+			{
+				long curr = 0;
+				long arrivals = 1;
+				while (curr < span)
+				{
+					curr += gen.next();
+					arrivals += 1;
+				}
+				if (curr > span)
+					arrivals -= 1;
+				sum += arrivals;
+			}
+			return Long.valueOf(sum / (numTrials + moreTrials));
+		}
+		return Long.valueOf(sum / numTrials);
+	}
+
+	//returns a list of n keys, each key in proportion to its weight, in an order shuffled by random; -1 after the keys
+	static Long[] next(Random random, Long[] keys, double[] weights, long n, Long span) {
+		ArrayList<Long> list = new ArrayList<Long>((int) n);
+		long sum = 0;
+		int curr = 0;
+
+		for (int i = 0; i < weights.length ; i++) {
+			for (int j = 0 ; j < Math.round(n * weights[i]) && curr < n ; j++) {
+				sum += keys[i];
+				list.add(keys[i]);
+				curr++;
+			}
+		}
+
+		// generate a random permutation of the arrivals
+		java.util.Collections.shuffle(list, random);
+
+		if (Math.abs(span - sum)/(double) span > 0.1)
+			throw new RuntimeException("Span differs too much from expected one: " + span + " " + sum);
+
+		for (int i = curr; i < n ; i++)
+			list.add(-1L);
+
+		return (Long[]) list.toArray(new Long[list.size()]);
+	}
+}
@@ -3,17 +3,18 @@ package randomGenerator;
 import java.util.Random;
 import java.util.TreeMap;
 import java.util.NavigableMap;
-import java.util.ArrayList;
 /*
  * This class generates random keys from a list of keys based on the weights of the keys
  */
-public class WeightedRanGen implements RandomGenerator<Long> {
+public class WeightedRanGen implements LongRandomGenerator {
 	private final NavigableMap<Double, Long> map = new TreeMap<Double, Long>();
     private final Random random;
     private double total = 0;
     private int numTrials = 1000;
     private Long[] keys;
     private double[] weights;
+    private double[] totals; // the keys of map, for fill()
+    private long[] values; // the values of map
 	
 	/**
 	 * @param rnd	The random number generator
@@ -35,6 +36,16 @@ public class WeightedRanGen implements RandomGenerator<Long> {
 		
 		this.keys = keys;
 		this.weights = weights;
+		
+		this.totals = new double[map.size()];
+		this.values = new long[map.size()];
+		int i = 0;
+		for (java.util.Map.Entry<Double, Long> e : map.entrySet())
+		{
+			this.totals[i] = e.getKey();
+			this.values[i] = e.getValue();
+			i += 1;
+		}
 	}
 
 	private void add(double weight, Long result) {
@@ -51,72 +62,43 @@ public class WeightedRanGen implements RandomGenerator<Long> {
 	}
 	
 	@Override
-	public Long expectedValue(Long span) {
-		
-		long sum = 0;
-		for (int i = 0; i < numTrials; i++)
-		{
-			long curr = 0;
-			long arrivals = 1;
-			while (curr < span)
-			{
-				curr += next();
-				arrivals += 1;
-			}
-			if (curr > span)
-				arrivals -= 1;
-			sum += arrivals;
-		}
-		
-		long heuristic = 100000;		
-		if (sum / numTrials > heuristic)
+	public long nextLong() {
+		return values[ceiling(random.nextDouble() * total)];
+	}
+	
+	@Override
+	public void fill(long[] dst, int off, int len) {
+		Random random = this.random;
+		long[] values = this.values;
+		for (int i = off; i < off + len; i++)
+			dst[i] = values[ceiling(random.nextDouble() * total)];
+	}
+	
+	/* Index of the smallest total greater than or equal to value, as map.ceilingEntry(value) */
+	private int ceiling(double value) {
+		int low = 0;
+		int high = totals.length - 1;
+		int mid;
+		while (low < high)
 		{
-			int moreTrials = 1000;
-			for (int i = 0; i < moreTrials; i++)
-			{
-				long curr = 0;
-				long arrivals = 1;
-				while (curr < span)
-				{
-					curr += next();
-					arrivals += 1;
-				}
-				if (curr > span)
-					arrivals -= 1;
-				sum += arrivals;
-			}
-			return new Long(sum / (numTrials + moreTrials));
+			mid = (low + high) >>> 1;
+			if (totals[mid] < value)
+				low = mid + 1;
+			else
+				high = mid;
 		}
-		return new Long(sum / numTrials);
+		return low;
+	}
+	
+	@Override
+	public Long expectedValue(Long span) {
+		return WeightedDraws.expectedValue(this, numTrials, span);
 	}
 
 	@Override
 	//returns a list of randomly generated keys based on the weights. 
 	public Long[] next(long n, Long span) {
-		ArrayList<Long> list = new ArrayList<Long>((int) n);
-		long sum = 0;
-		int curr = 0;
-		
-		for (int i = 0; i < this.weights.length ; i++) {
-			for (int j = 0 ; j < Math.round(n * this.weights[i]) && curr < n ; j++) {
-				sum += this.keys[i];
-				list.add(this.keys[i]);
-				curr++;
-			}
-		}
-		
-		System.out.println("[DEBUG] n = " + n + "; curr = + " + curr + "; span = " + span + "; sum = " + sum + "; sum/span = " + (sum/(double) span));
-		
-		// generate a random permutation of the arrivals
-		java.util.Collections.shuffle(list, this.random);
-		
-		if (Math.abs(span - sum)/(double) span > 0.1)
-			throw new RuntimeException("Span differs too much from expected one: " + span + " " + sum);
-		
-		for (int i = curr; i < n ; i++)
-			list.add(-1L);
-		
-		return (Long[]) list.toArray(new Long[list.size()]);				
+		return WeightedDraws.next(this.random, this.keys, this.weights, n, span);
 	}
 	
 	
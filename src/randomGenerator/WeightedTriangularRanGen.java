@@ -1,16 +1,25 @@
 package randomGenerator;
 
+import java.util.Arrays;
 import java.util.Random;
-import java.util.ArrayList;
-import java.util.Collections;
 import org.apache.commons.lang.ArrayUtils;
 /*
  * This class generates random values from a list of keys, and values in between the keys based on the weights of the keys
+ * The keys and their cumulative weights are kept in primitive arrays, and the constants of the triangular
+ * distribution between each pair of keys are computed once, so that nextLong() does not allocate.
  */
-public class WeightedTriangularRanGen implements RandomGenerator<Long> {
+public class WeightedTriangularRanGen implements LongRandomGenerator {
 	private Random random;
-	private ArrayList<WeightedValue<Long>> weights;
+	private long[] keys;
+	private double[] cumWeights; // cumWeights[i] = sum of the weights of keys 0..i, divided by the sum of all the weights
+	private boolean[] consecutive; // consecutive[i] = keys[i - 1] and keys[i] differ by one; no value in between them
+	// triangular distribution between keys[i - 1] and keys[i], with its mode at keys[i]: see triangular()
+	private double[] peak;
+	private double[] width;
+	private double[] rise;
+	private double[] fall;
 	private boolean acceptExactMatches = true;
+	private double upper = 1; // only the values up to this cumulative weight are drawn, see setUpperQuantile()
 	private int numTrials = 1000;
 	
 	/**
@@ -21,7 +30,6 @@ public class WeightedTriangularRanGen implements RandomGenerator<Long> {
 	public WeightedTriangularRanGen(Random rnd, long[] keys, double[] weights)
 	{
 		this.random = rnd;
-		this.weights = new ArrayList<WeightedValue<Long>>();
 
 		double sum = 0;
 		double acum = 0;
@@ -34,10 +42,30 @@ public class WeightedTriangularRanGen implements RandomGenerator<Long> {
 		for (double w : weights)
 			sum += w;
 
-		for (int i = 0; i < keys.length; i++)
+		int n = keys.length;
+		this.keys = keys.clone();
+		this.cumWeights = new double[n];
+		this.consecutive = new boolean[n];
+		this.peak = new double[n];
+		this.width = new double[n];
+		this.rise = new double[n];
+		this.fall = new double[n];
+		for (int i = 0; i < n; i++)
 		{
 			acum += weights[i];
-			this.weights.add(new WeightedValue<Long>(new Long(keys[i]), acum/sum));
+			this.cumWeights[i] = acum/sum;
+		}
+		for (int i = 1; i < n; i++)
+		{
+			double a = keys[i - 1];
+			double b = keys[i];
+			// the mode is the key with the larger cumulative weight, i.e. keys[i] as long as the weights are not negative
+			double c = (this.cumWeights[i - 1] > this.cumWeights[i]) ? a : b;
+			this.consecutive[i] = (keys[i] - keys[i - 1] == 1 || keys[i] - keys[i - 1] == -1);
+			this.peak[i] = (c - a) / (b - a);
+			this.width[i] = b - a;
+			this.rise[i] = c - a;
+			this.fall[i] = b - c;
 		}
 	}
 	
@@ -47,88 +75,110 @@ public class WeightedTriangularRanGen implements RandomGenerator<Long> {
 		this.acceptExactMatches = acceptEM;
 	}
 
-	private double triangular(double u, double a, double b, double c)
+	/* 
+	 * Inverse CDF of the triangular distribution between keys[i - 1] (a) and keys[i] (b) with mode c, 
+	 * evaluated in the same order as a + sqrt(u * (b - a) * (c - a)) and b - sqrt((1 - u) * (b - a) * (b - c))
+	 */
+	private double triangular(double u, int i)
 	{
-		
-		double f = (c - a) / (b - a);
-		
-		if (u <= f)
-			return a + Math.sqrt(u * (b - a) * (c - a));
+		if (u <= peak[i])
+			return keys[i - 1] + Math.sqrt(u * width[i] * rise[i]);
 		else
-			return b - Math.sqrt((1 - u) * (b - a) * (b - c));
+			return keys[i] - Math.sqrt((1 - u) * width[i] * fall[i]);
 	}
 
-	private boolean areConsecutive(Long k1, Long k2)
+	/* Same as Collections.binarySearch over the cumulative weights */
+	private int search(double u)
 	{
-		long diff = k1.longValue() - k2.longValue();
-		if (diff == 1 || diff == -1)
-			return true;
-		return false;
+		int low = 0;
+		int high = cumWeights.length - 1;
+		int mid, cmp;
+		while (low <= high)
+		{
+			mid = (low + high) >>> 1;
+			cmp = Double.compare(cumWeights[mid], u);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
 	}
 	
 	@Override
 	// returns a next randomly generated key based on the weights
 	public Long next() {
-		if (this.weights.size() == 0)
+		return Long.valueOf(nextLong());
+	}
+
+	@Override
+	// returns a next randomly generated key based on the weights
+	public long nextLong() {
+		if (this.keys.length == 0)
 			throw new UnsupportedOperationException("Empty weights list.");
-		if (this.weights.size() == 1)
-			return this.weights.get(0).getKey();
+		if (this.keys.length == 1)
+			return this.keys[0];
 		
-		double ind = random.nextDouble();
-		int cual = Collections.binarySearch(this.weights, new WeightedValue<Long>(null, ind));
-		
-		if (cual > 0 && acceptExactMatches) //exact match
-			return this.weights.get(cual).getKey();
-		cual = -cual - 1; //  if ind is not contained in the list cual = (-(insertion point) - 1) => insertion point = -cual - 1
-		if (cual < 1)
-			return this.weights.get(cual).getKey();
-		if (areConsecutive(this.weights.get(cual).getKey(),this.weights.get(cual - 1).getKey()))
-			return this.weights.get(cual).getKey();
-		else
-			return new Long(Math.round( triangular(ind, this.weights.get(cual - 1).getKey(),
-							this.weights.get(cual).getKey(),
-							(this.weights.get(cual - 1).getValue() > this.weights.get(cual).getValue()) ? this.weights.get(cual - 1).getKey() : this.weights.get(cual).getKey()) ));
+		return sample(random.nextDouble() * upper);
+	}
+
+	/* The value at cumulative weight p, 0 <= p < 1: nextLong() is quantile(u) for a uniform random u */
+	public long quantile(double p) {
+		if (this.keys.length == 0)
+			throw new UnsupportedOperationException("Empty weights list.");
+		if (this.keys.length == 1)
+			return this.keys[0];
+		return sample(p);
+	}
 
+	/* From now on, only draws the values up to the p-quantile, i.e. from the distribution truncated at quantile(p) */
+	public void setUpperQuantile(double p) {
+		if (p <= 0 || p > 1)
+			throw new IllegalArgumentException("The upper quantile must be in (0, 1]: " + p);
+		this.upper = p;
 	}
 
 	@Override
-	public Long expectedValue(Long span) {
-		
-		long sum = 0;
-		for (int i = 0; i < numTrials; i++)
+	public void fill(long[] dst, int off, int len) {
+		if (this.keys.length == 0)
+			throw new UnsupportedOperationException("Empty weights list.");
+		if (this.keys.length == 1)
 		{
-			long curr = 0;
-			long arrivals = 1;
-			while (curr < span)
-			{
-				curr += next();
-				arrivals += 1;
-			}
-			if (curr > span)
-				arrivals -= 1;
-			sum += arrivals;
+			Arrays.fill(dst, off, off + len, this.keys[0]);
+			return;
 		}
 		
-		long heuristic = 100000;		
-		if (sum / numTrials > heuristic)
+		Random random = this.random;
+		double upper = this.upper;
+		for (int i = off; i < off + len; i++)
+			dst[i] = sample(random.nextDouble() * upper);
+	}
+
+	/* The value for the uniform random number ind */
+	private long sample(double ind) {
+		int cual = search(ind);
+		
+		if (cual >= 0) //exact match
 		{
-			int moreTrials = 1000;
-			for (int i = 0; i < moreTrials; i++)
-			{
-				long curr = 0;
-				long arrivals = 1;
-				while (curr < span)
-				{
-					curr += next();
-					arrivals += 1;
-				}
-				if (curr > span)
-					arrivals -= 1;
-				sum += arrivals;
-			}
-			return new Long(sum / (numTrials + moreTrials));
+			if (acceptExactMatches || cual == 0)
+				return this.keys[cual];
+		} else {
+			cual = -cual - 1; //  if ind is not contained in the list cual = (-(insertion point) - 1) => insertion point = -cual - 1
 		}
-		return new Long(sum / numTrials);
+		if (cual < 1)
+			return this.keys[cual];
+		if (this.consecutive[cual])
+			return this.keys[cual];
+		else
+			return Math.round(triangular(ind, cual));
+
+	}
+
+	@Override
+	public Long expectedValue(Long span) {
+		return WeightedDraws.expectedValue(this, numTrials, span);
 	}
 
 	@Override
@@ -145,7 +195,7 @@ public class WeightedTriangularRanGen implements RandomGenerator<Long> {
 			int i = 0;
 			while (curr < span && i < n)
 			{
-				list[i] = next();
+				list[i] = nextLong();
 				curr += list[i];
 				arrivals += 1;
 				i += 1;